@@ -107,25 +107,12 @@ public class Auth extends AbstractDescribableImpl<Auth> {
     }
 
     /**
-     * Looks up the credentialsID attached to this object in the Global Credentials plugin datastore
+     * Looks up the credentialsID attached to this object in the Global Credentials plugin datastore, through the
+     * {@link CredentialsCache}
      * @return the matched credentials
      */
     private UsernamePasswordCredentials getCredentials() {
-        String credetialId = this.getCreds();
-        StandardUsernameCredentials matchedCredentials = null;
-        Item item = null;
-
-        List<StandardUsernameCredentials> listOfCredentials = CredentialsProvider.lookupCredentials(
-                StandardUsernameCredentials.class, item, ACL.SYSTEM, Collections.<DomainRequirement> emptyList());
-        for (StandardUsernameCredentials cred : listOfCredentials) {
-            if (credetialId.equals(cred.getId())) {
-                matchedCredentials = cred;
-                break;
-            }
-        }
-
-        // now we have matchedCredentials.getPassword() and matchedCredentials.getUsername();
-        return (UsernamePasswordCredentials) matchedCredentials;
+        return CredentialsCache.get(this.getCreds());
     }
 
     @Override
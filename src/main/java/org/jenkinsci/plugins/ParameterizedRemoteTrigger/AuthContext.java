@@ -0,0 +1,45 @@
+package org.jenkinsci.plugins.ParameterizedRemoteTrigger;
+
+import org.apache.commons.codec.binary.Base64;
+
+/**
+ * The credentials one execution of the build step uses for all its calls to the remote server. They are looked up,
+ * token-expanded and encoded once when the execution starts, instead of again for every poll.
+ */
+final class AuthContext {
+
+    /** No credentials configured, calls are sent without an "Authorization" header. */
+    static final AuthContext ANONYMOUS = new AuthContext();
+
+    private final String username;
+    private final String authorization;
+
+    private AuthContext() {
+        this.username = "";
+        this.authorization = null;
+    }
+
+    /**
+     * @param usernameTokenConcat
+     *            <tt>username:password</tt>, with all tokens already expanded
+     */
+    AuthContext(String usernameTokenConcat) {
+        int colon = usernameTokenConcat.indexOf(':');
+        this.username = colon < 0 ? usernameTokenConcat : usernameTokenConcat.substring(0, colon);
+        this.authorization = "Basic " + new String(Base64.encodeBase64(usernameTokenConcat.getBytes()));
+    }
+
+    /**
+     * @return the user the calls are made as, empty if anonymous
+     */
+    String getUsername() {
+        return username;
+    }
+
+    /**
+     * @return the value of the "Authorization" header, or null if no credentials are configured
+     */
+    String getAuthorization() {
+        return authorization;
+    }
+}
@@ -0,0 +1,174 @@
+package org.jenkinsci.plugins.ParameterizedRemoteTrigger;
+
+import hudson.AbortException;
+import hudson.Extension;
+import hudson.Launcher;
+import hudson.model.AbstractBuild;
+import hudson.model.AbstractProject;
+import hudson.model.BuildListener;
+import hudson.tasks.BuildStepDescriptor;
+import hudson.tasks.Builder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.kohsuke.stapler.DataBoundConstructor;
+
+/**
+ * Waits on the remote builds triggered earlier in the same build without waiting on them ("fire and forget"), so that
+ * several remote builds can run side by side while the local build does other work in between. Waits on all of them,
+ * or only until one of them is done: every one that is done by then is reported, the others are left for a later step
+ * of this kind.
+ * <p>
+ * Each remote build is waited on by a {@link RemoteBuildExecution} of its own, polling through the same
+ * {@link BuildStatusPoller} as the triggers that wait, so waiting on many builds of one remote job costs one request
+ * per poll interval. It is polled with the credentials it was triggered with.
+ */
+public class AwaitRemoteBuilds extends Builder {
+
+    private final String  job;
+    private final boolean waitForAny;
+    private final int     pollInterval;
+    private final boolean shouldNotFailBuild;
+
+    @DataBoundConstructor
+    public AwaitRemoteBuilds(String job, boolean waitForAny, int pollInterval, boolean shouldNotFailBuild) {
+        this.job = job == null ? "" : job.trim();
+        this.waitForAny = waitForAny;
+        this.pollInterval = pollInterval > 0 ? pollInterval : 10;
+        this.shouldNotFailBuild = shouldNotFailBuild;
+    }
+
+    /**
+     * @return the remote job whose builds are waited on, empty for the builds of all remote jobs
+     */
+    public String getJob() {
+        return job;
+    }
+
+    public boolean getWaitForAny() {
+        return waitForAny;
+    }
+
+    public int getPollInterval() {
+        return pollInterval;
+    }
+
+    public boolean getShouldNotFailBuild() {
+        return shouldNotFailBuild;
+    }
+
+    @Override
+    public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener)
+            throws InterruptedException, IOException {
+        RemoteBuildHandles action = build.getAction(RemoteBuildHandles.class);
+        List<RemoteBuildHandle> handles = action == null ? Collections.<RemoteBuildHandle> emptyList() : action
+                .take(job);
+        if (handles.isEmpty()) {
+            listener.getLogger().println("No remote builds to wait on.");
+            return true;
+        }
+
+        TokenExpansion tokens = new TokenExpansion(build, listener);
+        final CountDownLatch anyDone = new CountDownLatch(1);
+        List<RemoteBuildExecution> executions = new ArrayList<RemoteBuildExecution>();
+        List<RemoteBuildHandle> waitedOn = new ArrayList<RemoteBuildHandle>();
+        for (RemoteBuildHandle handle : handles) {
+            // the same as a trigger that blocks, only it doesn't trigger anything
+            RemoteBuildConfiguration config = new RemoteBuildConfiguration(handle.getRemoteServerName(),
+                    shouldNotFailBuild, handle.getJobName(), "", "", false, null, null, false, true, pollInterval);
+            RemoteJenkinsServer remoteServer = config.findRemoteHost(handle.getRemoteServerName());
+            if (remoteServer == null) {
+                config.failBuild(new Exception("The remote host " + handle.getRemoteServerName()
+                        + " of remote job " + handle.getJobName() + " #" + handle.getBuildNumber()
+                        + " is no longer defined."), listener);
+                continue;
+            }
+            RemoteBuildExecution execution = new RemoteBuildExecution(config, build, listener, remoteServer, tokens,
+                    handle.getJobName(), "", RemoteParameters.EMPTY, Deadline.NONE, Deadline.NONE).awaiting(handle);
+            execution.whenDone(new Runnable() {
+                public void run() {
+                    anyDone.countDown();
+                }
+            });
+            executions.add(execution);
+            waitedOn.add(handle);
+        }
+        if (executions.isEmpty()) {
+            return true;
+        }
+
+        listener.getLogger().println("Waiting on " + (waitForAny ? "any" : "all") + " of " + executions.size()
+                + " remote builds.");
+        for (RemoteBuildExecution execution : executions) {
+            execution.start();
+        }
+        try {
+            if (waitForAny) {
+                anyDone.await();
+                // every one that is done by now counts, not only the first
+                List<RemoteBuildExecution> finished = new ArrayList<RemoteBuildExecution>();
+                for (int i = 0; i < executions.size(); i++) {
+                    RemoteBuildExecution execution = executions.get(i);
+                    if (execution.detach()) {
+                        // still running, a later step can wait on it
+                        RemoteBuildHandles.add(build, waitedOn.get(i));
+                        listener.getLogger().println("Still running, left for later: remote job "
+                                + waitedOn.get(i).getJobName() + " #" + waitedOn.get(i).getBuildNumber() + ".");
+                    } else {
+                        finished.add(execution);
+                    }
+                }
+                awaitAll(finished);
+            } else {
+                awaitAll(executions);
+            }
+            return true;
+        } catch (InterruptedException e) {
+            for (RemoteBuildExecution execution : executions) {
+                if (RemoteBuildExecution.isShuttingDown()) {
+                    // not aborted, this Jenkins is going down: the remote builds go on
+                    execution.detach();
+                } else {
+                    // this build was aborted, don't leave the remote builds behind holding on to remote executors
+                    execution.cancel();
+                }
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Waits on every one of the executions, even if one fails, then fails with the first failure.
+     */
+    private static void awaitAll(List<RemoteBuildExecution> executions) throws IOException, InterruptedException {
+        AbortException failure = null;
+        for (RemoteBuildExecution execution : executions) {
+            try {
+                execution.await();
+            } catch (AbortException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    @Extension
+    public static final class DescriptorImpl extends BuildStepDescriptor<Builder> {
+
+        public boolean isApplicable(Class<? extends AbstractProject> aClass) {
+            return true;
+        }
+
+        public String getDisplayName() {
+            return "Wait for remote builds triggered earlier in this build";
+        }
+    }
+}
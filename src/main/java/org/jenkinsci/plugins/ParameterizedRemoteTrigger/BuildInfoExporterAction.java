@@ -5,10 +5,22 @@ import hudson.model.EnvironmentContributingAction;
 import hudson.model.Result;
 import hudson.model.AbstractBuild;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 class BuildInfoExporterAction implements EnvironmentContributingAction {
 
@@ -19,31 +31,160 @@ class BuildInfoExporterAction implements EnvironmentContributingAction {
     public static final String BUILD_RESULT_VARIABLE_PREFIX = "TRIGGERED_BUILD_RESULT_";
     public static final String BUILD_RUN_COUNT_PREFIX = "TRIGGERED_BUILD_RUN_COUNT_";
     public static final String RUN = "_RUN_";
+    public static final String SERVER_VARIABLE_PREFIX = "TRIGGERED_SERVER_";
 
+    /**
+     * Once more than this many remote builds are recorded, they are moved out of <tt>build.xml</tt> into
+     * {@link #SIDECAR_FILE_NAME} and only read back when they are actually needed.
+     */
+    static final int SIDECAR_THRESHOLD = Integer.getInteger(BuildInfoExporterAction.class.getName()
+            + ".sidecarThreshold", 500);
+    static final String SIDECAR_FILE_NAME = "remoteBuildReferences.txt";
+
+    private static final Logger LOGGER = Logger.getLogger(BuildInfoExporterAction.class.getName());
+
+    /**
+     * Only used to read <tt>build.xml</tt> files written by older versions of this plugin, see {@link #readResolve()}.
+     */
+    @Deprecated
     private List<BuildReference> builds;
 
+    private BuildReferenceTable table;
+    // number of references kept in the sidecar file (0 if everything is stored in "table")
+    private int sidecarSize;
+    // remote server (the member picked out of a pool, if any) the last build of each project was triggered on
+    private Map<String, String> servers;
+
+    // references loaded from (or written to) the sidecar file, never persisted in build.xml
+    private transient BuildReferenceTable sidecar;
+    private transient File rootDir;
+
     public BuildInfoExporterAction(AbstractBuild<?, ?> parentBuild, BuildReference buildRef) {
         super();
 
-        this.builds = new ArrayList<BuildReference>();
-        this.builds.add(buildRef);
+        this.rootDir = parentBuild.getRootDir();
+        this.table = new BuildReferenceTable();
+        addBuildReference(buildRef);
+    }
+
+    /**
+     * Migrates the verbose list of {@link BuildReference}s written by older versions to the compact table.
+     */
+    protected Object readResolve() {
+        if (builds != null) {
+            table = new BuildReferenceTable();
+            for (BuildReference br : builds) {
+                table.add(br.projectName, br.buildNumber, br.buildResult);
+            }
+            builds = null;
+        }
+        return this;
     }
 
     static BuildInfoExporterAction addBuildInfoExporterAction(AbstractBuild<?, ?> parentBuild, String triggeredProject, int buildNumber, Result buildResult) {
+        return addBuildInfoExporterAction(parentBuild, triggeredProject, buildNumber, buildResult, null);
+    }
+
+    static BuildInfoExporterAction addBuildInfoExporterAction(AbstractBuild<?, ?> parentBuild, String triggeredProject,
+            int buildNumber, Result buildResult, String remoteServerName) {
         BuildReference reference = new BuildReference(triggeredProject, buildNumber, buildResult);
 
-        BuildInfoExporterAction action = parentBuild.getAction(BuildInfoExporterAction.class);
-        if (action == null) {
-            action = new BuildInfoExporterAction(parentBuild, reference);
-            parentBuild.getActions().add(action);
-        } else {
-            action.addBuildReference(reference);
+        // several remote builds of the same local build can finish at once, on different threads
+        synchronized (parentBuild) {
+            BuildInfoExporterAction action = parentBuild.getAction(BuildInfoExporterAction.class);
+            if (action == null) {
+                action = new BuildInfoExporterAction(parentBuild, reference);
+                parentBuild.getActions().add(action);
+            } else {
+                action.rootDir = parentBuild.getRootDir();
+                action.addBuildReference(reference);
+            }
+            if (remoteServerName != null) {
+                action.setRemoteServer(triggeredProject, remoteServerName);
+            }
+            return action;
+        }
+    }
+
+    public synchronized void addBuildReference(BuildReference buildRef) {
+        BuildReferenceTable refs = getTable();
+        boolean newProject = refs.add(buildRef.projectName, buildRef.buildNumber, buildRef.buildResult);
+
+        if (rootDir == null || refs.size() <= SIDECAR_THRESHOLD) {
+            return;
+        }
+        try {
+            writeSidecar(refs, newProject);
+        } catch (IOException e) {
+            // keep everything in build.xml instead, which is slower but still correct
+            LOGGER.log(Level.WARNING, "Unable to write " + SIDECAR_FILE_NAME + " in " + rootDir, e);
+            sidecarSize = 0;
+            table = refs;
         }
-        return action;
     }
 
-    public void addBuildReference(BuildReference buildRef) {
-        this.builds.add(buildRef);
+    private synchronized void setRemoteServer(String project, String remoteServerName) {
+        if (servers == null) {
+            servers = new HashMap<String, String>();
+        }
+        servers.put(project, remoteServerName);
+    }
+
+    /**
+     * The sidecar file is append-only: it is written in full the first time the threshold is crossed, after that
+     * every new reference only appends a single line.
+     */
+    private void writeSidecar(BuildReferenceTable refs, boolean newProject) throws IOException {
+        boolean append = sidecarSize > 0;
+        Writer out = new OutputStreamWriter(new FileOutputStream(getSidecarFile(), append), "UTF-8");
+        try {
+            if (append) {
+                refs.writeEntry(refs.size() - 1, newProject, out);
+            } else {
+                refs.writeTo(out);
+            }
+        } finally {
+            out.close();
+        }
+        sidecarSize = refs.size();
+        // build.xml now only records how many references live in the sidecar
+        table = null;
+        sidecar = refs;
+    }
+
+    private File getSidecarFile() {
+        return new File(rootDir, SIDECAR_FILE_NAME);
+    }
+
+    /**
+     * @return all recorded references, lazily loading them from the sidecar file if needed
+     */
+    private synchronized BuildReferenceTable getTable() {
+        if (table != null) {
+            return table;
+        }
+        if (sidecar == null) {
+            sidecar = loadSidecar();
+        }
+        return sidecar;
+    }
+
+    private BuildReferenceTable loadSidecar() {
+        if (sidecarSize == 0 || rootDir == null) {
+            return new BuildReferenceTable();
+        }
+        try {
+            BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(getSidecarFile()),
+                    "UTF-8"));
+            try {
+                return BuildReferenceTable.readFrom(in);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Unable to read " + SIDECAR_FILE_NAME + " in " + rootDir, e);
+            return new BuildReferenceTable();
+        }
     }
 
     public static class BuildReference {
@@ -74,9 +215,14 @@ class BuildInfoExporterAction implements EnvironmentContributingAction {
     }
 
     public void buildEnvVars(AbstractBuild<?, ?> build, EnvVars env) {
-        for (String project : getProjectsWithBuilds()) {
+        if (rootDir == null) {
+            rootDir = build.getRootDir();
+        }
+        BuildReferenceTable table = getTable();
+
+        for (String project : getProjectsWithBuilds(table)) {
             String sanatizedBuildName = project.replaceAll("[^a-zA-Z0-9]+", "_");
-            List<BuildReference> refs = getBuildRefs(project);
+            List<BuildReference> refs = getBuildRefs(table, project);
 
             env.put(ALL_BUILD_NUMBER_VARIABLE_PREFIX + sanatizedBuildName, getBuildNumbersString(refs, ","));
             env.put(BUILD_RUN_COUNT_PREFIX + sanatizedBuildName, Integer.toString(refs.size()));
@@ -97,13 +243,23 @@ class BuildInfoExporterAction implements EnvironmentContributingAction {
                 env.put(BUILD_NUMBER_VARIABLE_PREFIX + sanatizedBuildName, Integer.toString(lastBuild.buildNumber));
                 env.put(BUILD_RESULT_VARIABLE_PREFIX + sanatizedBuildName, lastBuild.buildResult.toString());
             }
+            String remoteServerName = getRemoteServer(project);
+            if (remoteServerName != null) {
+                env.put(SERVER_VARIABLE_PREFIX + sanatizedBuildName, remoteServerName);
+            }
         }
     }
 
-    private List<BuildReference> getBuildRefs(String project) {
+    private synchronized String getRemoteServer(String project) {
+        return servers == null ? null : servers.get(project);
+    }
+
+    private List<BuildReference> getBuildRefs(BuildReferenceTable table, String project) {
         List<BuildReference> refs = new ArrayList<BuildReference>();
-        for (BuildReference br : builds) {
-            if (br.projectName.equals(project)) refs.add(br);
+        for (int i = 0; i < table.size(); i++) {
+            if (table.getProjectName(i).equals(project)) {
+                refs.add(new BuildReference(project, table.getBuildNumber(i), table.getBuildResult(i)));
+            }
         }
         return refs;
     }
@@ -138,12 +294,12 @@ class BuildInfoExporterAction implements EnvironmentContributingAction {
      *
      * @return Set of project names that have at least one build linked.
      */
-    private Set<String> getProjectsWithBuilds() {
-        Set<String> projects = new HashSet<String>();
+    private Set<String> getProjectsWithBuilds(BuildReferenceTable table) {
+        Set<String> projects = new LinkedHashSet<String>();
 
-        for (BuildReference br : this.builds) {
-            if (br.buildNumber != 0) {
-                projects.add(br.projectName);
+        for (int i = 0; i < table.size(); i++) {
+            if (table.getBuildNumber(i) != 0) {
+                projects.add(table.getProjectName(i));
             }
         }
         return projects;
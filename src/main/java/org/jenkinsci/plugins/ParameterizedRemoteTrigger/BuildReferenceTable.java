@@ -0,0 +1,258 @@
+package org.jenkinsci.plugins.ParameterizedRemoteTrigger;
+
+import hudson.model.Result;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.thoughtworks.xstream.converters.ConversionException;
+import com.thoughtworks.xstream.converters.Converter;
+import com.thoughtworks.xstream.converters.MarshallingContext;
+import com.thoughtworks.xstream.converters.UnmarshallingContext;
+import com.thoughtworks.xstream.io.HierarchicalStreamReader;
+import com.thoughtworks.xstream.io.HierarchicalStreamWriter;
+
+/**
+ * Compact, append-only store of the remote builds recorded by {@link BuildInfoExporterAction}.
+ *
+ * Project names are interned into a small lookup table and every reference is kept as three primitive ints (project
+ * index, build number and result ordinal), so a build that triggers thousands of remote runs only costs a few bytes
+ * per run in memory and in <tt>build.xml</tt>.
+ */
+final class BuildReferenceTable {
+
+    /** Stored in place of a result ordinal when the remote build had no result yet. */
+    static final int NO_RESULT = -1;
+
+    /** Every {@link Result} a remote build can report, used to map ordinals back to the shared instances. */
+    private static final Result[] RESULTS = { Result.SUCCESS, Result.UNSTABLE, Result.FAILURE, Result.NOT_BUILT,
+            Result.ABORTED };
+
+    private final List<String>         projects       = new ArrayList<String>();
+    private final Map<String, Integer> projectIndexes = new HashMap<String, Integer>();
+
+    // triplets of (project index, build number, result ordinal)
+    private int[]                      entries        = new int[3 * 4];
+    private int                        size;
+
+    /**
+     * Appends a reference to the table.
+     *
+     * @return true if <tt>projectName</tt> was seen for the first time and had to be interned
+     */
+    boolean add(String projectName, int buildNumber, Result buildResult) {
+        Integer index = projectIndexes.get(projectName);
+        boolean interned = false;
+
+        if (index == null) {
+            index = projects.size();
+            intern(projectName);
+            interned = true;
+        }
+
+        if (3 * (size + 1) > entries.length) {
+            entries = Arrays.copyOf(entries, entries.length * 2);
+        }
+        entries[3 * size] = index;
+        entries[3 * size + 1] = buildNumber;
+        entries[3 * size + 2] = toOrdinal(buildResult);
+        size++;
+
+        return interned;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int getProjectIndex(int i) {
+        return entries[3 * i];
+    }
+
+    String getProjectName(int i) {
+        return projects.get(entries[3 * i]);
+    }
+
+    int getBuildNumber(int i) {
+        return entries[3 * i + 1];
+    }
+
+    Result getBuildResult(int i) {
+        return fromOrdinal(entries[3 * i + 2]);
+    }
+
+    /**
+     * @return the interned project names, in the order they were first added
+     */
+    List<String> getProjectNames() {
+        return projects;
+    }
+
+    static int toOrdinal(Result result) {
+        return result == null ? NO_RESULT : result.ordinal;
+    }
+
+    static Result fromOrdinal(int ordinal) {
+        for (Result result : RESULTS) {
+            if (result.ordinal == ordinal) {
+                return result;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Encodes the references as "projectIndex:buildNumber:resultOrdinal" triplets separated by commas.
+     */
+    String encodeEntries() {
+        StringBuilder buf = new StringBuilder(size * 8);
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                buf.append(',');
+            }
+            buf.append(entries[3 * i]).append(':').append(entries[3 * i + 1]).append(':').append(entries[3 * i + 2]);
+        }
+        return buf.toString();
+    }
+
+    /**
+     * Reverse of {@link #getProjectNames()} and {@link #encodeEntries()}.
+     */
+    static BuildReferenceTable decode(List<String> projectNames, String encoded) {
+        BuildReferenceTable table = new BuildReferenceTable();
+        for (String project : projectNames) {
+            table.intern(project);
+        }
+        table.decodeEntries(encoded);
+        return table;
+    }
+
+    private void intern(String project) {
+        projectIndexes.put(project, projects.size());
+        projects.add(project);
+    }
+
+    private void decodeEntries(String encoded) {
+        if (encoded == null || encoded.length() == 0) {
+            return;
+        }
+        int start = 0;
+        while (start < encoded.length()) {
+            int end = encoded.indexOf(',', start);
+            if (end < 0) {
+                end = encoded.length();
+            }
+            int first = encoded.indexOf(':', start);
+            int second = encoded.indexOf(':', first + 1);
+            if (first < 0 || second < 0 || second > end) {
+                throw new IllegalArgumentException("Malformed build reference: " + encoded.substring(start, end));
+            }
+            int project = Integer.parseInt(encoded.substring(start, first));
+            int number = Integer.parseInt(encoded.substring(first + 1, second));
+            int ordinal = Integer.parseInt(encoded.substring(second + 1, end));
+            add(projects.get(project), number, fromOrdinal(ordinal));
+            start = end + 1;
+        }
+    }
+
+    /**
+     * Writes a single reference in the sidecar line format. A project name is written on its own line the first
+     * time it is used, so the file stays interned just like the in-memory table.
+     */
+    void writeEntry(int i, boolean newProject, Writer out) throws IOException {
+        if (newProject) {
+            out.write("P\t" + getProjectName(i) + "\n");
+        }
+        out.write("R\t" + getProjectIndex(i) + "\t" + getBuildNumber(i) + "\t" + entries[3 * i + 2] + "\n");
+    }
+
+    /**
+     * Writes the whole table in the sidecar line format.
+     */
+    void writeTo(Writer out) throws IOException {
+        for (String project : projects) {
+            out.write("P\t" + project + "\n");
+        }
+        for (int i = 0; i < size; i++) {
+            writeEntry(i, false, out);
+        }
+    }
+
+    /**
+     * Reads a table previously written with {@link #writeTo(Writer)} and {@link #writeEntry(int, boolean, Writer)}.
+     */
+    static BuildReferenceTable readFrom(BufferedReader in) throws IOException {
+        BuildReferenceTable table = new BuildReferenceTable();
+        String line;
+
+        while ((line = in.readLine()) != null) {
+            if (line.startsWith("P\t")) {
+                table.intern(line.substring(2));
+            } else if (line.startsWith("R\t")) {
+                String[] fields = line.split("\t");
+                if (fields.length != 4) {
+                    // most likely a partially written last line, everything before it is still good
+                    break;
+                }
+                table.add(table.projects.get(Integer.parseInt(fields[1])), Integer.parseInt(fields[2]),
+                        fromOrdinal(Integer.parseInt(fields[3])));
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Persists the table as
+     *
+     * <pre>
+     * &lt;project&gt;name&lt;/project&gt;...&lt;entries&gt;0:12:0,0:13:2&lt;/entries&gt;
+     * </pre>
+     *
+     * instead of one XML element per field. Picked up by XStream through the <tt>ConverterImpl</tt> naming convention.
+     */
+    public static final class ConverterImpl implements Converter {
+
+        public boolean canConvert(Class type) {
+            return type == BuildReferenceTable.class;
+        }
+
+        public void marshal(Object source, HierarchicalStreamWriter writer, MarshallingContext context) {
+            BuildReferenceTable table = (BuildReferenceTable) source;
+
+            for (String project : table.projects) {
+                writer.startNode("project");
+                writer.setValue(project);
+                writer.endNode();
+            }
+            writer.startNode("entries");
+            writer.setValue(table.encodeEntries());
+            writer.endNode();
+        }
+
+        public Object unmarshal(HierarchicalStreamReader reader, UnmarshallingContext context) {
+            List<String> projectNames = new ArrayList<String>();
+            String encoded = null;
+
+            while (reader.hasMoreChildren()) {
+                reader.moveDown();
+                if ("project".equals(reader.getNodeName())) {
+                    projectNames.add(reader.getValue());
+                } else if ("entries".equals(reader.getNodeName())) {
+                    encoded = reader.getValue();
+                }
+                reader.moveUp();
+            }
+            try {
+                return decode(projectNames, encoded);
+            } catch (RuntimeException e) {
+                throw new ConversionException("Unable to read remote build references", e);
+            }
+        }
+    }
+}
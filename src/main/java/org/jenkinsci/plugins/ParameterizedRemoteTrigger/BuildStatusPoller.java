@@ -0,0 +1,162 @@
+package org.jenkinsci.plugins.ParameterizedRemoteTrigger;
+
+import hudson.Util;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+
+/**
+ * Polls all the builds of one remote job that are being waited on in a single request,
+ * <tt>job/X/api/json?tree=builds[...]{0,K}</tt>, instead of one request per build. Whoever polls a build within the
+ * poll interval of the last request gets its answer from that request; the first one to poll after that sends the
+ * next request for everybody, while the others wait for it. With many local builds waiting on the same remote job,
+ * the remote server gets one request per poll interval rather than one per waiting build.
+ * <p>
+ * There is one poller per remote server, remote job and credentials. Builds too far apart to be covered by one
+ * request of at most {@link #MAX_BUILDS} builds are polled on their own, as before.
+ */
+final class BuildStatusPoller {
+
+    /**
+     * Sends a GET request to the remote server.
+     */
+    interface Source {
+        /**
+         * @return the JSON answer, or null if there was none
+         */
+        JSONObject fetch(String urlString) throws IOException, InterruptedException;
+    }
+
+    static final int MAX_BUILDS = Integer.getInteger(BuildStatusPoller.class.getName() + ".maxBuilds", 100);
+
+    // what the remote server is asked about each build, the same as its own JSON API answers
+    private static final String TREE = "builds[number,building,result,estimatedDuration,url]";
+
+    private static final ConcurrentMap<String, BuildStatusPoller> POLLERS = new ConcurrentHashMap<String, BuildStatusPoller>();
+
+    // held while a request is on the wire; not a monitor, a poll may run on a virtual thread
+    private final ReentrantLock           lock    = new ReentrantLock();
+    // when each build was last polled, by build number
+    private final Map<Integer, Long>      watched = new HashMap<Integer, Long>();
+    // the answer of the last request, by build number
+    private Map<Integer, JSONObject>      builds  = Collections.emptyMap();
+    private int                           newest;
+    private long                          fetched;
+    private int                           requests;
+    // false once the remote server answered without listing the builds
+    private boolean                       batching = true;
+
+    BuildStatusPoller() {
+    }
+
+    /**
+     * @param authorization
+     *            the "Authorization" header the builds are polled with, null if anonymous
+     * @return the poller of the given remote job
+     */
+    static BuildStatusPoller get(String remoteServerName, String jobName, String authorization) {
+        String key = remoteServerName + '\n' + jobName + '\n'
+                + (authorization == null ? "" : Util.getDigestOf(authorization));
+        BuildStatusPoller poller = POLLERS.get(key);
+        if (poller == null) {
+            POLLERS.putIfAbsent(key, new BuildStatusPoller());
+            poller = POLLERS.get(key);
+        }
+        return poller;
+    }
+
+    /**
+     * @param jobUrl
+     *            URL of the remote job
+     * @param maxAge
+     *            how old, in milliseconds, the answer of the last request may be to still be used
+     * @return the status of the build, as its own JSON API would answer it, null if it hasn't started yet
+     */
+    JSONObject poll(int buildNumber, String jobUrl, long maxAge, Source source) throws IOException,
+            InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            long now = System.currentTimeMillis();
+            watched.put(buildNumber, now);
+            if (now - fetched < maxAge && covers(buildNumber)) {
+                return builds.get(buildNumber);
+            }
+
+            // the builds nobody has asked about for two intervals are no longer waited on
+            int low = Integer.MAX_VALUE;
+            int high = newest;
+            for (Iterator<Map.Entry<Integer, Long>> it = watched.entrySet().iterator(); it.hasNext();) {
+                Map.Entry<Integer, Long> entry = it.next();
+                if (now - entry.getValue() > 2 * maxAge) {
+                    it.remove();
+                } else {
+                    low = Math.min(low, entry.getKey());
+                    high = Math.max(high, entry.getKey());
+                }
+            }
+
+            // the list starts with the newest build of the job, it has to reach down to the oldest one waited on
+            int count = high - low + 1;
+            if (batching && count <= MAX_BUILDS) {
+                JSONObject response = source.fetch(jobUrl + "/api/json?tree=" + TREE + "{0," + count + "}");
+                requests++;
+                if (update(response, now) && covers(buildNumber)) {
+                    return builds.get(buildNumber);
+                }
+            }
+            // newer builds have pushed it out of the list, or the remote server didn't list the builds at all
+            return source.fetch(jobUrl + "/" + buildNumber + "/api/json");
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return true if the answer of the last request tells about the given build
+     */
+    private boolean covers(int buildNumber) {
+        // builds newer than the newest one of the list haven't started yet
+        return builds.containsKey(buildNumber) || buildNumber > newest;
+    }
+
+    /**
+     * @return false if the response didn't list the builds
+     */
+    private boolean update(JSONObject response, long now) {
+        if (response == null || !response.has("builds")) {
+            batching = false;
+            return false;
+        }
+        Map<Integer, JSONObject> byNumber = new HashMap<Integer, JSONObject>();
+        JSONArray list = response.getJSONArray("builds");
+        for (int i = 0; i < list.size(); i++) {
+            JSONObject build = list.getJSONObject(i);
+            byNumber.put(build.getInt("number"), build);
+            newest = Math.max(newest, build.getInt("number"));
+        }
+        builds = byNumber;
+        fetched = now;
+        return true;
+    }
+
+    /**
+     * @return how many batched requests were sent so far
+     */
+    int getRequests() {
+        lock.lock();
+        try {
+            return requests;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
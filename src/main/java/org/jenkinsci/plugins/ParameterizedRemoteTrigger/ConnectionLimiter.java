@@ -0,0 +1,166 @@
+package org.jenkinsci.plugins.ParameterizedRemoteTrigger;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Caps how many requests to one remote server are on the wire at the same time. Every request holds a connection of
+ * its own while it runs; once its response has been read to the end, that connection goes back to the keep-alive cache
+ * of the JDK and the next request reuses it. With the cap at or below the size of that cache (the
+ * <tt>http.maxConnections</tt> system property, 5 by default), hundreds of builds waiting on the same server share a
+ * handful of sockets instead of opening one each.
+ * <p>
+ * A {@link RemoteBuildExecution} doesn't wait for a free connection: it holds one for a whole step, taken with
+ * {@link #tryHold(Runnable)}, and is woken up once one is given back if none was free. The requests the step sends on
+ * its thread go out on the connection it holds.
+ */
+public final class ConnectionLimiter {
+
+    /** No cap, every request goes out right away. */
+    static final ConnectionLimiter UNLIMITED = new ConnectionLimiter(0);
+
+    private static final ConcurrentMap<String, ConnectionLimiter> LIMITERS = new ConcurrentHashMap<String, ConnectionLimiter>();
+
+    private final int           maxConnections;
+    private final Semaphore     permits;
+    private final AtomicInteger waiting = new AtomicInteger();
+    // run, one at a time and in order, as connections are given back; guarded by itself
+    private final Set<Runnable> waiters = new LinkedHashSet<Runnable>();
+
+    // the limiter whose connection the step running on this thread holds
+    private static final ThreadLocal<ConnectionLimiter> HELD = new ThreadLocal<ConnectionLimiter>();
+
+    ConnectionLimiter(int maxConnections) {
+        this.maxConnections = maxConnections;
+        this.permits = maxConnections > 0 ? new Semaphore(maxConnections, true) : null;
+    }
+
+    /**
+     * @param remoteServerName
+     *            display name of the remote server
+     * @param maxConnections
+     *            as currently configured, 0 for no cap
+     * @return the limiter of the given server; a new one if the cap was changed, requests already holding a connection
+     *         give it back to the limiter they got it from
+     */
+    static ConnectionLimiter of(String remoteServerName, int maxConnections) {
+        if (maxConnections <= 0) {
+            return UNLIMITED;
+        }
+        ConnectionLimiter limiter = LIMITERS.get(remoteServerName);
+        while (limiter == null || limiter.maxConnections != maxConnections) {
+            ConnectionLimiter replacement = new ConnectionLimiter(maxConnections);
+            if (limiter == null ? LIMITERS.putIfAbsent(remoteServerName, replacement) == null : LIMITERS.replace(
+                    remoteServerName, limiter, replacement)) {
+                return replacement;
+            }
+            limiter = LIMITERS.get(remoteServerName);
+        }
+        return limiter;
+    }
+
+    /**
+     * Waits for a connection to be free, no longer than the deadline.
+     */
+    void acquire(Deadline deadline) throws InterruptedException, DeadlineExceededException {
+        if (permits == null || HELD.get() == this || permits.tryAcquire()) {
+            return;
+        }
+        waiting.incrementAndGet();
+        try {
+            if (deadline == Deadline.NONE) {
+                permits.acquire();
+            } else if (!permits.tryAcquire(deadline.remaining(), TimeUnit.MILLISECONDS)) {
+                throw new DeadlineExceededException(deadline);
+            }
+        } finally {
+            waiting.decrementAndGet();
+        }
+    }
+
+    void release() {
+        if (permits != null && HELD.get() != this) {
+            permits.release();
+            wakeNext();
+        }
+    }
+
+    /**
+     * Takes a connection for the requests sent on this thread, until {@link #unhold()}, without waiting for one.
+     *
+     * @param waiter
+     *            run once a connection has been given back, if none is free now
+     * @return false if no connection was free
+     */
+    boolean tryHold(Runnable waiter) {
+        if (permits != null) {
+            synchronized (waiters) {
+                if (!permits.tryAcquire()) {
+                    waiters.add(waiter);
+                    return false;
+                }
+                waiters.remove(waiter);
+            }
+        }
+        HELD.set(this);
+        return true;
+    }
+
+    /**
+     * Gives back the connection taken with {@link #tryHold(Runnable)}.
+     */
+    void unhold() {
+        HELD.remove();
+        release();
+    }
+
+    /**
+     * Stops waiting for a connection. A waiter already woken up passes its turn on to the next one.
+     */
+    void withdraw(Runnable waiter) {
+        boolean removed;
+        synchronized (waiters) {
+            removed = waiters.remove(waiter);
+        }
+        if (!removed && permits != null) {
+            wakeNext();
+        }
+    }
+
+    private void wakeNext() {
+        Runnable next;
+        synchronized (waiters) {
+            Iterator<Runnable> it = waiters.iterator();
+            if (!it.hasNext()) {
+                return;
+            }
+            next = it.next();
+            it.remove();
+        }
+        next.run();
+    }
+
+    int getInUse() {
+        return permits == null ? 0 : maxConnections - permits.availablePermits();
+    }
+
+    int getWaiting() {
+        synchronized (waiters) {
+            return waiting.get() + waiters.size();
+        }
+    }
+
+    @Override
+    public String toString() {
+        if (permits == null) {
+            return "no limit";
+        }
+        return String.format("%d of %d in use, %d requests waiting", getInUse(), maxConnections, getWaiting());
+    }
+}
@@ -0,0 +1,139 @@
+package org.jenkinsci.plugins.ParameterizedRemoteTrigger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Copies the console output of a remote build to a spill stream as it comes in, and keeps only its last lines in
+ * memory, so that a remote log of any size takes a bounded amount of heap. The tail is bounded both in lines and in
+ * characters; a line longer than the whole tail is cut.
+ */
+final class ConsoleCapture {
+
+    private final int      maxLines;
+    private final int      maxChars;
+
+    // ring buffer of the last lines, "first" is the oldest one
+    private final String[] lines;
+    private int            first;
+    private int            size;
+    private long           chars;
+
+    private long           lineCount;
+    private long           byteCount;
+    // the line being read, up to maxChars bytes of it
+    private final ByteArrayOutputStream current = new ByteArrayOutputStream(256);
+
+    /**
+     * @param maxLines
+     *            how many of the last lines to keep
+     * @param maxChars
+     *            how many characters of the last lines to keep, at most
+     */
+    ConsoleCapture(int maxLines, int maxChars) {
+        this.maxLines = maxLines;
+        this.maxChars = maxChars;
+        this.lines = new String[maxLines];
+    }
+
+    /**
+     * Reads the console output to its end, writing every byte of it to the spill stream. Neither stream is closed.
+     */
+    void copy(InputStream in, OutputStream spill) throws IOException {
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) >= 0) {
+            spill.write(buffer, 0, read);
+            byteCount += read;
+            int start = 0;
+            for (int i = 0; i < read; i++) {
+                if (buffer[i] == '\n') {
+                    append(buffer, start, i - start);
+                    endLine();
+                    start = i + 1;
+                }
+            }
+            append(buffer, start, read - start);
+        }
+        if (current.size() > 0) {
+            endLine();
+        }
+    }
+
+    private void append(byte[] buffer, int start, int length) {
+        int room = maxChars - current.size();
+        if (room > 0) {
+            current.write(buffer, start, Math.min(room, length));
+        }
+    }
+
+    private void endLine() throws UnsupportedEncodingException {
+        byte[] line = current.toByteArray();
+        int length = line.length;
+        if (length > 0 && line[length - 1] == '\r') {
+            length--;
+        }
+        add(new String(line, 0, length, "UTF-8"));
+        current.reset();
+    }
+
+    /**
+     * Adds a line to the tail, dropping the oldest ones as needed.
+     */
+    void add(String line) {
+        lineCount++;
+        if (maxLines == 0) {
+            return;
+        }
+        if (size == maxLines) {
+            dropOldest();
+        }
+        lines[(first + size) % maxLines] = line;
+        size++;
+        chars += line.length();
+        while (chars > maxChars && size > 1) {
+            dropOldest();
+        }
+    }
+
+    private void dropOldest() {
+        chars -= lines[first].length();
+        lines[first] = null;
+        first = (first + 1) % maxLines;
+        size--;
+    }
+
+    /**
+     * @return the last lines, oldest first
+     */
+    List<String> getTail() {
+        List<String> tail = new ArrayList<String>(size);
+        for (int i = 0; i < size; i++) {
+            tail.add(lines[(first + i) % maxLines]);
+        }
+        return tail;
+    }
+
+    /**
+     * @return how many lines were read but are not in the tail
+     */
+    long getSkippedLines() {
+        return lineCount - size;
+    }
+
+    long getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * @return how many bytes were copied to the spill stream
+     */
+    long getByteCount() {
+        return byteCount;
+    }
+}
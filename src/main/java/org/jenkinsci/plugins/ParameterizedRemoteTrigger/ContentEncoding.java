@@ -0,0 +1,128 @@
+package org.jenkinsci.plugins.ParameterizedRemoteTrigger;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Compression of the responses of the remote servers: every request asks for a gzip or deflate encoded response, and
+ * the response body is decompressed as it is read, never as a whole. The bytes received on the wire and the bytes they
+ * decoded to are added to the {@link RemoteCallStatistics} of the server once the body has been read.
+ */
+final class ContentEncoding {
+
+    static final String ACCEPTED = "gzip, deflate";
+
+    private ContentEncoding() {
+    }
+
+    /**
+     * Asks for a compressed response, to be read through {@link #decode(HttpURLConnection, InputStream,
+     * RemoteCallStatistics)}.
+     */
+    static void accept(HttpURLConnection connection) {
+        connection.setRequestProperty("Accept-Encoding", ACCEPTED);
+    }
+
+    /**
+     * @param body
+     *            the body of the response, as read from the connection (its input or its error stream), may be null
+     * @param statistics
+     *            where to record the bytes transferred, may be null
+     * @return the decoded body, null if there is none
+     */
+    static InputStream decode(HttpURLConnection connection, InputStream body, RemoteCallStatistics statistics)
+            throws IOException {
+        if (body == null) {
+            return null;
+        }
+        CountingInputStream wire = new CountingInputStream(body, null, null);
+        String encoding = connection.getContentEncoding();
+        InputStream decoded;
+        if ("gzip".equalsIgnoreCase(encoding) || "x-gzip".equalsIgnoreCase(encoding)) {
+            try {
+                decoded = new GZIPInputStream(wire);
+            } catch (EOFException e) {
+                // no body at all, e.g. the answer to a trigger
+                decoded = wire;
+            }
+        } else if ("deflate".equalsIgnoreCase(encoding)) {
+            decoded = inflate(wire);
+        } else {
+            decoded = wire;
+        }
+        return new CountingInputStream(decoded, wire, statistics);
+    }
+
+    /**
+     * "deflate" should be zlib-wrapped, but some servers send raw deflate data; tell them apart by the zlib header.
+     */
+    private static InputStream inflate(InputStream wire) throws IOException {
+        BufferedInputStream in = new BufferedInputStream(wire, 2);
+        in.mark(2);
+        int cmf = in.read();
+        int flg = in.read();
+        in.reset();
+        boolean zlib = cmf >= 0 && flg >= 0 && (cmf & 0x0F) == 8 && ((cmf << 8) | flg) % 31 == 0;
+        return new InflaterInputStream(in, new Inflater(!zlib));
+    }
+
+    /**
+     * Counts the bytes read through it. The outer one of a response records both counts when the body is closed.
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+        private final CountingInputStream  wire;
+        private final RemoteCallStatistics statistics;
+        private long                       count;
+        private boolean                    recorded;
+
+        CountingInputStream(InputStream in, CountingInputStream wire, RemoteCallStatistics statistics) {
+            super(in);
+            this.wire = wire;
+            this.statistics = statistics;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                if (statistics != null && !recorded) {
+                    recorded = true;
+                    statistics.recordTransfer(wire.count, count);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package org.jenkinsci.plugins.ParameterizedRemoteTrigger;
+
+import hudson.Extension;
+import hudson.XmlFile;
+import hudson.model.Item;
+import hudson.model.Saveable;
+import hudson.model.listeners.SaveableListener;
+import hudson.security.ACL;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.cloudbees.plugins.credentials.CredentialsProvider;
+import com.cloudbees.plugins.credentials.SystemCredentialsProvider;
+import com.cloudbees.plugins.credentials.common.StandardUsernameCredentials;
+import com.cloudbees.plugins.credentials.common.UsernamePasswordCredentials;
+import com.cloudbees.plugins.credentials.domains.DomainRequirement;
+
+/**
+ * Controller-wide index of the username/password credentials by id. Looking credentials up in the credentials store
+ * means going through every credential of every provider, which is far too slow (and contended) to do on every call to
+ * a remote server. The index is dropped whenever the credentials are saved, and at the latest after
+ * {@link #MAX_AGE}, for providers that don't save through {@link SaveableListener}.
+ */
+final class CredentialsCache {
+
+    static final long MAX_AGE = Long.getLong(CredentialsCache.class.getName() + ".maxAge", 5 * 60 * 1000);
+
+    private static final Object LOCK = new Object();
+
+    // null until the first lookup and after every invalidation
+    private static volatile Map<String, UsernamePasswordCredentials> byId;
+    private static long loaded;
+    // bumped by every invalidation, so that a lookup running at the same time doesn't publish stale credentials
+    private static long generation;
+
+    private CredentialsCache() {
+    }
+
+    /**
+     * @return the username/password credentials with the given id, or null if there are none
+     */
+    static UsernamePasswordCredentials get(String id) {
+        Map<String, UsernamePasswordCredentials> index = byId;
+        if (index == null || System.currentTimeMillis() - loaded > MAX_AGE) {
+            index = load();
+        }
+        UsernamePasswordCredentials credentials = index.get(id);
+        if (credentials == null) {
+            // may have been added without us hearing about it
+            index = load();
+            credentials = index.get(id);
+        }
+        return credentials;
+    }
+
+    static void invalidate() {
+        synchronized (LOCK) {
+            generation++;
+            byId = null;
+        }
+    }
+
+    private static Map<String, UsernamePasswordCredentials> load() {
+        long startGeneration;
+        synchronized (LOCK) {
+            startGeneration = generation;
+        }
+
+        Item item = null;
+        Map<String, UsernamePasswordCredentials> index = new HashMap<String, UsernamePasswordCredentials>();
+        for (StandardUsernameCredentials credentials : CredentialsProvider.lookupCredentials(
+                StandardUsernameCredentials.class, item, ACL.SYSTEM, Collections.<DomainRequirement> emptyList())) {
+            if (credentials instanceof UsernamePasswordCredentials && !index.containsKey(credentials.getId())) {
+                index.put(credentials.getId(), (UsernamePasswordCredentials) credentials);
+            }
+        }
+
+        synchronized (LOCK) {
+            if (generation == startGeneration) {
+                byId = Collections.unmodifiableMap(index);
+                loaded = System.currentTimeMillis();
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Drops the index whenever the system credentials are saved.
+     */
+    @Extension
+    public static class Invalidator extends SaveableListener {
+        @Override
+        public void onChange(Saveable o, XmlFile file) {
+            if (o instanceof SystemCredentialsProvider) {
+                invalidate();
+            }
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package org.jenkinsci.plugins.ParameterizedRemoteTrigger;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import net.sf.json.JSONObject;
+
+/**
+ * Controller-wide cache of the CSRF crumbs of the remote servers, one per remote address and user. A crumb is fetched
+ * from <tt>/crumbIssuer/api/json</tt> the first time it is needed and then reused by every build, until the remote
+ * server rejects it. When several builds need the same crumb at the same time, only one of them fetches it and the
+ * others wait for its answer: a {@link RemoteBuildExecution} without holding on to a thread, see
+ * {@link #whenFetched(String, AuthContext, Runnable)}.
+ */
+final class CrumbCache {
+
+    private static final ConcurrentMap<String, Fetch> CRUMBS = new ConcurrentHashMap<String, Fetch>();
+
+    private CrumbCache() {
+    }
+
+    /**
+     * @param address
+     *            address of the remote server, as configured
+     * @param readTimeout
+     *            in milliseconds, for the crumb request if one is needed
+     * @return the crumb to send along with POSTs to the given address, {@link Crumb#NONE} if the remote server doesn't
+     *         issue crumbs
+     * @throws IOException
+     *             if the crumb could not be fetched
+     */
+    static Crumb get(String address, AuthContext auth, int readTimeout, Deadline deadline) throws IOException,
+            InterruptedException {
+        String key = getKey(address, auth);
+        Fetch task = CRUMBS.get(key);
+        if (task == null) {
+            Fetch fetch = new Fetch(newFetch(address, auth, readTimeout, deadline));
+            task = CRUMBS.putIfAbsent(key, fetch);
+            if (task == null) {
+                // we won the race, everybody else waits for us
+                task = fetch;
+                fetch.run();
+            }
+        }
+
+        try {
+            if (deadline == Deadline.NONE) {
+                return task.get();
+            }
+            return task.get(deadline.remaining(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new DeadlineExceededException(deadline);
+        } catch (ExecutionException e) {
+            // don't keep the failure around, the next caller tries again
+            CRUMBS.remove(key, task);
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Tells whether {@link #get} would have to wait for the crumb another build is fetching.
+     *
+     * @param waiter
+     *            run once that crumb has been fetched, if it hasn't been yet
+     * @return true if the crumb can be got without waiting for another build
+     */
+    static boolean whenFetched(String address, AuthContext auth, Runnable waiter) {
+        Fetch task = CRUMBS.get(getKey(address, auth));
+        return task == null || !task.addListener(waiter);
+    }
+
+    /**
+     * Drops a crumb the remote server has rejected, unless it has already been replaced by a newer one.
+     */
+    static void invalidate(String address, AuthContext auth, Crumb rejected) {
+        String key = getKey(address, auth);
+        Fetch task = CRUMBS.get(key);
+        if (task == null || !task.isDone()) {
+            return;
+        }
+        try {
+            if (task.get() == rejected) {
+                CRUMBS.remove(key, task);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            CRUMBS.remove(key, task);
+        }
+    }
+
+    private static String getKey(String address, AuthContext auth) {
+        return address + '\n' + auth.getUsername();
+    }
+
+    private static Callable<Crumb> newFetch(final String address, final AuthContext auth, final int readTimeout,
+            final Deadline deadline) {
+        return new Callable<Crumb>() {
+            public Crumb call() throws IOException {
+                return fetch(address, auth, readTimeout, deadline);
+            }
+        };
+    }
+
+    private static Crumb fetch(String address, AuthContext auth, int readTimeout, Deadline deadline)
+            throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(address + "/crumbIssuer/api/json")
+                .openConnection();
+        try {
+            if (auth.getAuthorization() != null) {
+                connection.setRequestProperty("Authorization", auth.getAuthorization());
+            }
+            connection.setRequestProperty("Accept", "application/json");
+            ContentEncoding.accept(connection);
+            connection.setConnectTimeout(deadline.clamp(5000));
+            connection.setReadTimeout(deadline.clamp(readTimeout));
+
+            int status = connection.getResponseCode();
+            if (status == HttpURLConnection.HTTP_NOT_FOUND) {
+                // CSRF protection is off on the remote server
+                return Crumb.NONE;
+            }
+            if (status >= 400) {
+                throw new IOException("Unable to get a crumb from " + address + ", HTTP status " + status);
+            }
+
+            BufferedReader in = new BufferedReader(new InputStreamReader(ContentEncoding.decode(connection,
+                    connection.getInputStream(), null), "UTF-8"));
+            try {
+                StringBuilder response = new StringBuilder();
+                String line;
+                while ((line = in.readLine()) != null) {
+                    response.append(line);
+                }
+                JSONObject crumb = JSONObject.fromObject(response.toString());
+                return new Crumb(crumb.getString("crumbRequestField"), crumb.getString("crumb"));
+            } finally {
+                in.close();
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * The fetch of a crumb, which tells those waiting for it once it is done.
+     */
+    private static final class Fetch extends FutureTask<Crumb> {
+        private List<Runnable> listeners = new ArrayList<Runnable>();
+
+        Fetch(Callable<Crumb> callable) {
+            super(callable);
+        }
+
+        /**
+         * @return false if the fetch is already done, the listener is then not run
+         */
+        synchronized boolean addListener(Runnable listener) {
+            if (isDone()) {
+                return false;
+            }
+            listeners.add(listener);
+            return true;
+        }
+
+        @Override
+        protected void done() {
+            List<Runnable> done;
+            synchronized (this) {
+                done = listeners;
+                listeners = null;
+            }
+            for (Runnable listener : done) {
+                listener.run();
+            }
+        }
+    }
+
+    /**
+     * A crumb, as sent in a request header.
+     */
+    static final class Crumb {
+        static final Crumb NONE = new Crumb(null, null);
+
+        private final String field;
+        private final String value;
+
+        Crumb(String field, String value) {
+            this.field = field;
+            this.value = value;
+        }
+
+        void applyTo(HttpURLConnection connection) {
+            if (field != null) {
+                connection.setRequestProperty(field, value);
+            }
+        }
+    }
+}
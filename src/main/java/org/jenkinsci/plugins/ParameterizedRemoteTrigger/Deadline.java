@@ -0,0 +1,102 @@
+package org.jenkinsci.plugins.ParameterizedRemoteTrigger;
+
+/**
+ * A point in time by which a remote operation has to be done. It is handed down to every HTTP call and every sleep,
+ * so that connect/read timeouts and poll intervals never run past it.
+ */
+final class Deadline {
+
+    /** A deadline that never expires. */
+    static final Deadline NONE = new Deadline(Long.MAX_VALUE, "no deadline");
+
+    private final long   expiresAt;
+    private final String description;
+
+    Deadline(long expiresAt, String description) {
+        this.expiresAt = expiresAt;
+        this.description = description;
+    }
+
+    /**
+     * @param minutes
+     *            time from now, 0 or less for no deadline
+     * @param description
+     *            what the deadline is, used in error messages (e.g. "max queue wait of 5 minutes")
+     */
+    static Deadline after(int minutes, String description) {
+        if (minutes <= 0) {
+            return NONE;
+        }
+        return new Deadline(System.currentTimeMillis() + minutes * 60L * 1000L, description);
+    }
+
+    /**
+     * @return whichever of the two deadlines expires first
+     */
+    Deadline min(Deadline other) {
+        return other.expiresAt < this.expiresAt ? other : this;
+    }
+
+    /**
+     * @return milliseconds left, 0 once the deadline has passed
+     */
+    long remaining() {
+        if (this == NONE) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(0, expiresAt - System.currentTimeMillis());
+    }
+
+    boolean isExpired() {
+        return remaining() == 0;
+    }
+
+    /**
+     * @throws DeadlineExceededException
+     *             if the deadline has passed
+     */
+    void check() throws DeadlineExceededException {
+        if (isExpired()) {
+            throw new DeadlineExceededException(this);
+        }
+    }
+
+    /**
+     * Shortens a connect or read timeout so that it ends no later than the deadline.
+     *
+     * @param timeout
+     *            in milliseconds, 0 meaning no timeout (as for {@link java.net.URLConnection})
+     * @return the timeout to use, never 0 unless both the timeout and the deadline are unlimited
+     */
+    int clamp(int timeout) throws DeadlineExceededException {
+        if (this == NONE) {
+            return timeout;
+        }
+        check();
+        long remaining = remaining();
+        if (timeout > 0 && timeout < remaining) {
+            return timeout;
+        }
+        return (int) Math.max(1, Math.min(remaining, Integer.MAX_VALUE));
+    }
+
+    /**
+     * Sleeps for the given time, or until the deadline if that comes first.
+     *
+     * @throws DeadlineExceededException
+     *             if the deadline was reached
+     */
+    void sleep(long millis) throws InterruptedException, DeadlineExceededException {
+        check();
+        long remaining = remaining();
+        Thread.sleep(Math.min(millis, remaining));
+        if (remaining <= millis) {
+            throw new DeadlineExceededException(this);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return description;
+    }
+}
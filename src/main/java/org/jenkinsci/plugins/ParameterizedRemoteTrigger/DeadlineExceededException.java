@@ -0,0 +1,15 @@
+package org.jenkinsci.plugins.ParameterizedRemoteTrigger;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a remote operation is still not done when its {@link Deadline} passes.
+ */
+public class DeadlineExceededException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    DeadlineExceededException(Deadline deadline) {
+        super("Gave up waiting on the remote server, the " + deadline + " has been reached.");
+    }
+}
@@ -0,0 +1,91 @@
+package org.jenkinsci.plugins.ParameterizedRemoteTrigger;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Health of one address of a remote server: a moving average of its latency and of its error rate, fed both by the
+ * requests of the builds and by the {@link EndpointHealthChecker}. The lower the score, the better the address.
+ */
+public final class EndpointHealth {
+
+    /** Weight of the newest sample in the moving averages. */
+    private static final double ALPHA                = 0.3;
+
+    /** After this many failures in a row an address is only used if no other one is left. */
+    static final int            MAX_FAILURES_IN_A_ROW = 3;
+
+    /** Score of an address we know nothing about yet: worse than any working address, better than a dead one. */
+    static final double         UNKNOWN_SCORE         = 60 * 1000;
+
+    private static final ConcurrentMap<String, EndpointHealth> HEALTH = new ConcurrentHashMap<String, EndpointHealth>();
+
+    private double  latency;
+    private double  errorRate;
+    private int     failuresInARow;
+    // whether a request has been answered yet, until then the latency is unknown
+    private boolean measured;
+    private boolean known;
+
+    EndpointHealth() {
+    }
+
+    /**
+     * @param address
+     *            address of a remote server, as configured
+     * @return the health of the given address, never null
+     */
+    public static EndpointHealth of(String address) {
+        EndpointHealth health = HEALTH.get(address);
+        if (health == null) {
+            HEALTH.putIfAbsent(address, new EndpointHealth());
+            health = HEALTH.get(address);
+        }
+        return health;
+    }
+
+    /**
+     * Records a request that was answered, in milliseconds.
+     */
+    public synchronized void recordSuccess(long millis) {
+        latency = measured ? ALPHA * millis + (1 - ALPHA) * latency : millis;
+        errorRate = (1 - ALPHA) * errorRate;
+        failuresInARow = 0;
+        measured = true;
+        known = true;
+    }
+
+    /**
+     * Records a request that could not be sent or was not answered.
+     */
+    public synchronized void recordFailure() {
+        errorRate = ALPHA + (1 - ALPHA) * errorRate;
+        failuresInARow++;
+        known = true;
+    }
+
+    /**
+     * @return the expected latency, in milliseconds, made worse by the recent errors
+     */
+    public synchronized double getScore() {
+        if (failuresInARow >= MAX_FAILURES_IN_A_ROW) {
+            return Double.MAX_VALUE;
+        }
+        return (measured ? latency : UNKNOWN_SCORE) * (1 + 10 * errorRate);
+    }
+
+    public synchronized boolean isDown() {
+        return failuresInARow >= MAX_FAILURES_IN_A_ROW;
+    }
+
+    @Override
+    public synchronized String toString() {
+        if (!known) {
+            return "not checked yet";
+        }
+        if (isDown()) {
+            return "down (" + failuresInARow + " failures in a row)";
+        }
+        return String.format("%d ms, %.0f%% errors", Math.round(latency), errorRate * 100);
+    }
+}
@@ -0,0 +1,80 @@
+package org.jenkinsci.plugins.ParameterizedRemoteTrigger;
+
+import hudson.Extension;
+import hudson.model.PeriodicWork;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+import jenkins.model.Jenkins;
+
+/**
+ * Probes every address of the remote servers that have more than one, so that builds can pick the best address (and
+ * fail over to another one) without having to find out the hard way.
+ */
+@Extension
+public class EndpointHealthChecker extends PeriodicWork {
+
+    static final long RECURRENCE_PERIOD = Long.getLong(EndpointHealthChecker.class.getName() + ".recurrencePeriod",
+                                                TimeUnit.SECONDS.toMillis(30));
+
+    /** A probe that takes longer than this counts as a failure, in milliseconds. */
+    private static final int PROBE_TIMEOUT = 5000;
+
+    @Override
+    public long getRecurrencePeriod() {
+        return RECURRENCE_PERIOD;
+    }
+
+    @Override
+    protected void doRun() throws Exception {
+        RemoteBuildConfiguration.DescriptorImpl descriptor = Jenkins.getInstance().getDescriptorByType(
+                RemoteBuildConfiguration.DescriptorImpl.class);
+        if (descriptor == null) {
+            return;
+        }
+        for (RemoteJenkinsServer server : descriptor.getRemoteSites()) {
+            if (server.getAddresses().size() < 2) {
+                continue;
+            }
+            for (URL address : server.getAddresses()) {
+                probe(address);
+            }
+        }
+    }
+
+    /**
+     * Asks the remote server for as little as it can answer with.
+     */
+    static void probe(URL address) {
+        EndpointHealth health = EndpointHealth.of(address.toString());
+        HttpURLConnection connection = null;
+        long start = System.currentTimeMillis();
+
+        try {
+            connection = (HttpURLConnection) new URL(address.toString() + "/api/json?tree=mode").openConnection();
+            connection.setConnectTimeout(PROBE_TIMEOUT);
+            connection.setReadTimeout(PROBE_TIMEOUT);
+            int status = connection.getResponseCode();
+            if (status >= 500) {
+                health.recordFailure();
+                return;
+            }
+            // anything below 500 (e.g. 403 without credentials) means the server is there and answering
+            InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+            if (in != null) {
+                in.close();
+            }
+            health.recordSuccess(System.currentTimeMillis() - start);
+        } catch (IOException e) {
+            health.recordFailure();
+        } finally {
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package org.jenkinsci.plugins.ParameterizedRemoteTrigger;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs an idempotent request and, if it hasn't answered within the hedge delay, sends a second, identical request.
+ * Whichever answers first wins and the other one is cancelled. This cuts the tail latency caused by a single slow
+ * connection (e.g. to a bad node behind a load balancer) without doubling the load on the remote server. The winner
+ * is not cancelled, so that its keep-alive connection can be reused by the next request.
+ */
+final class HedgedRequest {
+
+    /**
+     * A single try of the request.
+     */
+    interface Attempt {
+        String call() throws IOException;
+
+        /**
+         * Aborts the request, may be called from another thread while {@link #call()} is still running.
+         */
+        void cancel();
+    }
+
+    interface AttemptFactory {
+        Attempt newAttempt() throws IOException;
+    }
+
+    private static final ExecutorService POOL = newPool();
+
+    private HedgedRequest() {
+    }
+
+    private static ExecutorService newPool() {
+        ExecutorService virtualThreads = VirtualThreads
+                .newPerTaskExecutorIfEnabled("Parameterized Remote Trigger hedged request #");
+        if (virtualThreads != null) {
+            return virtualThreads;
+        }
+        return Executors.newCachedThreadPool(new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "Parameterized Remote Trigger hedged request #"
+                        + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * @param hedgeDelay
+     *            milliseconds to wait for the first attempt before sending the second one
+     * @param statistics
+     *            statistics of the remote server the request is sent to
+     * @return the response of the first attempt that succeeded
+     * @throws IOException
+     *             if both attempts failed (the failure of the last one is thrown), or if the calling thread was
+     *             interrupted
+     */
+    static String execute(AttemptFactory factory, long hedgeDelay, RemoteCallStatistics statistics)
+            throws IOException {
+        CompletionService<String> completion = new ExecutorCompletionService<String>(POOL);
+
+        Attempt primary = factory.newAttempt();
+        Future<String> primaryFuture = completion.submit(asCallable(primary));
+        Attempt hedge = null;
+        Future<String> hedgeFuture = null;
+        Future<String> won = null;
+
+        try {
+            Future<String> first = completion.poll(hedgeDelay, TimeUnit.MILLISECONDS);
+            if (first == null) {
+                statistics.recordHedge();
+                hedge = factory.newAttempt();
+                hedgeFuture = completion.submit(asCallable(hedge));
+                first = completion.take();
+            }
+
+            try {
+                String response = winner(first, hedgeFuture, statistics);
+                won = first;
+                return response;
+            } catch (ExecutionException e) {
+                if (hedgeFuture == null) {
+                    throw unwrap(e);
+                }
+                // one of the two failed, the other one may still come through
+                try {
+                    Future<String> second = completion.take();
+                    String response = winner(second, hedgeFuture, statistics);
+                    won = second;
+                    return response;
+                } catch (ExecutionException e2) {
+                    throw unwrap(e2);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            InterruptedIOException interrupted = new InterruptedIOException("Interrupted while waiting for the remote server");
+            interrupted.initCause(e);
+            throw interrupted;
+        } finally {
+            // disconnecting the winner would close the keep-alive connection it has just given back
+            if (won != primaryFuture) {
+                primary.cancel();
+                primaryFuture.cancel(true);
+            }
+            if (hedge != null && won != hedgeFuture) {
+                hedge.cancel();
+                hedgeFuture.cancel(true);
+            }
+        }
+    }
+
+    private static String winner(Future<String> done, Future<String> hedgeFuture, RemoteCallStatistics statistics)
+            throws InterruptedException, ExecutionException {
+        String response = done.get();
+        if (done == hedgeFuture) {
+            statistics.recordHedgeWin();
+        }
+        return response;
+    }
+
+    private static Callable<String> asCallable(final Attempt attempt) {
+        return new Callable<String>() {
+            public String call() throws IOException {
+                return attempt.call();
+            }
+        };
+    }
+
+    private static IOException unwrap(ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof IOException) {
+            return (IOException) cause;
+        }
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return new IOException(cause);
+    }
+}
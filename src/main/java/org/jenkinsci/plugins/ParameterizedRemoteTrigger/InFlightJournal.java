@@ -0,0 +1,263 @@
+package org.jenkinsci.plugins.ParameterizedRemoteTrigger;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import jenkins.model.Jenkins;
+
+/**
+ * Append-only journal of remote builds that are being waited on, so that a wait interrupted by a controller restart
+ * can pick up the existing remote build instead of triggering it again.
+ *
+ * Every state change is a single line appended to the journal file:
+ *
+ * <pre>
+ * OPEN    id key server job buildNumber queueId startTime
+ * CLOSE   id
+ * </pre>
+ *
+ * On start-up the journal is replayed and rewritten with only the handles that are still open. Only those handles
+ * can be resumed, each by one wait: a handle opened since belongs to a wait that is still going on.
+ */
+public class InFlightJournal {
+
+    static final String FILE_NAME = "parameterized-remote-trigger-inflight.log";
+
+    /** Open handles older than this are assumed to be abandoned and are dropped when the journal is replayed. */
+    static final long MAX_AGE = TimeUnit.DAYS.toMillis(7);
+
+    /** Rewrite the journal once it holds this many more records than there are open handles. */
+    private static final int COMPACT_THRESHOLD = 1000;
+
+    private static final Logger LOGGER = Logger.getLogger(InFlightJournal.class.getName());
+
+    private static InFlightJournal instance;
+
+    private final File file;
+    private final Map<String, RemoteBuildHandle> open = new LinkedHashMap<String, RemoteBuildHandle>();
+    // the open handles found on start-up that nobody has resumed yet
+    private final Map<String, RemoteBuildHandle> recovered = new LinkedHashMap<String, RemoteBuildHandle>();
+    private Writer writer;
+    private int records;
+
+    InFlightJournal(File file) {
+        this.file = file;
+        replay();
+    }
+
+    /**
+     * @return the journal stored in the Jenkins root directory
+     */
+    public static synchronized InFlightJournal get() {
+        if (instance == null) {
+            instance = new InFlightJournal(new File(Jenkins.getInstance().getRootDir(), FILE_NAME));
+        }
+        return instance;
+    }
+
+    /**
+     * Records that we are now waiting on the given remote build.
+     */
+    public synchronized RemoteBuildHandle open(String key, String remoteServerName, String jobName, int buildNumber,
+            long queueId) {
+        RemoteBuildHandle handle = new RemoteBuildHandle(UUID.randomUUID().toString(), key, remoteServerName,
+                jobName, buildNumber, queueId, System.currentTimeMillis());
+        open.put(handle.getId(), handle);
+        append(formatOpen(handle));
+        return handle;
+    }
+
+    /**
+     * Records that nobody is waiting on the remote build any longer.
+     */
+    public synchronized void close(RemoteBuildHandle handle) {
+        recovered.remove(handle.getId());
+        if (open.remove(handle.getId()) == null) {
+            return;
+        }
+        append(format("CLOSE", handle.getId()));
+        if (records > open.size() + COMPACT_THRESHOLD) {
+            compact();
+        }
+    }
+
+    /**
+     * Hands over a handle left open by a wait with the same key that was cut short by a restart. Each one is only
+     * handed over once.
+     *
+     * @return the handle, or null if there is none left to resume
+     */
+    public synchronized RemoteBuildHandle claimRecovered(String key) {
+        for (Iterator<RemoteBuildHandle> it = recovered.values().iterator(); it.hasNext();) {
+            RemoteBuildHandle handle = it.next();
+            if (handle.getKey().equals(key)) {
+                it.remove();
+                return handle;
+            }
+        }
+        return null;
+    }
+
+    public synchronized List<RemoteBuildHandle> getOpenHandles() {
+        return new ArrayList<RemoteBuildHandle>(open.values());
+    }
+
+    private static String format(String... fields) {
+        StringBuilder line = new StringBuilder();
+        for (String field : fields) {
+            if (line.length() > 0) {
+                line.append('\t');
+            }
+            line.append(encode(field));
+        }
+        return line.append('\n').toString();
+    }
+
+    private static String formatOpen(RemoteBuildHandle handle) {
+        return format("OPEN", handle.getId(), handle.getKey(), handle.getRemoteServerName(), handle.getJobName(),
+                Integer.toString(handle.getBuildNumber()), Long.toString(handle.getQueueId()),
+                Long.toString(handle.getStartTime()));
+    }
+
+    private void append(String line) {
+        try {
+            if (writer == null) {
+                writer = new OutputStreamWriter(new FileOutputStream(file, true), "UTF-8");
+            }
+            writer.write(line);
+            writer.flush();
+            records++;
+        } catch (IOException e) {
+            // losing the journal only means we can't resume after a restart, it must never fail the build
+            LOGGER.log(Level.WARNING, "Unable to write to " + file, e);
+            closeWriter();
+        }
+    }
+
+    private void replay() {
+        BufferedReader in;
+        try {
+            in = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        } catch (FileNotFoundException e) {
+            return;
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] fields = line.split("\t");
+                for (int i = 0; i < fields.length; i++) {
+                    fields[i] = decode(fields[i]);
+                }
+                if (fields[0].equals("OPEN") && fields.length == 8) {
+                    RemoteBuildHandle handle = new RemoteBuildHandle(fields[1], fields[2], fields[3], fields[4],
+                            Integer.parseInt(fields[5]), Long.parseLong(fields[6]), Long.parseLong(fields[7]));
+                    open.put(handle.getId(), handle);
+                } else if (fields[0].equals("CLOSE") && fields.length == 2) {
+                    open.remove(fields[1]);
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Unable to read " + file, e);
+        } catch (RuntimeException e) {
+            // a partially written last record, everything before it has been replayed
+            LOGGER.log(Level.FINE, "Ignoring the rest of " + file, e);
+        } finally {
+            try {
+                in.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+
+        long now = System.currentTimeMillis();
+        for (RemoteBuildHandle handle : new ArrayList<RemoteBuildHandle>(open.values())) {
+            if (now - handle.getStartTime() > MAX_AGE) {
+                open.remove(handle.getId());
+            }
+        }
+        if (!open.isEmpty()) {
+            LOGGER.info(open.size() + " remote build(s) were still being waited on before the restart: "
+                    + open.values());
+        }
+        recovered.putAll(open);
+        compact();
+    }
+
+    /**
+     * Rewrites the journal so that it only contains the handles that are still open.
+     */
+    private void compact() {
+        closeWriter();
+        File tmp = new File(file.getPath() + ".tmp");
+        int written = 0;
+
+        try {
+            Writer out = new OutputStreamWriter(new FileOutputStream(tmp), "UTF-8");
+            try {
+                for (RemoteBuildHandle handle : open.values()) {
+                    out.write(formatOpen(handle));
+                    written++;
+                }
+            } finally {
+                out.close();
+            }
+            if (!tmp.renameTo(file) && !(file.delete() && tmp.renameTo(file))) {
+                throw new IOException("Unable to replace " + file);
+            }
+            records = written;
+        } catch (IOException e) {
+            // the old journal is still complete, it is just bigger than it needs to be
+            LOGGER.log(Level.WARNING, "Unable to compact " + file, e);
+            tmp.delete();
+        }
+    }
+
+    private void closeWriter() {
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                // ignore
+            }
+            writer = null;
+        }
+    }
+
+    private static String encode(String value) {
+        try {
+            return URLEncoder.encode(value == null ? "" : value, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static String decode(String value) {
+        try {
+            return URLDecoder.decode(value, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package org.jenkinsci.plugins.ParameterizedRemoteTrigger;
+
+import java.io.PrintStream;
+import java.util.HashSet;
+import java.util.Set;
+
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+
+/**
+ * Recognizes the remote build a trigger started among the builds around the next build number, by its parameters.
+ * Built once per trigger from the parameters that were sent, before they were encoded, which is what the remote server
+ * hands back once it has decoded them.
+ * <p>
+ * With a correlation parameter, the one parameter carrying the unique value sent with the trigger decides. Without
+ * one, a single comparison of fingerprints rejects a build whose parameters differ, as long as the remote build has
+ * every parameter that was sent; only a build that passes is compared parameter by parameter.
+ */
+final class ParameterMatcher {
+
+    private final RemoteParameters expected;
+    // null if there is no correlation parameter
+    private final String           correlationName;
+    private final String           correlationValue;
+    // how many distinct names have a value, and the fingerprint of those values
+    private final int              expectedNames;
+    private final long             fingerprint;
+
+    /**
+     * @param expected
+     *            the parameters the remote build was triggered with
+     * @param correlationName
+     *            name of the parameter carrying the unique value of this trigger, null if none
+     */
+    ParameterMatcher(RemoteParameters expected, String correlationName) {
+        this.expected = expected;
+        this.correlationName = correlationName;
+        this.correlationValue = correlationName == null ? null : expected.get(correlationName);
+
+        // only the first value of a name counts, as in RemoteParameters.get()
+        Set<String> names = new HashSet<String>();
+        long sum = 0;
+        for (int i = 0; i < expected.size(); i++) {
+            String name = expected.getName(i);
+            if (expected.getValue(i) != null && names.add(name)) {
+                sum += fingerprint(name, expected.getValue(i));
+            }
+        }
+        this.expectedNames = names.size();
+        this.fingerprint = sum;
+    }
+
+    /**
+     * @param parameters
+     *            the "parameters" of the remote build, as its JSON API lists them
+     * @param logger
+     *            told why a build doesn't match
+     * @return true if the remote build was triggered with the expected parameters; if no parameter tells builds apart,
+     *         that could still be another build with the same parameters
+     */
+    boolean matches(JSONArray parameters, PrintStream logger) {
+        if (correlationValue != null) {
+            for (int j = 0; j < parameters.size(); j++) {
+                JSONObject parameter = parameters.getJSONObject(j);
+                if (correlationName.equals(parameter.getString("name"))) {
+                    return correlationValue.equals(parameter.getString("value"));
+                }
+            }
+            logger.println("The remote job has no " + correlationName + " parameter, comparing all parameters.");
+        }
+
+        int found = 0;
+        long sum = 0;
+        for (int j = 0; j < parameters.size(); j++) {
+            JSONObject parameter = parameters.getJSONObject(j);
+            String name = parameter.getString("name");
+            if (expected.get(name) != null) {
+                found++;
+                sum += fingerprint(name, parameter.getString("value"));
+            }
+        }
+        if (found == expectedNames && sum != fingerprint) {
+            logger.println("Parameters don't match.");
+            return false;
+        }
+        // fingerprints match (or can't be compared), make sure
+        return compareParameters(parameters, logger);
+    }
+
+    private boolean compareParameters(JSONArray parameters, PrintStream logger) {
+        for (int j = 0; j < parameters.size(); j++) {
+            JSONObject parameter = parameters.getJSONObject(j);
+            String name = parameter.getString("name");
+            String expectedValue = expected.get(name);
+
+            if (expectedValue == null) {
+                // If we didn't specify all of the parameters, this will happen, so we can not infer that this it he wrong build
+                logger.println("Unable to find expected value for " + name);
+                continue;
+            }
+
+            // If we got the expected value, skip to the next parameter
+            if (expectedValue.equals(parameter.getString("value"))) continue;
+
+            // We didn't get the expected value
+            logger.println("Param " + name + " doesn't match!");
+            return false;
+        }
+        // All found parameters matched. This if there are no uniquely identifying parameters, this could still be a false positive.
+        return true;
+    }
+
+    /**
+     * Mixes the hashes of a name and its value, so that a sum over the parameters doesn't depend on their order but
+     * does on which value goes with which name.
+     */
+    static long fingerprint(String name, String value) {
+        long h = name.hashCode() * 0x9E3779B97F4A7C15L + (value == null ? 0 : value.hashCode());
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,169 @@
+package org.jenkinsci.plugins.ParameterizedRemoteTrigger;
+
+import hudson.Util;
+import hudson.model.Result;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Controller-wide index of recently triggered remote builds, keyed by a hash of the remote server, the remote job and
+ * the resolved parameters. It lets a trigger reuse a recent successful build (or attach to a running one) that was
+ * started with exactly the same parameters instead of paying for another remote run.
+ *
+ * The index is bounded to {@link #MAX_ENTRIES}, evicting the least recently used entries first, and is not persisted.
+ */
+public final class RecentBuildIndex {
+
+    static final int MAX_ENTRIES = Integer.getInteger(RecentBuildIndex.class.getName() + ".maxEntries", 1000);
+
+    private static final RecentBuildIndex INSTANCE = new RecentBuildIndex(MAX_ENTRIES);
+
+    private final Map<String, Entry> entries;
+
+    RecentBuildIndex(final int maxEntries) {
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, RecentBuildIndex.Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    public static RecentBuildIndex get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Computes the key of a trigger. Parameters are sorted, so the order they were listed in does not matter.
+     *
+     * @param remoteServerName
+     *            display name of the remote server
+     * @param jobName
+     *            name of the remote job, with all tokens expanded
+     * @param parameters
+     *            "name=value" pairs, with all tokens expanded
+     */
+    public static String hash(String remoteServerName, String jobName, List<String> parameters) {
+        List<String> sorted = new ArrayList<String>(parameters);
+        Collections.sort(sorted);
+
+        StringBuilder key = new StringBuilder();
+        key.append(remoteServerName).append('\n').append(jobName).append('\n');
+        for (String parameter : sorted) {
+            key.append(parameter).append('\n');
+        }
+        return Util.getDigestOf(key.toString());
+    }
+
+    /**
+     * Records a remote build that was just triggered and is not finished yet.
+     */
+    public synchronized void recordTriggered(String hash, String jobName, int buildNumber) {
+        entries.put(hash, new Entry(jobName, buildNumber, null, System.currentTimeMillis()));
+    }
+
+    /**
+     * Records the result of a remote build once it has finished.
+     */
+    public synchronized void recordResult(String hash, String jobName, int buildNumber, Result result) {
+        Entry entry = entries.get(hash);
+        long triggered = entry != null && entry.buildNumber == buildNumber ? entry.timestamp : System
+                .currentTimeMillis();
+        entries.put(hash, new Entry(jobName, buildNumber, result, triggered));
+    }
+
+    /**
+     * Records a remote build found some other way, e.g. in the build history of the remote job.
+     *
+     * @param result
+     *            result of the remote build, or null if it is still running
+     * @param timestamp
+     *            time the remote build was started, in milliseconds
+     */
+    public synchronized void record(String hash, String jobName, int buildNumber, Result result, long timestamp) {
+        entries.put(hash, new Entry(jobName, buildNumber, result, timestamp));
+    }
+
+    /**
+     * Forgets a remote build that was triggered but that nobody waits on any longer, e.g. because the wait was
+     * cancelled: its result will never be recorded.
+     */
+    public synchronized void forget(String hash, int buildNumber) {
+        Entry entry = entries.get(hash);
+        if (entry != null && entry.buildNumber == buildNumber && entry.isBuilding()) {
+            entries.remove(hash);
+        }
+    }
+
+    /**
+     * @param window
+     *            how old, in milliseconds, the remote build may be
+     * @return a build that is still running or has succeeded, and was triggered no longer than <tt>window</tt> ago;
+     *         null if there is none
+     */
+    public synchronized Entry find(String hash, long window) {
+        Entry entry = entries.get(hash);
+
+        if (entry == null) {
+            return null;
+        }
+        if (System.currentTimeMillis() - entry.timestamp > window) {
+            entries.remove(hash);
+            return null;
+        }
+        if (!entry.isBuilding() && entry.result != Result.SUCCESS) {
+            return null;
+        }
+        return entry;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * A remote build and, once it has finished, its result.
+     */
+    public static final class Entry {
+        private final String jobName;
+        private final int    buildNumber;
+        private final Result result;
+        private final long   timestamp;
+
+        Entry(String jobName, int buildNumber, Result result, long timestamp) {
+            this.jobName = jobName;
+            this.buildNumber = buildNumber;
+            this.result = result;
+            this.timestamp = timestamp;
+        }
+
+        public String getJobName() {
+            return jobName;
+        }
+
+        public int getBuildNumber() {
+            return buildNumber;
+        }
+
+        /**
+         * @return the result of the remote build, or null while it is still running
+         */
+        public Result getResult() {
+            return result;
+        }
+
+        public boolean isBuilding() {
+            return result == null;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+    }
+}
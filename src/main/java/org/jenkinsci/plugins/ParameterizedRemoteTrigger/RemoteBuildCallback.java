@@ -0,0 +1,120 @@
+package org.jenkinsci.plugins.ParameterizedRemoteTrigger;
+
+import hudson.Extension;
+import hudson.model.UnprotectedRootAction;
+import hudson.security.csrf.CrumbExclusion;
+
+import java.io.IOException;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import jenkins.model.Jenkins;
+
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+import org.kohsuke.stapler.interceptor.RequirePOST;
+
+/**
+ * Lets a remote build tell that it has finished (or started), instead of only being polled for it. A trigger that waits
+ * on its remote build hands it a callback URL with a unique id in a parameter; the remote job posts to that URL, e.g.
+ * from a notification hook or a webhook post-build step. The post only wakes the waiting trigger up: it polls the
+ * remote build right away, so nothing the post says is trusted, and the unique id is all the protection it needs.
+ * <p>
+ * Between notifications, the remote build is only polled every {@link #SAFETY_POLL_INTERVAL} seconds (or the poll
+ * interval, if longer), in case a notification gets lost.
+ */
+@Extension
+public class RemoteBuildCallback implements UnprotectedRootAction {
+
+    static final String URL_NAME = "parameterized-remote-trigger-callback";
+
+    /** In seconds. */
+    static final int SAFETY_POLL_INTERVAL = Integer.getInteger(RemoteBuildCallback.class.getName()
+            + ".safetyPollInterval", 300);
+
+    // what to run when the remote build calls back, by id
+    private static final ConcurrentMap<String, Runnable> WAITING = new ConcurrentHashMap<String, Runnable>();
+
+    public String getIconFileName() {
+        return null;
+    }
+
+    public String getDisplayName() {
+        return null;
+    }
+
+    public String getUrlName() {
+        return URL_NAME;
+    }
+
+    /**
+     * @param onNotification
+     *            run on the request thread whenever the remote build calls back, must only hand over to another thread
+     * @return the id the remote build calls back with
+     */
+    static String register(Runnable onNotification) {
+        String id = UUID.randomUUID().toString();
+        WAITING.put(id, onNotification);
+        return id;
+    }
+
+    static void unregister(String id) {
+        WAITING.remove(id);
+    }
+
+    /**
+     * @return the URL the remote build has to post to, null if the URL of this Jenkins is not known
+     */
+    static String getCallbackUrl(String id) {
+        Jenkins jenkins = Jenkins.getInstance();
+        String rootUrl = jenkins == null ? null : jenkins.getRootUrl();
+        if (rootUrl == null) {
+            return null;
+        }
+        return rootUrl + (rootUrl.endsWith("/") ? "" : "/") + URL_NAME + "/notify?id=" + id;
+    }
+
+    /**
+     * @return false if nobody is waiting for the given id (any more)
+     */
+    static boolean notify(String id) {
+        Runnable onNotification = id == null ? null : WAITING.get(id);
+        if (onNotification == null) {
+            return false;
+        }
+        onNotification.run();
+        return true;
+    }
+
+    @RequirePOST
+    public void doNotify(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        if (notify(req.getParameter("id"))) {
+            rsp.setStatus(HttpServletResponse.SC_OK);
+        } else {
+            rsp.sendError(HttpServletResponse.SC_NOT_FOUND);
+        }
+    }
+
+    /**
+     * The remote server can't have a crumb of this Jenkins.
+     */
+    @Extension
+    public static class CallbackCrumbExclusion extends CrumbExclusion {
+        @Override
+        public boolean process(HttpServletRequest req, HttpServletResponse resp, FilterChain chain)
+                throws IOException, ServletException {
+            String pathInfo = req.getPathInfo();
+            if (pathInfo != null && pathInfo.startsWith("/" + URL_NAME + "/")) {
+                chain.doFilter(req, resp);
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -4,6 +4,7 @@ import hudson.AbortException;
 import hudson.FilePath;
 import hudson.EnvVars;
 import hudson.Launcher;
+import hudson.Util;
 import hudson.Extension;
 import hudson.util.CopyOnWriteList;
 import hudson.util.ListBoxModel;
@@ -21,29 +22,36 @@ import net.sf.json.JSONSerializer;
 
 import net.sf.json.util.JSONUtils;
 
-import org.jenkinsci.plugins.tokenmacro.TokenMacro;
 import org.apache.commons.lang.StringUtils;
 import org.jenkinsci.plugins.tokenmacro.MacroEvaluationException;
 import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.StaplerRequest;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLEncoder;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
 
-import org.apache.commons.codec.binary.Base64;
 
 /**
  * 
@@ -60,19 +68,30 @@ public class RemoteBuildConfiguration extends Builder {
     private final int             pollInterval;
     private final int             connectionRetryLimit = 5;
     private final boolean         preventRemoteBuildQueue;
+    // hold a controller-wide lock on the remote job from the capacity check until the trigger is identified
+    private final boolean         lockRemoteJob;
+    // priority of the trigger in the TriggerDispatcher, may contain tokens, higher goes first
+    private final String          priority;
+    // name of a remote job parameter that gets a unique value on every trigger, to recognize the remote build by
+    private final String          correlationParameter;
+    // name of a remote job parameter that gets the URL the remote build calls back once it has finished
+    private final String          callbackParameter;
     private final boolean         blockBuildUntilComplete;
     private final boolean         enhancedLogging;
+    // with enhanced logging, only print the last lines of the remote console and keep all of it in a file, 0 for all
+    private final int             consoleTailLines;
 
     // "parameters" is the raw string entered by the user
     private final String          parameters;
-    // "parameterList" is the cleaned-up version of "parameters" (stripped out comments, character encoding, etc)
+    // "parameterList" was a split-up copy of "parameters", kept only so that configurations saved by older versions
+    // still load cleanly
+    @Deprecated
+    private transient List<String> parameterList;
+    // "parameters" parsed, with comments and empty lines stripped out, see compile()
+    private transient RemoteParameters configuredParameters;
 
-    private final List<String>    parameterList;
-
-    private static String         paramerizedBuildUrl = "/buildWithParameters";
-    private static String         normalBuildUrl      = "/build";
-    //private static String         normalBuildUrl      = "/buildWithParameters";
-    private static String         buildTokenRootUrl   = "/buildByToken";
+    // the static parts of the remote URLs, encoded once, see compile()
+    private transient TriggerUrlTemplate urlTemplate;
 
     private final boolean         overrideAuth;
     private CopyOnWriteList<Auth> auth                = new CopyOnWriteList<Auth>();
@@ -82,19 +101,58 @@ public class RemoteBuildConfiguration extends Builder {
 
     private String                queryString         = "";
 
-    @DataBoundConstructor
+    // reuse a recent remote build that was triggered with identical parameters, instead of triggering a new one
+    private final boolean         reuseRecentBuild;
+    // in minutes
+    private final int             reuseWindow;
+    private final boolean         reuseSearchRemoteHistory;
+
+    // limits on how long to wait on the remote build, in minutes, 0 for no limit
+    private final int             maxQueueWait;
+    private final int             maxRunTime;
+    private final int             maxTotalTime;
+    // stop waiting but leave the remote build running, instead of failing, when a limit is reached
+    private final boolean         detachOnTimeout;
+
+    // how many of the most recent remote builds are checked when looking for one to reuse
+    private static final int      REUSE_HISTORY_DEPTH = 20;
+
+    // read timeout of the call that cancels the remote build once this build has been aborted, in milliseconds
+    private static final int      CANCEL_TIMEOUT      = 10000;
+
+    // the printed tail of the remote console is cut down to this many characters, whatever its number of lines
+    static final int              MAX_CONSOLE_TAIL_CHARS = 1024 * 1024;
+
+    private static final Pattern  QUEUE_ITEM_LOCATION = Pattern.compile("/queue/item/(\\d+)/?$");
+
     public RemoteBuildConfiguration(String remoteJenkinsName, boolean shouldNotFailBuild, String job, String token,
             String parameters, boolean enhancedLogging, JSONObject overrideAuth, JSONObject loadParamsFromFile, boolean preventRemoteBuildQueue,
             boolean blockBuildUntilComplete, int pollInterval) throws MalformedURLException {
+        this(remoteJenkinsName, shouldNotFailBuild, job, token, parameters, enhancedLogging, overrideAuth,
+                loadParamsFromFile, preventRemoteBuildQueue, blockBuildUntilComplete, pollInterval, null, null, false, "",
+                "", 0, "");
+    }
+
+    @DataBoundConstructor
+    public RemoteBuildConfiguration(String remoteJenkinsName, boolean shouldNotFailBuild, String job, String token,
+            String parameters, boolean enhancedLogging, JSONObject overrideAuth, JSONObject loadParamsFromFile, boolean preventRemoteBuildQueue,
+            boolean blockBuildUntilComplete, int pollInterval, JSONObject reuseRecentBuild, JSONObject timeouts,
+            boolean lockRemoteJob, String priority, String correlationParameter, int consoleTailLines,
+            String callbackParameter) throws MalformedURLException {
 
         this.token = token.trim();
         this.remoteJenkinsName = remoteJenkinsName;
         this.job = job.trim();
         this.shouldNotFailBuild = shouldNotFailBuild;
         this.preventRemoteBuildQueue = preventRemoteBuildQueue;
+        this.lockRemoteJob = lockRemoteJob;
+        this.priority = Util.fixNull(priority).trim();
+        this.correlationParameter = Util.fixNull(correlationParameter).trim();
+        this.callbackParameter = Util.fixNull(callbackParameter).trim();
         this.blockBuildUntilComplete = blockBuildUntilComplete;
         this.pollInterval = pollInterval;
         this.enhancedLogging = enhancedLogging;
+        this.consoleTailLines = Math.max(0, consoleTailLines);
 
         if (overrideAuth != null && overrideAuth.has("auth")) {
             this.overrideAuth = true;
@@ -117,13 +175,29 @@ public class RemoteBuildConfiguration extends Builder {
             this.parameters = parameters;
         }
 
-        // TODO: clean this up a bit
-        // split the parameter-string into an array based on the new-line character
-        String[] params = parameters.split("\n");
+        if (reuseRecentBuild != null && reuseRecentBuild.has("reuseWindow")) {
+            this.reuseRecentBuild = true;
+            this.reuseWindow = reuseRecentBuild.getInt("reuseWindow");
+            this.reuseSearchRemoteHistory = reuseRecentBuild.optBoolean("reuseSearchRemoteHistory");
+        } else {
+            this.reuseRecentBuild = false;
+            this.reuseWindow = 0;
+            this.reuseSearchRemoteHistory = false;
+        }
 
-        // convert the String array into a List of Strings, and remove any empty entries
-        this.parameterList = new ArrayList<String>(Arrays.asList(params));
+        if (timeouts != null && timeouts.has("maxTotalTime")) {
+            this.maxQueueWait = timeouts.optInt("maxQueueWait");
+            this.maxRunTime = timeouts.optInt("maxRunTime");
+            this.maxTotalTime = timeouts.optInt("maxTotalTime");
+            this.detachOnTimeout = timeouts.optBoolean("detachOnTimeout");
+        } else {
+            this.maxQueueWait = 0;
+            this.maxRunTime = 0;
+            this.maxTotalTime = 0;
+            this.detachOnTimeout = false;
+        }
 
+        compile();
     }
 
     public RemoteBuildConfiguration(String remoteJenkinsName, boolean shouldNotFailBuild,
@@ -134,9 +208,14 @@ public class RemoteBuildConfiguration extends Builder {
         this.remoteJenkinsName = remoteJenkinsName;
         this.parameters = parameters;
         this.enhancedLogging = enhancedLogging;
+        this.consoleTailLines = 0;
         this.job = job.trim();
         this.shouldNotFailBuild = shouldNotFailBuild;
         this.preventRemoteBuildQueue = preventRemoteBuildQueue;
+        this.lockRemoteJob = false;
+        this.priority = "";
+        this.correlationParameter = "";
+        this.callbackParameter = "";
         this.blockBuildUntilComplete = blockBuildUntilComplete;
         this.pollInterval = pollInterval;
         this.overrideAuth = false;
@@ -144,22 +223,39 @@ public class RemoteBuildConfiguration extends Builder {
 
         this.loadParamsFromFile = false;
 
-        // split the parameter-string into an array based on the new-line character
-        String[] params = parameters.split("\n");
+        this.reuseRecentBuild = false;
+        this.reuseWindow = 0;
+        this.reuseSearchRemoteHistory = false;
+
+        this.maxQueueWait = 0;
+        this.maxRunTime = 0;
+        this.maxTotalTime = 0;
+        this.detachOnTimeout = false;
+
+        compile();
+    }
 
-        // convert the String array into a List of Strings, and remove any empty entries
-        this.parameterList = new ArrayList<String>(Arrays.asList(params));
+    protected Object readResolve() {
+        compile();
+        return this;
+    }
 
+    /**
+     * Works out, once, everything about the remote calls that doesn't change from one build to the next.
+     */
+    private void compile() {
+        this.urlTemplate = new TriggerUrlTemplate(this.getJob(), this.getToken(), this.getParameters().length() > 0);
+        this.configuredParameters = RemoteParameters.parse(Util.fixNull(this.getParameters()));
     }
 
     /**
-     * Reads a file from the jobs workspace, and loads the list of parameters from with in it. It will also call
-     * ```getCleanedParameters``` before returning.
+     * Reads a file from the jobs workspace, and loads the list of parameters from with in it. Comments and empty
+     * lines are stripped out.
      * 
      * @param build
-     * @return List<String> of build parameters
+     * @return the build parameters
      */
-    private List<String> loadExternalParameterFile(AbstractBuild<?, ?> build) {
+    private RemoteParameters loadExternalParameterFile(AbstractBuild<?, ?> build) {
 
         FilePath workspace = build.getWorkspace();
         BufferedReader br = null;
@@ -192,134 +288,7 @@ public class RemoteBuildConfiguration extends Builder {
             }
         }
         // FilePath.
-        return getCleanedParameters(ParameterList);
-    }
-
-    /**
-     * Strip out any empty strings from the parameterList
-     */
-    private void removeEmptyElements(Collection<String> collection) {
-        collection.removeAll(Arrays.asList(null, ""));
-        collection.removeAll(Arrays.asList(null, " "));
-    }
-
-    /**
-     * Convenience method
-     * 
-     * @return List<String> of build parameters
-     */
-    private List<String> getCleanedParameters() {
-
-        return getCleanedParameters(this.getParameterList());
-    }
-
-    /**
-     * Same as "getParameterList", but removes comments and empty strings Notice that no type of character encoding is
-     * happening at this step. All encoding happens in the "buildUrlQueryString" method.
-     * 
-     * @param List
-     *            <String> parameters
-     * @return List<String> of build parameters
-     */
-    private List<String> getCleanedParameters(List<String> parameters) {
-        List<String> params = new ArrayList<String>(parameters);
-        removeEmptyElements(params);
-        removeCommentsFromParameters(params);
-        return params;
-    }
-
-    /**
-     * Similar to "replaceToken", but acts on a list in place of just a single string
-     * 
-     * @param build
-     * @param listener
-     * @param params
-     *            List<String> of params to be tokenized/replaced
-     * @return List<String> of resolved variables/tokens
-     */
-    private List<String> replaceTokens(AbstractBuild<?, ?> build, BuildListener listener, List<String> params) {
-        List<String> tokenizedParams = new ArrayList<String>();
-
-        for (int i = 0; i < params.size(); i++) {
-            tokenizedParams.add(replaceToken(build, listener, params.get(i)));
-            // params.set(i, replaceToken(build, listener, params.get(i)));
-        }
-
-        return tokenizedParams;
-    }
-
-    /**
-     * Resolves any environment variables in the string
-     * 
-     * @param build
-     * @param listener
-     * @param input
-     *            String to be tokenized/replaced
-     * @return String with resolved Environment variables
-     */
-    private String replaceToken(AbstractBuild<?, ?> build, BuildListener listener, String input) {
-        try {
-            return TokenMacro.expandAll(build, listener, input);
-        } catch (Exception e) {
-            listener.getLogger().println(
-                    String.format("Failed to resolve parameters in string %s due to following error:\n%s", input,
-                            e.getMessage()));
-        }
-        return input;
-    }
-
-    /**
-     * Strip out any comments (lines that start with a #) from the collection that is passed in.
-     */
-    private void removeCommentsFromParameters(Collection<String> collection) {
-        List<String> itemsToRemove = new ArrayList<String>();
-
-        for (String parameter : collection) {
-            if (parameter.indexOf("#") == 0) {
-                itemsToRemove.add(parameter);
-            }
-        }
-        collection.removeAll(itemsToRemove);
-    }
-
-    /**
-     * Return the Collection<String> in an encoded query-string
-     * 
-     * @return query-parameter-formated URL-encoded string
-     * @throws InterruptedException
-     * @throws IOException
-     * @throws MacroEvaluationException
-     */
-    private String buildUrlQueryString(Collection<String> parameters) {
-
-        // List to hold the encoded parameters
-        List<String> encodedParameters = new ArrayList<String>();
-
-        for (String parameter : parameters) {
-
-            // Step #1 - break apart the parameter-pairs (because we don't want to encode the "=" character)
-            String[] splitParameters = parameter.split("=");
-
-            // List to hold each individually encoded parameter item
-            List<String> encodedItems = new ArrayList<String>();
-            for (String item : splitParameters) {
-                try {
-                    // Step #2 - encode each individual parameter item add the encoded item to its corresponding list
-
-                    encodedItems.add(encodeValue(item));
-
-                } catch (Exception e) {
-                    // do nothing
-                    // because we are "hard-coding" the encoding type, there is a 0% chance that this will fail.
-                }
-
-            }
-
-            // Step #3 - reunite the previously separated parameter items and add them to the corresponding list
-            encodedParameters.add(StringUtils.join(encodedItems, "="));
-        }
-
-        return StringUtils.join(encodedParameters, "&");
+        return RemoteParameters.parse(ParameterList);
     }
 
     /**
@@ -330,34 +299,48 @@ public class RemoteBuildConfiguration extends Builder {
      * @return A RemoteSitez object
      */
     public RemoteJenkinsServer findRemoteHost(String displayName) {
-        RemoteJenkinsServer match = null;
-
-        for (RemoteJenkinsServer host : this.getDescriptor().remoteSites) {
-            // if we find a match, then stop looping
-            if (displayName.equals(host.getDisplayName())) {
-                match = host;
-                break;
-            }
-        }
-
-        return match;
+        return this.getDescriptor().getSites().get(displayName);
     }
 
     /**
-     * Helper function to allow values to be added to the query string from any method.
+     * Resolves the configured remote Jenkins, which is either a single server or a pool of equivalent servers. Of a
+     * pool, the member with the lowest {@link ServerLoad} is picked.
      * 
-     * @param item
+     * @param tokens
+     *            to expand the credentials the load of the members is read with, if it has to be
+     * @return the server to trigger on, or null if there is no server nor pool by that name
      */
-    private void addToQueryString(String item) {
-        String currentQueryString = this.getQueryString();
-        String newQueryString = "";
+    private RemoteJenkinsServer chooseRemoteServer(TokenExpansion tokens, BuildListener listener)
+            throws IOException {
+        RemoteJenkinsServer remoteServer = this.findRemoteHost(this.getRemoteJenkinsName());
+        if (remoteServer != null) {
+            return remoteServer;
+        }
 
-        if (currentQueryString == null || currentQueryString.equals("")) {
-            newQueryString = item;
-        } else {
-            newQueryString = currentQueryString + "&" + item;
+        List<RemoteJenkinsServer> members = this.getDescriptor().getPoolMembers(this.getRemoteJenkinsName());
+        if (members.isEmpty()) {
+            return null;
         }
-        this.setQueryString(newQueryString);
+        List<String> names = new ArrayList<String>();
+        boolean anyKnown = false;
+        for (RemoteJenkinsServer member : members) {
+            names.add(member.getDisplayName());
+            anyKnown |= member.getLoad().isKnown();
+        }
+        if (!anyKnown) {
+            // nothing measured yet (e.g. right after a restart), don't pick blindly
+            for (RemoteJenkinsServer member : members) {
+                ServerLoadMonitor.refresh(member, resolveAuth(member, tokens, listener));
+            }
+        }
+
+        String chosen = ServerLoad.leastLoaded(names);
+        remoteServer = members.get(names.indexOf(chosen));
+        ServerLoad load = remoteServer.getLoad();
+        listener.getLogger().println("Picked " + chosen + " (" + load + ") out of the " + members.size()
+                + " servers of pool " + this.getRemoteJenkinsName() + ".");
+        load.recordTrigger();
+        return remoteServer;
     }
 
     /**
@@ -374,41 +357,9 @@ public class RemoteBuildConfiguration extends Builder {
      *            Parameters for the remote job
      * @return fully formed, fully qualified remote trigger URL
      */
-    private String buildTriggerUrl(String job, String securityToken, Collection<String> params, boolean isRemoteJobParameterized) {
-        RemoteJenkinsServer remoteServer = this.findRemoteHost(this.getRemoteJenkinsName());
-        String triggerUrlString = remoteServer.getAddress().toString();
-
-        // start building the proper URL based on known capabiltiies of the remote server
-        if (remoteServer.getHasBuildTokenRootSupport()) {
-            triggerUrlString += buildTokenRootUrl;
-            triggerUrlString += getBuildTypeUrl(isRemoteJobParameterized);
-
-            this.addToQueryString("job=" + this.encodeValue(job));
-
-        } else {
-            triggerUrlString += "/job/";
-            triggerUrlString += this.encodeValue(job);
-            triggerUrlString += getBuildTypeUrl(isRemoteJobParameterized);
-        }
-
-        // don't try to include a security token in the URL if none is provided
-        if (!securityToken.equals("")) {
-            this.addToQueryString("token=" + encodeValue(securityToken));
-        }
-
-        // turn our Collection into a query string
-        String buildParams = buildUrlQueryString(params);
-
-        if (!buildParams.isEmpty()) {
-            this.addToQueryString(buildParams);
-        }
-
-        // by adding "delay=0", this will (theoretically) force this job to the top of the remote queue
-        this.addToQueryString("delay=0");
-
-        triggerUrlString += "?" + this.getQueryString();
-
-        return triggerUrlString;
+    String buildTriggerUrl(RemoteJenkinsServer remoteServer, String job, String securityToken, RemoteParameters params, boolean isRemoteJobParameterized) {
+        return this.urlTemplate.getTriggerUrl(remoteServer.getBaseUrl(), remoteServer.getHasBuildTokenRootSupport(),
+                job, securityToken, params, isRemoteJobParameterized);
     }
 
     /**
@@ -422,23 +373,12 @@ public class RemoteBuildConfiguration extends Builder {
      *            Security token used to trigger remote job
      * @return fully formed, fully qualified remote trigger URL
      */
-    private String buildGetUrl(String job, String securityToken) {
-
-        RemoteJenkinsServer remoteServer = this.findRemoteHost(this.getRemoteJenkinsName());
-        String urlString = remoteServer.getAddress().toString();
-
-        urlString += "/job/";
-        urlString += this.encodeValue(job);
-
-        // don't try to include a security token in the URL if none is provided
-        if (!securityToken.equals("")) {
-            this.addToQueryString("token=" + encodeValue(securityToken));
-        }
-        return urlString;
+    String buildGetUrl(RemoteJenkinsServer remoteServer, String job, String securityToken) {
+        return this.urlTemplate.getJobUrl(remoteServer.getBaseUrl(), job);
     }
 
     /**
-     * Convenience function to mark the build as failed. It's intended to only be called from this.perform();
+     * Convenience function to mark the build as failed. It's intended to only be called while performing this step.
      * 
      * @param e
      *            Exception that caused the build to fail
@@ -446,7 +386,7 @@ public class RemoteBuildConfiguration extends Builder {
      *            Build Listener
      * @throws IOException
      */
-    private void failBuild(Exception e, BuildListener listener) throws IOException {
+    void failBuild(Exception e, BuildListener listener) throws IOException {
         System.out.print(e.getStackTrace());
         if (this.getShouldNotFailBuild()) {
             listener.error("Remote build failed for the following reason, but the build will continue:");
@@ -461,253 +401,222 @@ public class RemoteBuildConfiguration extends Builder {
     public boolean perform(AbstractBuild build, Launcher launcher, BuildListener listener) throws InterruptedException,
             IOException, IllegalArgumentException {
 
-        RemoteJenkinsServer remoteServer = this.findRemoteHost(this.getRemoteJenkinsName());
-
-        // Stores the status of the remote build
-        String buildStatusStr = "UNKNOWN";
+        // every token of this execution is expanded through this, against an environment resolved once
+        TokenExpansion tokens = new TokenExpansion(build, listener);
+        RemoteJenkinsServer remoteServer = this.chooseRemoteServer(tokens, listener);
 
         if (remoteServer == null) {
             this.failBuild(new Exception("No remote host is defined for this job."), listener);
             return true;
         }
-        String remoteServerURL = remoteServer.getAddress().toString();
-        List<String> cleanedParams = null;
+        RemoteParameters cleanedParams;
 
         if (this.getLoadParamsFromFile()) {
             cleanedParams = loadExternalParameterFile(build);
         } else {
-            // tokenize all variables and encode all variables, then build the fully-qualified trigger URL
-            cleanedParams = getCleanedParameters();
-            cleanedParams = replaceTokens(build, listener, cleanedParams);
+            // tokenize all variables, the encoding happens as the trigger URL is built
+            cleanedParams = configuredParameters.expand(tokens);
         }
 
-        String jobName = replaceToken(build, listener, this.getJob());
-
-        String securityToken = replaceToken(build, listener, this.getToken());
+        // only expanded if they have tokens to expand, otherwise they are the same on every build
+        String jobName = urlTemplate.jobHasTokens() ? tokens.expand(this.getJob()) : this.getJob();
 
-        boolean isRemoteParameterized = isRemoteJobParameterized(jobName, build, listener);
-        String triggerUrlString = this.buildTriggerUrl(jobName, securityToken, cleanedParams, isRemoteParameterized);
-
-        // Trigger remote job
-        // print out some debugging information to the console
+        String securityToken = urlTemplate.tokenHasTokens() ? tokens.expand(this.getToken()) : this.getToken();
 
-        //listener.getLogger().println("URL: " + triggerUrlString);
-        listener.getLogger().println("Triggering this remote job: " + jobName);
+        // every remote call and every wait below is bounded by these, so that nothing can block this build forever
+        Deadline totalDeadline = Deadline.after(this.getMaxTotalTime(), "max total time of " + this.getMaxTotalTime()
+                + " minutes");
+        Deadline queueDeadline = totalDeadline.min(Deadline.after(this.getMaxQueueWait(), "max queue wait of "
+                + this.getMaxQueueWait() + " minutes"));
 
-        // get the ID of the Next Job to run.
-        if (this.getPreventRemoteBuildQueue()) {
-            listener.getLogger().println("Checking that the remote job " + jobName + " is not currently building.");
-            String preCheckUrlString = this.buildGetUrl(jobName, securityToken);
-            preCheckUrlString += "/lastBuild";
-            preCheckUrlString += "/api/json/";
-            JSONObject preCheckResponse = sendHTTPCall(preCheckUrlString, "GET", build, listener);
-            
-            if ( preCheckResponse != null ) {
-                // check the latest build on the remote server to see if it's running - if so wait until it has stopped.
-                // if building is true then the build is running
-                // if result is null the build hasn't finished - but might not have started running.
-                while (preCheckResponse.getBoolean("building") == true || preCheckResponse.getString("result") == null) {
-                    listener.getLogger().println("Remote build is currently running - waiting for it to finish.");
-                    preCheckResponse = sendHTTPCall(preCheckUrlString, "POST", build, listener);
-                    listener.getLogger().println("Waiting for " + this.pollInterval + " seconds until next retry.");
-
-                    // Sleep for 'pollInterval' seconds.
-                    // Sleep takes miliseconds so need to convert this.pollInterval to milisecopnds (x 1000)
-                    try {
-                        Thread.sleep(this.pollInterval * 1000);
-                    } catch (InterruptedException e) {
-                        this.failBuild(e, listener);
-                    }
-                }
-                listener.getLogger().println("Remote job remote job " + jobName + " is not currenlty building.");    
+        // the execution does the work, on the threads of its own scheduler; all this thread does is wait for it
+        RemoteBuildExecution execution = new RemoteBuildExecution(this, build, listener, remoteServer, tokens, jobName,
+                securityToken, cleanedParams, totalDeadline, queueDeadline);
+        execution.start();
+        try {
+            execution.await();
+            return true;
+        } catch (InterruptedException e) {
+            if (RemoteBuildExecution.isShuttingDown()) {
+                // not aborted, this Jenkins is going down: the remote build goes on, the wait resumes after the restart
+                execution.detach();
             } else {
-                this.failBuild(new Exception("Got a blank response from Remote Jenkins Server, cannot continue."), listener);
+                // this build was aborted, don't leave the remote build behind holding on to remote executors
+                execution.cancel();
             }
-
-        } else {
-            listener.getLogger().println("Not checking if the remote job " + jobName + " is building.");
+            throw e;
+        } catch (DeadlineExceededException e) {
+            if (this.getDetachOnTimeout() && execution.hasRemoteBuild()) {
+                listener.getLogger().println(e.getMessage());
+                listener.getLogger().println("No longer waiting on the remote job " + jobName
+                        + ", it is left to run on its own.");
+            } else if (this.getDetachOnTimeout()) {
+                listener.getLogger().println(e.getMessage());
+                listener.getLogger().println("Timed out before the remote job " + jobName + " was triggered.");
+            } else {
+                this.failBuild(e, listener);
+            }
+            return true;
         }
+    }
 
-        String queryUrlString = this.buildGetUrl(jobName, securityToken);
-        queryUrlString += "/api/json/";
-
-        //listener.getLogger().println("Getting ID of next job to build. URL: " + queryUrlString);
-        JSONObject queryResponseObject = sendHTTPCall(queryUrlString, "GET", build, listener);
-        if (queryResponseObject == null ) {
-            //This should not happen as this page should return a JSON object
-            this.failBuild(new Exception("Got a blank response from Remote Jenkins Server [" + remoteServerURL + "], cannot continue."), listener);
+    /**
+     * @param queue
+     *            answer to /queue/api/json?tree=items[id,task[name]]
+     * @return true if one of the items in the queue is a build of the given job
+     */
+    boolean isQueued(JSONObject queue, String taskName) {
+        if (queue == null || !queue.has("items")) {
+            return false;
         }
-        
-        int nextBuildNumber = queryResponseObject.getInt("nextBuildNumber");
-
-        if (this.getOverrideAuth()) {
-            listener.getLogger().println(
-                    "Using job-level defined credentails in place of those from remote Jenkins config ["
-                            + this.getRemoteJenkinsName() + "]");
+        JSONArray items = queue.getJSONArray("items");
+        for (int i = 0; i < items.size(); i++) {
+            JSONObject task = items.getJSONObject(i).optJSONObject("task");
+            if (task != null && !task.isNullObject() && taskName.equals(task.optString("name"))) {
+                return true;
+            }
         }
+        return false;
+    }
 
-        listener.getLogger().println("Triggering remote job now.");
-        sendHTTPCall(triggerUrlString, "POST", build, listener);
-        // Validate the build number via parameters
-        foundIt: for (int tries = 3; tries > 0; tries--) {
-            for (int buildNumber : new SearchPattern(nextBuildNumber, 2)) {
-                listener.getLogger().println("Checking parameters of #" + buildNumber);
-                String validateUrlString = this.buildGetUrl(jobName, securityToken) + "/" + buildNumber + "/api/json/";
-                JSONObject validateResponse = sendHTTPCall(validateUrlString, "GET", build, listener);
-                if (validateResponse == null) {
-                    listener.getLogger().println("Query failed.");
-                    continue;
-                }
-                JSONArray actions = validateResponse.getJSONArray("actions");
-                for (int i = 0; i < actions.size(); i++) {
-                    JSONObject action = actions.getJSONObject(i);
-                    if (!action.has("parameters")) continue;
-                    JSONArray parameters = action.getJSONArray("parameters");
-                    // Check if the parameters match
-                    if (compareParameters(listener, parameters, cleanedParams)) {
-                        // We now have a very high degree of confidence that this is the correct build.
-                        // It is still possible that this is a false positive if there are no parameters,
-                        // or multiple jobs use the same parameters.
-                        nextBuildNumber = buildNumber;
-                        break foundIt;
-                    }
-                    // This is the wrong build
-                    break;
-                }
+    /**
+     * @return the priority of this trigger in the {@link TriggerDispatcher}, with all tokens resolved
+     */
+    int getTriggerPriority(TokenExpansion tokens, BuildListener listener) {
+        String resolved = tokens.expand(this.getPriority()).trim();
+        if (resolved.length() == 0) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(resolved);
+        } catch (NumberFormatException e) {
+            listener.getLogger().println("Priority '" + resolved + "' is not a number, using 0 instead.");
+            return 0;
+        }
+    }
 
-                // Sleep for 'pollInterval' seconds.
-                // Sleep takes miliseconds so need to convert this.pollInterval to milisecopnds (x 1000)
-                try {
-                    Thread.sleep(this.pollInterval * 1000);
-                } catch (InterruptedException e) {
-                    this.failBuild(e, listener);
-                }
-            }
+    /**
+     * Identifies a trigger across runs of the local job: the same local job triggering the same remote job with the
+     * same parameters on the same remote server.
+     */
+    String getHandleKey(AbstractBuild build, String jobName, RemoteParameters cleanedParams) {
+        StringBuilder key = new StringBuilder();
+        key.append(build.getProject().getFullName()).append('\n');
+        key.append(this.getRemoteJenkinsName()).append('\n');
+        key.append(jobName).append('\n');
+        for (String param : cleanedParams.toList()) {
+            key.append(param).append('\n');
         }
-        listener.getLogger().println("This job is build #[" + Integer.toString(nextBuildNumber) + "] on the remote server.");
-        BuildInfoExporterAction.addBuildInfoExporterAction(build, jobName, nextBuildNumber, Result.NOT_BUILT);
-        
-        //Have to form the string ourselves, as we might not get a response from non-parameterized builds
-        String jobURL = remoteServerURL + "/job/" + this.encodeValue(jobName) + "/";
-
-        // This is only for Debug
-        // This output whether there is another job running on the remote host that this job had conflicted with.
-        // The first condition is what is expected, The second is what would happen if two jobs launched jobs at the
-        // same time (and two remote builds were triggered).
-        // The third is what would happen if this job was triggers and the remote queue was already full (as the 'next
-        // build bumber' would still be the same after this job has triggered the remote job)
-        // int newNextBuildNumber = responseObject.getInt( "nextBuildNumber" ); // This should be nextBuildNumber + 1 OR
-        // there has been another job scheduled.
-        // if (newNextBuildNumber == (nextBuildNumber + 1)) {
-        // listener.getLogger().println("DEBUG: No other jobs triggered" );
-        // } else if( newNextBuildNumber > (nextBuildNumber + 1) ) {
-        // listener.getLogger().println("DEBUG: WARNING Other jobs triggered," + newNextBuildNumber + ", " +
-        // nextBuildNumber );
-        // } else {
-        // listener.getLogger().println("DEBUG: WARNING Did not get the correct build number for the triggered job, previous nextBuildNumber:"
-        // + newNextBuildNumber + ", newNextBuildNumber" + nextBuildNumber );
-        // }
-
-        // If we are told to block until remoteBuildComplete:
-        if (this.getBlockBuildUntilComplete()) {
-            listener.getLogger().println("Blocking local job until remote job completes");
-            // Form the URL for the triggered job
-            String jobLocation = jobURL + nextBuildNumber + "/api/json";
-
-            buildStatusStr = getBuildStatus(jobLocation, build, listener);
-
-            while (buildStatusStr.equals("not started")) {
-                listener.getLogger().println("Waiting for remote build to start.");
-                listener.getLogger().println("Waiting for " + this.pollInterval + " seconds until next poll.");
-                buildStatusStr = getBuildStatus(jobLocation, build, listener);
-                // Sleep for 'pollInterval' seconds.
-                // Sleep takes miliseconds so need to convert this.pollInterval to milisecopnds (x 1000)
-                try {
-                    // Could do with a better way of sleeping...
-                    Thread.sleep(this.pollInterval * 1000);
-                } catch (InterruptedException e) {
-                    this.failBuild(e, listener);
-                }
-            }
+        return Util.getDigestOf(key.toString());
+    }
 
-            listener.getLogger().println("Remote build started!");
-            while (buildStatusStr.equals("running")) {
-                listener.getLogger().println("Waiting for remote build to finish.");
-                listener.getLogger().println("Waiting for " + this.pollInterval + " seconds until next poll.");
-                buildStatusStr = getBuildStatus(jobLocation, build, listener);
-                // Sleep for 'pollInterval' seconds.
-                // Sleep takes miliseconds so need to convert this.pollInterval to milisecopnds (x 1000)
-                try {
-                    // Could do with a better way of sleeping...
-                    Thread.sleep(this.pollInterval * 1000);
-                } catch (InterruptedException e) {
-                    this.failBuild(e, listener);
-                }
-            }
-            listener.getLogger().println("Remote build finished with status " + buildStatusStr + ".");
-            BuildInfoExporterAction.addBuildInfoExporterAction(build, jobName, nextBuildNumber, Result.fromString(buildStatusStr));
-
-            if (this.getEnhancedLogging()) {
-                String buildUrl = getBuildUrl(jobLocation, build, listener);
-                String consoleOutput = getConsoleOutput(buildUrl, "GET", build, listener);
-
-                listener.getLogger().println();
-                listener.getLogger().println("Console output of remote job:");
-                listener.getLogger().println("--------------------------------------------------------------------------------");
-                listener.getLogger().println(consoleOutput);
-                listener.getLogger().println("--------------------------------------------------------------------------------");
+    /**
+     * Looks for a remote build, triggered with exactly the same parameters within the reuse window, that has either
+     * succeeded or is still running. The controller-wide {@link RecentBuildIndex} is checked first, and then (if
+     * enabled) the most recent builds of the remote job. A build the index still has as running is looked up on the
+     * remote server first, and skipped if it has finished without succeeding.
+     * 
+     * @return the build to reuse, or null if a new one has to be triggered
+     */
+    RecentBuildIndex.Entry findReusableBuild(AbstractBuild build, BuildListener listener,
+            RemoteJenkinsServer remoteServer, AuthContext auth, String reuseHash,
+            String jobName, String securityToken, RemoteParameters cleanedParams, Deadline deadline) throws IOException,
+            InterruptedException {
+        long window = this.getReuseWindow() * 60L * 1000L;
+        RecentBuildIndex.Entry entry = RecentBuildIndex.get().find(reuseHash, window);
+
+        if (entry != null && entry.isBuilding()) {
+            // nobody may have been waiting on it to record its result, e.g. after a fire-and-forget trigger
+            JSONObject status = fetch(this.buildGetUrl(remoteServer, jobName, securityToken) + "/"
+                    + entry.getBuildNumber() + "/api/json?tree=building,result", "GET", listener, remoteServer, auth,
+                    deadline);
+            // no answer while it is still in the remote queue
+            if (status != null && !status.optBoolean("building") && status.opt("result") instanceof String) {
+                RecentBuildIndex.get().record(reuseHash, jobName, entry.getBuildNumber(),
+                        Result.fromString(status.getString("result")), entry.getTimestamp());
+                entry = RecentBuildIndex.get().find(reuseHash, window);
             }
+        }
 
-            // If build did not finish with 'success' then fail build step.
-            if (!buildStatusStr.equals("SUCCESS")) {
-                // failBuild will check if the 'shouldNotFailBuild' parameter is set or not, so will decide how to
-                // handle the failure.
-                this.failBuild(new Exception("The remote job did not succeed."), listener);
-            }
-        } else {
-            listener.getLogger().println("Not blocking local job until remote job completes - fire and forget.");
+        if (entry != null || !this.getReuseSearchRemoteHistory()) {
+            return entry;
         }
 
-        return true;
-    }
+        listener.getLogger().println("Searching the history of remote job " + jobName + " for a build with identical parameters.");
+        String historyUrlString = this.buildGetUrl(remoteServer, jobName, securityToken)
+                + "/api/json?tree=builds[number,building,result,timestamp,actions[parameters[name,value]]]{0,"
+                + REUSE_HISTORY_DEPTH + "}";
+        JSONObject history = fetch(historyUrlString, "GET", listener, remoteServer, auth, deadline);
+        if (history == null || !history.has("builds")) {
+            return null;
+        }
 
-    private String findParameter(String parameter, List<String> parameters) {
-        for (String search : parameters) {
-            if (search.startsWith(parameter + "=")) {
-                return search.substring(parameter.length() + 1);
+        long now = System.currentTimeMillis();
+        JSONArray builds = history.getJSONArray("builds");
+        for (int i = 0; i < builds.size(); i++) {
+            JSONObject remoteBuild = builds.getJSONObject(i);
+            long timestamp = remoteBuild.optLong("timestamp");
+            if (now - timestamp > window) {
+                // builds are listed newest first, so all the others are too old as well
+                break;
+            }
+            boolean building = remoteBuild.optBoolean("building");
+            if (!building && !"SUCCESS".equals(remoteBuild.optString("result"))) {
+                continue;
+            }
+            if (hasExactParameters(remoteBuild.optJSONArray("actions"), cleanedParams)) {
+                RecentBuildIndex.get().record(reuseHash, jobName, remoteBuild.getInt("number"),
+                        building ? null : Result.SUCCESS, timestamp);
+                return RecentBuildIndex.get().find(reuseHash, window);
             }
         }
         return null;
     }
 
-    private boolean compareParameters(BuildListener listener, JSONArray parameters, List<String> expectedParams) {
-        for (int j = 0; j < parameters.size(); j++) {
-            JSONObject parameter = parameters.getJSONObject(j);
-            String name = parameter.getString("name");
-            String expected = findParameter(name, expectedParams);
-
-            if (expected == null) {
-                // If we didn't specify all of the parameters, this will happen, so we can not infer that this it he wrong build
-                listener.getLogger().println("Unable to find expected value for " + name);
-                continue;
+    /**
+     * Stricter than {@link ParameterMatcher}: every expected parameter has to be present on the remote build, with the
+     * same value.
+     */
+    private boolean hasExactParameters(JSONArray actions, RemoteParameters expectedParams) {
+        if (actions == null) {
+            return expectedParams.isEmpty();
+        }
+        for (int i = 0; i < actions.size(); i++) {
+            JSONObject action = actions.getJSONObject(i);
+            if (action == null || !action.has("parameters")) continue;
+
+            JSONArray parameters = action.getJSONArray("parameters");
+            Map<String, String> actual = new HashMap<String, String>();
+            for (int j = 0; j < parameters.size(); j++) {
+                JSONObject parameter = parameters.getJSONObject(j);
+                if (!actual.containsKey(parameter.getString("name"))) {
+                    actual.put(parameter.getString("name"), parameter.optString("value"));
+                }
             }
-
-            String value = parameter.getString("value");
-            // If we got the expected value, skip to the next parameter
-            if (expected.equals(value)) continue;
-
-            // We didn't get the expected value
-            listener.getLogger().println("Param " + name + " doesn't match!");
-            return false;
+            for (int j = 0; j < expectedParams.size(); j++) {
+                String value = expectedParams.getValue(j);
+                if (value == null || !value.equals(actual.get(expectedParams.getName(j)))) {
+                    return false;
+                }
+            }
+            return true;
         }
-        // All found parameters matched. This if there are no uniquely identifying parameters, this could still be a false positive.
-        return true;
+        return expectedParams.isEmpty();
     }
 
     public String getBuildStatus(String buildUrlString, AbstractBuild build, BuildListener listener) throws IOException {
-        String buildStatus = "UNKNOWN";
+        try {
+            RemoteJenkinsServer remoteServer = this.findRemoteHost(this.getRemoteJenkinsName());
+            return getBuildStatus(buildUrlString, build, listener, remoteServer,
+                    resolveAuth(remoteServer, build, listener), Deadline.NONE);
+        } catch (InterruptedException e) {
+            throw interrupted(e);
+        }
+    }
 
-        RemoteJenkinsServer remoteServer = this.findRemoteHost(this.getRemoteJenkinsName());
+    private String getBuildStatus(String buildUrlString, AbstractBuild build, BuildListener listener,
+            RemoteJenkinsServer remoteServer, AuthContext auth,
+            Deadline deadline) throws IOException, InterruptedException {
 
         if (remoteServer == null) {
             this.failBuild(new Exception("No remote host is defined for this job."), listener);
@@ -722,7 +631,17 @@ public class RemoteBuildConfiguration extends Builder {
                             + this.getRemoteJenkinsName() + "]");
         }
 
-        JSONObject responseObject = sendHTTPCall(buildUrlString, "GET", build, listener);
+        JSONObject responseObject = sendHTTPCall(buildUrlString, "GET", build, listener, remoteServer, auth, deadline);
+        return getBuildStatus(responseObject, listener);
+    }
+
+    /**
+     * @param responseObject
+     *            what the JSON API of the remote build answered, null if nothing
+     * @return "not started", "running", or the result of the remote build
+     */
+    String getBuildStatus(JSONObject responseObject, BuildListener listener) {
+        String buildStatus = "UNKNOWN";
 
         // get the next build from the location
 
@@ -744,9 +663,20 @@ public class RemoteBuildConfiguration extends Builder {
     }
 
     public String getBuildUrl(String buildUrlString, AbstractBuild build, BuildListener listener) throws IOException {
+        try {
+            RemoteJenkinsServer remoteServer = this.findRemoteHost(this.getRemoteJenkinsName());
+            return getBuildUrl(buildUrlString, build, listener, remoteServer,
+                    resolveAuth(remoteServer, build, listener), Deadline.NONE);
+        } catch (InterruptedException e) {
+            throw interrupted(e);
+        }
+    }
+
+    private String getBuildUrl(String buildUrlString, AbstractBuild build, BuildListener listener, RemoteJenkinsServer remoteServer, AuthContext auth,
+            Deadline deadline)
+            throws IOException, InterruptedException {
         String buildUrl = "";
 
-        RemoteJenkinsServer remoteServer = this.findRemoteHost(this.getRemoteJenkinsName());
 
         if (remoteServer == null) {
             this.failBuild(new Exception("No remote host is defined for this job."), listener);
@@ -761,7 +691,7 @@ public class RemoteBuildConfiguration extends Builder {
                             + this.getRemoteJenkinsName() + "]");
         }
 
-        JSONObject responseObject = sendHTTPCall(buildUrlString, "GET", build, listener);
+        JSONObject responseObject = sendHTTPCall(buildUrlString, "GET", build, listener, remoteServer, auth, deadline);
 
         // get the next build from the location
 
@@ -782,6 +712,68 @@ public class RemoteBuildConfiguration extends Builder {
             return getConsoleOutput( urlString, requestType, build, listener, 1 );
     }
 
+    /**
+     * Copies the console output of the remote build into a gzip-compressed file in the directory of this build, as it
+     * comes in, keeping only its last {@link #getConsoleTailLines()} lines in memory. A single try, retried by the
+     * caller.
+     * 
+     * @return the captured console output
+     */
+    ConsoleCapture captureConsole(String buildUrl, AbstractBuild build, String jobName, int buildNumber,
+            RemoteJenkinsServer remoteServer, AuthContext auth, Deadline deadline) throws IOException,
+            InterruptedException {
+        File spillFile = new File(build.getRootDir(), RemoteConsoleAction.getFileName(jobName, buildNumber));
+        HttpURLConnection connection = openConnection(remoteServer.rebase(buildUrl) + "consoleText", "GET",
+                auth.getAuthorization(), remoteServer.getReadTimeout() * 1000, deadline);
+        ConsoleCapture capture = new ConsoleCapture(this.getConsoleTailLines(), MAX_CONSOLE_TAIL_CHARS);
+        ConnectionLimiter connections = remoteServer.getConnections();
+        connections.acquire(deadline);
+        boolean read = false;
+        try {
+            InputStream in = ContentEncoding.decode(connection, connection.getInputStream(),
+                    remoteServer.getStatistics());
+            try {
+                OutputStream spill = new GZIPOutputStream(new FileOutputStream(spillFile));
+                try {
+                    capture.copy(in, spill);
+                } finally {
+                    spill.close();
+                }
+            } finally {
+                in.close();
+            }
+            read = true;
+        } catch (IOException e) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException("Interrupted while reading the remote console output");
+            }
+            throw e;
+        } finally {
+            connections.release();
+            // read to the end, the connection is left open for the next request to the server to reuse
+            if (!read) {
+                connection.disconnect();
+            }
+        }
+        RemoteConsoleAction.addTo(build, jobName, buildNumber);
+        return capture;
+    }
+
+    void printConsoleTail(BuildListener listener, ConsoleCapture capture, String jobName, int buildNumber) {
+        listener.getLogger().println();
+        listener.getLogger().println("Console output of remote job:");
+        listener.getLogger().println("--------------------------------------------------------------------------------");
+        if (capture.getSkippedLines() > 0) {
+            listener.getLogger().println("[" + capture.getSkippedLines() + " of " + capture.getLineCount()
+                    + " lines skipped, see \"Remote console of " + jobName + " #" + buildNumber
+                    + "\" on the build page for all of them]");
+        }
+        for (String line : capture.getTail()) {
+            listener.getLogger().println(line);
+        }
+        listener.getLogger().println("--------------------------------------------------------------------------------");
+    }
+
     /**
      * Orchestrates all calls to the remote server.
      * Also takes care of any credentials or failed-connection retries.
@@ -799,9 +791,26 @@ public class RemoteBuildConfiguration extends Builder {
             return sendHTTPCall( urlString, requestType, build, listener, 1 );
     }
 
+    private JSONObject sendHTTPCall(String urlString, String requestType, AbstractBuild build, BuildListener listener,
+            RemoteJenkinsServer remoteServer, AuthContext auth,
+            Deadline deadline) throws IOException, InterruptedException {
+        return sendHTTPCall(urlString, requestType, build, listener, 1, remoteServer, auth, deadline);
+    }
+
     public String getConsoleOutput(String urlString, String requestType, AbstractBuild build, BuildListener listener, int numberOfAttempts)
             throws IOException {
-        RemoteJenkinsServer remoteServer = this.findRemoteHost(this.getRemoteJenkinsName());
+        try {
+            RemoteJenkinsServer remoteServer = this.findRemoteHost(this.getRemoteJenkinsName());
+            return getConsoleOutput(urlString, requestType, build, listener, numberOfAttempts, remoteServer,
+                    resolveAuth(remoteServer, build, listener), Deadline.NONE);
+        } catch (InterruptedException e) {
+            throw interrupted(e);
+        }
+    }
+
+    private String getConsoleOutput(String urlString, String requestType, AbstractBuild build, BuildListener listener,
+            int numberOfAttempts, RemoteJenkinsServer remoteServer, AuthContext auth,
+            Deadline deadline) throws IOException, InterruptedException {
         int retryLimit = this.getConnectionRetryLimit();
         
         if (remoteServer == null) {
@@ -809,43 +818,55 @@ public class RemoteBuildConfiguration extends Builder {
             return null;
         }
 
-        HttpURLConnection connection = null;
-
         String consoleOutput = null;
 
-        URL buildUrl = new URL(urlString+"consoleText");
-        connection = (HttpURLConnection) buildUrl.openConnection();
-
-        // if there is a username + apiToken defined for this remote host, then use it
-        String usernameTokenConcat;
+        try {
+            consoleOutput = readConsole(urlString, requestType, remoteServer, auth, deadline);
+        } catch (DeadlineExceededException e) {
+            throw e;
+        } catch (IOException e) {
+            // a timeout caused by the deadline is not worth a retry
+            deadline.check();
 
-        if (this.getOverrideAuth()) {
-            usernameTokenConcat = this.getAuth()[0].getUsername() + ":" + this.getAuth()[0].getPassword();
-        } else {
-            usernameTokenConcat = remoteServer.getAuth()[0].getUsername() + ":"
-                    + remoteServer.getAuth()[0].getPassword();
-        }
+            //If we have connectionRetryLimit set to > 0 then retry that many times.
+            if( numberOfAttempts <= retryLimit) {
+                listener.getLogger().println("Connection to remote server failed, waiting for to retry - " + this.pollInterval + " seconds until next attempt.");
+                e.printStackTrace();
+                
+                // Sleep for 'pollInterval' seconds.
+                // Sleep takes miliseconds so need to convert this.pollInterval to milisecopnds (x 1000)
+                deadline.sleep(this.pollInterval * 1000);
 
-        if (!usernameTokenConcat.equals(":")) {
-            // token-macro replacment
-            try {
-                usernameTokenConcat = TokenMacro.expandAll(build, listener, usernameTokenConcat);
-            } catch (MacroEvaluationException e) {
-                this.failBuild(e, listener);
-            } catch (InterruptedException e) {
+ 
+                listener.getLogger().println("Retry attempt #" + numberOfAttempts + " out of " + retryLimit );
+                numberOfAttempts++;
+                consoleOutput = getConsoleOutput(urlString, requestType, build, listener, numberOfAttempts, remoteServer, auth, deadline);
+            } else if(numberOfAttempts > retryLimit){
+                //reached the maximum number of retries, time to fail
+                this.failBuild(new Exception("Max number of connection retries have been exeeded."), listener);
+            } else{
+                //something failed with the connection and we retried the max amount of times... so throw an exception to mark the build as failed.
                 this.failBuild(e, listener);
             }
-
-            byte[] encodedAuthKey = Base64.encodeBase64(usernameTokenConcat.getBytes());
-            connection.setRequestProperty("Authorization", "Basic " + new String(encodedAuthKey));
+            
+        } finally {
+            // always clear the query string and remove some "global" values
+            this.clearQueryString();
         }
+        return consoleOutput;
+    }
 
+    /**
+     * Reads the whole console output of the remote build. A single try, retried by the caller.
+     */
+    String readConsole(String buildUrl, String requestType, RemoteJenkinsServer remoteServer, AuthContext auth,
+            Deadline deadline) throws IOException, InterruptedException {
+        HttpURLConnection connection = openConnection(remoteServer.rebase(buildUrl) + "consoleText", requestType,
+                auth.getAuthorization(), remoteServer.getReadTimeout() * 1000, deadline);
+        ConnectionLimiter connections = remoteServer.getConnections();
+        connections.acquire(deadline);
+        boolean read = false;
         try {
-            connection.setDoInput(true);
-            connection.setRequestProperty("Accept", "application/json");
-            connection.setRequestMethod(requestType);
-            // wait up to 5 seconds for the connection to be open
-            connection.setConnectTimeout(5000);
             connection.connect();
             
             InputStream is;
@@ -855,21 +876,82 @@ public class RemoteBuildConfiguration extends Builder {
                 // In case of a e.g. 404 status
                 is = connection.getErrorStream();
             }
+            is = ContentEncoding.decode(connection, is, remoteServer.getStatistics());
             
             BufferedReader rd = new BufferedReader(new InputStreamReader(is));
             String line;
-            // String response = "";
             StringBuilder response = new StringBuilder();
         
             while ((line = rd.readLine()) != null) {
                 response.append(line+"\n");
             }
             rd.close();
-            
+            read = true;
 
-            consoleOutput = response.toString();
+            return response.toString();
         } catch (IOException e) {
-            
+            if (Thread.interrupted()) {
+                throw new InterruptedException("Interrupted while reading the remote console output");
+            }
+            throw e;
+        } finally {
+            connections.release();
+            // read to the end, the connection is left open for the next request to the server to reuse
+            if (!read) {
+                connection.disconnect();
+            }
+        }
+    }
+
+    /**
+     * Same as sendHTTPCall, but keeps track of the number of failed connection attempts (aka: the number of times this
+     * method has been called).
+     * In the case of a failed connection, the method calls it self recursively and increments  numberOfAttempts
+     * 
+     * @see sendHTTPCall
+     * @param numberOfAttempts  number of time that the connection has been attempted
+     * @return
+     * @throws IOException
+     */
+    public JSONObject sendHTTPCall(String urlString, String requestType, AbstractBuild build, BuildListener listener, int numberOfAttempts)
+            throws IOException {
+        try {
+            RemoteJenkinsServer remoteServer = this.findRemoteHost(this.getRemoteJenkinsName());
+            return sendHTTPCall(urlString, requestType, build, listener, numberOfAttempts, remoteServer,
+                    resolveAuth(remoteServer, build, listener), Deadline.NONE);
+        } catch (InterruptedException e) {
+            throw interrupted(e);
+        }
+    }
+
+    /**
+     * @param deadline
+     *            the connect and read timeouts, and the wait between retries, never run past it
+     * @throws DeadlineExceededException
+     *             if the deadline is reached before the call succeeds
+     * @throws InterruptedException
+     *             if this build is aborted while waiting on the remote server
+     */
+    private JSONObject sendHTTPCall(String urlString, String requestType, AbstractBuild build, BuildListener listener,
+            int numberOfAttempts, RemoteJenkinsServer remoteServer, AuthContext auth,
+            Deadline deadline) throws IOException, InterruptedException {
+        int retryLimit = this.getConnectionRetryLimit();
+        
+        if (remoteServer == null) {
+            this.failBuild(new Exception("No remote host is defined for this job."), listener);
+            return null;
+        }
+
+        JSONObject responseObject = null;
+
+        try {
+            responseObject = fetch(urlString, requestType, listener, remoteServer, auth, deadline);
+        } catch (DeadlineExceededException e) {
+            throw e;
+        } catch (IOException e) {
+            listener.getLogger().println(e.getMessage());
+            // a timeout caused by the deadline is not worth a retry
+            deadline.check();
             //If we have connectionRetryLimit set to > 0 then retry that many times.
             if( numberOfAttempts <= retryLimit) {
                 listener.getLogger().println("Connection to remote server failed, waiting for to retry - " + this.pollInterval + " seconds until next attempt.");
@@ -877,98 +959,309 @@ public class RemoteBuildConfiguration extends Builder {
                 
                 // Sleep for 'pollInterval' seconds.
                 // Sleep takes miliseconds so need to convert this.pollInterval to milisecopnds (x 1000)
-                try {
-                    // Could do with a better way of sleeping...
-                    Thread.sleep(this.pollInterval * 1000);
-                } catch (InterruptedException ex) {
-                    this.failBuild(ex, listener);
-                }
+                deadline.sleep(this.pollInterval * 1000);
 
  
                 listener.getLogger().println("Retry attempt #" + numberOfAttempts + " out of " + retryLimit );
                 numberOfAttempts++;
-                consoleOutput = getConsoleOutput(urlString, requestType, build, listener, numberOfAttempts);
-            } else if(numberOfAttempts > retryLimit){
+                responseObject = sendHTTPCall(urlString, requestType, build, listener, numberOfAttempts, remoteServer, auth, deadline);
+            }else if(numberOfAttempts > retryLimit){
                 //reached the maximum number of retries, time to fail
                 this.failBuild(new Exception("Max number of connection retries have been exeeded."), listener);
-            } else{
+            }else{
                 //something failed with the connection and we retried the max amount of times... so throw an exception to mark the build as failed.
                 this.failBuild(e, listener);
             }
             
         } finally {
-            // always make sure we close the connection
-            if (connection != null) {
-                connection.disconnect();
-            }
-            // and always clear the query string and remove some "global" values
+            // always clear the query string and remove some "global" values
             this.clearQueryString();
             // this.build = null;
             // this.listener = null;
 
         }
-        return consoleOutput;
+        return responseObject;
     }
 
     /**
-     * Same as sendHTTPCall, but keeps track of the number of failed connection attempts (aka: the number of times this
-     * method has been called).
-     * In the case of a failed connection, the method calls it self recursively and increments  numberOfAttempts
+     * A single call to the remote server, through whichever of its addresses currently works best. Retried by the
+     * caller: {@link #sendHTTPCall} sleeps between retries, a {@link RemoteBuildExecution} schedules them.
      * 
-     * @see sendHTTPCall
-     * @param numberOfAttempts  number of time that the connection has been attempted
-     * @return
-     * @throws IOException
+     * @return the JSON answer, or null if the remote server answered with something else (e.g. nothing at all)
+     * @throws InterruptedException
+     *             if this build is aborted while waiting on the remote server
      */
-    public JSONObject sendHTTPCall(String urlString, String requestType, AbstractBuild build, BuildListener listener, int numberOfAttempts)
-            throws IOException {
-        RemoteJenkinsServer remoteServer = this.findRemoteHost(this.getRemoteJenkinsName());
-        int retryLimit = this.getConnectionRetryLimit();
-        
-        if (remoteServer == null) {
-            this.failBuild(new Exception("No remote host is defined for this job."), listener);
-            return null;
-        }
-
+    JSONObject fetch(String urlString, String requestType, BuildListener listener, RemoteJenkinsServer remoteServer,
+            AuthContext auth, Deadline deadline) throws IOException, InterruptedException {
         HttpURLConnection connection = null;
 
-        JSONObject responseObject = null;
+        // go through whichever address of the remote server currently works best, which is how a wait fails over
+        urlString = remoteServer.rebase(urlString);
+        EndpointHealth health = remoteServer.getHealth(urlString);
 
-            URL buildUrl = new URL(urlString);
-            connection = (HttpURLConnection) buildUrl.openConnection();
+        // if there is a username + apiToken defined for this remote host, then use it
+        String authorization = auth.getAuthorization();
+        RemoteCallStatistics statistics = remoteServer.getStatistics();
+        statistics.recordRequest();
+        int readTimeout = remoteServer.getReadTimeout() * 1000;
 
-            // if there is a username + apiToken defined for this remote host, then use it
-            String usernameTokenConcat;
+        try {
+            String response;
+            long hedgeDelay = -1;
+            long callStart = System.currentTimeMillis();
 
-            if (this.getOverrideAuth()) {
-                usernameTokenConcat = this.getAuth()[0].getUsername() + ":" + this.getAuth()[0].getPassword();
+            // only idempotent requests may be sent twice
+            if (requestType.equals("GET") && remoteServer.getHedgePercentile() > 0) {
+                hedgeDelay = statistics.getLatencyPercentile(remoteServer.getHedgePercentile());
+            }
+
+            if (hedgeDelay >= 0) {
+                response = HedgedRequest.execute(newAttemptFactory(urlString, requestType, authorization, readTimeout,
+                        deadline, remoteServer), hedgeDelay, statistics);
             } else {
-                usernameTokenConcat = remoteServer.getAuth()[0].getUsername() + ":"
-                        + remoteServer.getAuth()[0].getPassword();
+                long start = System.currentTimeMillis();
+                connection = openConnection(urlString, requestType, authorization, readTimeout, deadline);
+                response = readResponse(connection, remoteServer, deadline);
+                statistics.recordLatency(System.currentTimeMillis() - start);
+                // read to the end, so leave the connection open for the next request to the server to reuse
+                connection = null;
+            }
+            if (health != null) {
+                health.recordSuccess(System.currentTimeMillis() - callStart);
             }
 
-            if (!usernameTokenConcat.equals(":")) {
-                // token-macro replacment
-                try {
-                    usernameTokenConcat = TokenMacro.expandAll(build, listener, usernameTokenConcat);
-                } catch (MacroEvaluationException e) {
-                    this.failBuild(e, listener);
-                } catch (InterruptedException e) {
-                    this.failBuild(e, listener);
+            // JSONSerializer serializer = new JSONSerializer();
+            // need to parse the data we get back into struct
+            //listener.getLogger().println("Called URL: '" + urlString +  "', got response: '" + response.toString() + "'");
+
+            //Solving issue reported in this comment: https://github.com/jenkinsci/parameterized-remote-trigger-plugin/pull/3#issuecomment-39369194
+            //Seems like in Jenkins version 1.547, when using "/build" (job API for non-parameterized jobs), it returns a string indicating the status.
+            //But in newer versions of Jenkins, it just returns an empty response.
+            //So we need to compensate and check for both.
+            if ( JSONUtils.mayBeJSON(response) == false) {
+                listener.getLogger().println("Remote Jenkins server returned empty response or invalid JSON - but we can still proceed with the remote build.");
+                return null;
+            }
+            return (JSONObject) JSONSerializer.toJSON(response);
+        } catch (DeadlineExceededException e) {
+            throw e;
+        } catch (IOException e) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException("Interrupted while waiting for the remote server");
+            }
+            if (health != null) {
+                health.recordFailure();
+            }
+            throw e;
+        } finally {
+            // close the connection of a request that failed
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+    }
+
+    /**
+     * Sends the request that triggers the remote build. Remote servers that support it answer with the location of the
+     * queue item they have created, which is what allows the build to be cancelled before it starts. A single try
+     * (with a fresh crumb if the one sent was rejected), retried by the caller.
+     * 
+     * @return the id of the remote queue item, or -1 if the remote server didn't tell
+     * @throws IOException
+     *             if the remote server could not be reached, or refused to trigger the build
+     */
+    long sendTriggerCall(String urlString, BuildListener listener, RemoteJenkinsServer remoteServer, AuthContext auth,
+            Deadline deadline) throws IOException, InterruptedException {
+        String authorization = auth.getAuthorization();
+        String address = remoteServer.getBaseUrl();
+        String attemptUrlString = remoteServer.rebase(urlString);
+        EndpointHealth health = remoteServer.getHealth(attemptUrlString);
+
+        for (boolean crumbRefreshed = false;; crumbRefreshed = true) {
+            HttpURLConnection connection = null;
+            try {
+                // remote servers with CSRF protection reject POSTs without a crumb
+                CrumbCache.Crumb crumb = CrumbCache.get(address, auth, remoteServer.getReadTimeout() * 1000, deadline);
+                connection = openConnection(attemptUrlString, "POST", authorization,
+                        remoteServer.getReadTimeout() * 1000, deadline);
+                crumb.applyTo(connection);
+                connection.connect();
+                int status = connection.getResponseCode();
+                if (status == HttpURLConnection.HTTP_FORBIDDEN && !crumbRefreshed) {
+                    // the crumb may have expired (e.g. the remote server restarted), get a new one and try again
+                    CrumbCache.invalidate(address, auth, crumb);
+                    continue;
+                }
+                if (status >= 400) {
+                    // nothing was triggered, there is no remote build to wait on
+                    throw new IOException("Remote Jenkins server answered the trigger with HTTP status " + status
+                            + ".");
+                }
+                return parseQueueId(connection.getHeaderField("Location"));
+            } catch (DeadlineExceededException e) {
+                throw e;
+            } catch (IOException e) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException("Interrupted while triggering the remote build");
                 }
+                if (health != null) {
+                    health.recordFailure();
+                }
+                throw e;
+            } finally {
+                if (connection != null) {
+                    connection.disconnect();
+                }
+                this.clearQueryString();
+            }
+        }
+    }
+
+    /**
+     * @param location
+     *            the "Location" header returned when a build is triggered, e.g. http://host/queue/item/42/
+     * @return the id of the queue item, or -1 if there is none
+     */
+    static long parseQueueId(String location) {
+        if (location == null) {
+            return -1;
+        }
+        Matcher matcher = QUEUE_ITEM_LOCATION.matcher(location);
+        return matcher.find() ? Long.parseLong(matcher.group(1)) : -1;
+    }
 
-                byte[] encodedAuthKey = Base64.encodeBase64(usernameTokenConcat.getBytes());
-                connection.setRequestProperty("Authorization", "Basic " + new String(encodedAuthKey));
+    /**
+     * Called when this build has been aborted: takes the remote build out of the remote queue if it has not started yet,
+     * or stops it if it is running. Builds that were merely reused are left alone, someone else is waiting on them.
+     */
+    void cancelRemoteWork(AbstractBuild build, BuildListener listener, RemoteJenkinsServer remoteServer,
+            String jobName, RemoteWork work) {
+        String cancelUrlString;
+
+        if (!work.started && work.queueId >= 0) {
+            cancelUrlString = remoteServer.getBaseUrl() + "/queue/cancelItem?id=" + work.queueId;
+            listener.getLogger().println("Build aborted, cancelling the remote queue item " + work.queueId + " of "
+                    + jobName + ".");
+        } else if (work.buildNumber >= 0) {
+            cancelUrlString = this.urlTemplate.getJobUrl(remoteServer.getBaseUrl(), jobName) + "/"
+                    + work.buildNumber + "/stop";
+            listener.getLogger().println("Build aborted, stopping remote build " + jobName + " #" + work.buildNumber
+                    + ".");
+        } else {
+            return;
+        }
+
+        // the interrupt is re-thrown by our caller, it must not get in the way of this last call
+        boolean interrupted = Thread.interrupted();
+        HttpURLConnection connection = null;
+        try {
+            AuthContext auth = resolveAuth(remoteServer, work.tokens, listener);
+            CrumbCache.Crumb crumb = CrumbCache.get(remoteServer.getBaseUrl(), auth, CANCEL_TIMEOUT,
+                    new Deadline(System.currentTimeMillis() + CANCEL_TIMEOUT, "cancel timeout"));
+            connection = openConnection(cancelUrlString, "POST", auth.getAuthorization(), CANCEL_TIMEOUT,
+                    Deadline.NONE);
+            crumb.applyTo(connection);
+            connection.setInstanceFollowRedirects(false);
+            int status = connection.getResponseCode();
+            if (status >= 400) {
+                listener.getLogger().println("Remote Jenkins server answered with HTTP status " + status
+                        + ", the remote build may still be running.");
+            }
+        } catch (IOException e) {
+            listener.getLogger().println("Unable to cancel the remote build: " + e.getMessage());
+        } catch (InterruptedException e) {
+            listener.getLogger().println("Interrupted while cancelling the remote build.");
+        } finally {
+            if (connection != null) {
+                connection.disconnect();
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
             }
+        }
+    }
 
+    /**
+     * For the public methods that can't throw {@link InterruptedException}: keeps the thread marked as interrupted.
+     */
+    private static InterruptedIOException interrupted(InterruptedException e) {
+        Thread.currentThread().interrupt();
+        InterruptedIOException interrupted = new InterruptedIOException(e.getMessage());
+        interrupted.initCause(e);
+        return interrupted;
+    }
+
+    /**
+     * Resolves the credentials for calls to the remote server, with all tokens resolved. Done once per execution
+     * rather than on every call, see {@link AuthContext}.
+     */
+    private AuthContext resolveAuth(RemoteJenkinsServer remoteServer, AbstractBuild build, BuildListener listener)
+            throws IOException {
+        return resolveAuth(remoteServer, new TokenExpansion(build, listener), listener);
+    }
+
+    AuthContext resolveAuth(RemoteJenkinsServer remoteServer, TokenExpansion tokens, BuildListener listener)
+            throws IOException {
+        String usernameTokenConcat;
+
+        if (this.getOverrideAuth()) {
+            usernameTokenConcat = this.getAuth()[0].getUsername() + ":" + this.getAuth()[0].getPassword();
+        } else if (remoteServer == null) {
+            return AuthContext.ANONYMOUS;
+        } else {
+            usernameTokenConcat = remoteServer.getAuth()[0].getUsername() + ":"
+                    + remoteServer.getAuth()[0].getPassword();
+        }
+
+        if (usernameTokenConcat.equals(":")) {
+            return AuthContext.ANONYMOUS;
+        }
+
+        // token-macro replacment
+        try {
+            usernameTokenConcat = tokens.resolve(usernameTokenConcat);
+        } catch (MacroEvaluationException e) {
+            this.failBuild(e, listener);
+        } catch (InterruptedException e) {
+            this.failBuild(e, listener);
+        }
+
+        return new AuthContext(usernameTokenConcat);
+    }
+
+    /**
+     * @param readTimeout
+     *            in milliseconds, shortened (as is the connect timeout) to end no later than the deadline
+     */
+    private HttpURLConnection openConnection(String urlString, String requestType, String authorization,
+            int readTimeout, Deadline deadline) throws IOException {
+        URL buildUrl = new URL(urlString);
+        HttpURLConnection connection = (HttpURLConnection) buildUrl.openConnection();
+
+        if (authorization != null) {
+            connection.setRequestProperty("Authorization", authorization);
+        }
+        connection.setDoInput(true);
+        connection.setRequestProperty("Accept", "application/json");
+        ContentEncoding.accept(connection);
+        connection.setRequestMethod(requestType);
+        // wait up to 5 seconds for the connection to be open
+        connection.setConnectTimeout(deadline.clamp(5000));
+        connection.setReadTimeout(deadline.clamp(readTimeout));
+        return connection;
+    }
+
+    /**
+     * Sends the request and reads the whole response body, which is also returned for error statuses (e.g. 404). Waits
+     * (no longer than the deadline) for one of the connections the remote server allows to be free first.
+     */
+    private String readResponse(HttpURLConnection connection, RemoteJenkinsServer remoteServer, Deadline deadline)
+            throws IOException, InterruptedException {
+        ConnectionLimiter connections = remoteServer.getConnections();
+        connections.acquire(deadline);
         try {
-            connection.setDoInput(true);
-            connection.setRequestProperty("Accept", "application/json");
-            connection.setRequestMethod(requestType);
-            // wait up to 5 seconds for the connection to be open
-            connection.setConnectTimeout(5000);
             connection.connect();
-            
+
             InputStream is;
             try {
                 is = connection.getInputStream();
@@ -976,72 +1269,54 @@ public class RemoteBuildConfiguration extends Builder {
                 // In case of a e.g. 404 status
                 is = connection.getErrorStream();
             }
-            
+            is = ContentEncoding.decode(connection, is, remoteServer.getStatistics());
+
             BufferedReader rd = new BufferedReader(new InputStreamReader(is));
             String line;
-            // String response = "";
             StringBuilder response = new StringBuilder();
-        
+
             while ((line = rd.readLine()) != null) {
                 response.append(line);
             }
             rd.close();
-            
-            // JSONSerializer serializer = new JSONSerializer();
-            // need to parse the data we get back into struct
-            //listener.getLogger().println("Called URL: '" + urlString +  "', got response: '" + response.toString() + "'");
 
-            //Solving issue reported in this comment: https://github.com/jenkinsci/parameterized-remote-trigger-plugin/pull/3#issuecomment-39369194
-            //Seems like in Jenkins version 1.547, when using "/build" (job API for non-parameterized jobs), it returns a string indicating the status.
-            //But in newer versions of Jenkins, it just returns an empty response.
-            //So we need to compensate and check for both.
-            if ( JSONUtils.mayBeJSON(response.toString()) == false) {
-                listener.getLogger().println("Remote Jenkins server returned empty response or invalid JSON - but we can still proceed with the remote build.");
-                return null;
-            } else {
-                responseObject = (JSONObject) JSONSerializer.toJSON(response.toString());
-            }
+            return response.toString();
+        } finally {
+            connections.release();
+        }
+    }
 
-        } catch (IOException e) {
-            listener.getLogger().println(e.getMessage());
-            //If we have connectionRetryLimit set to > 0 then retry that many times.
-            if( numberOfAttempts <= retryLimit) {
-                listener.getLogger().println("Connection to remote server failed, waiting for to retry - " + this.pollInterval + " seconds until next attempt.");
-                e.printStackTrace();
-                
-                // Sleep for 'pollInterval' seconds.
-                // Sleep takes miliseconds so need to convert this.pollInterval to milisecopnds (x 1000)
-                try {
-                    // Could do with a better way of sleeping...
-                    Thread.sleep(this.pollInterval * 1000);
-                } catch (InterruptedException ex) {
-                    this.failBuild(ex, listener);
-                }
+    /**
+     * Each attempt of a hedged request gets a connection of its own, so that the slower one can be aborted.
+     */
+    private HedgedRequest.AttemptFactory newAttemptFactory(final String urlString, final String requestType,
+            final String authorization, final int readTimeout, final Deadline deadline,
+            final RemoteJenkinsServer remoteServer) {
+        final RemoteCallStatistics statistics = remoteServer.getStatistics();
+        return new HedgedRequest.AttemptFactory() {
+            public HedgedRequest.Attempt newAttempt() throws IOException {
+                final HttpURLConnection connection = openConnection(urlString, requestType, authorization,
+                        readTimeout, deadline);
+
+                return new HedgedRequest.Attempt() {
+                    public String call() throws IOException {
+                        long start = System.currentTimeMillis();
+                        String response;
+                        try {
+                            response = readResponse(connection, remoteServer, deadline);
+                        } catch (InterruptedException e) {
+                            throw interrupted(e);
+                        }
+                        statistics.recordLatency(System.currentTimeMillis() - start);
+                        return response;
+                    }
 
- 
-                listener.getLogger().println("Retry attempt #" + numberOfAttempts + " out of " + retryLimit );
-                numberOfAttempts++;
-                responseObject = sendHTTPCall(urlString, requestType, build, listener, numberOfAttempts);
-            }else if(numberOfAttempts > retryLimit){
-                //reached the maximum number of retries, time to fail
-                this.failBuild(new Exception("Max number of connection retries have been exeeded."), listener);
-            }else{
-                //something failed with the connection and we retried the max amount of times... so throw an exception to mark the build as failed.
-                this.failBuild(e, listener);
-            }
-            
-        } finally {
-            // always make sure we close the connection
-            if (connection != null) {
-                connection.disconnect();
+                    public void cancel() {
+                        connection.disconnect();
+                    }
+                };
             }
-            // and always clear the query string and remove some "global" values
-            this.clearQueryString();
-            // this.build = null;
-            // this.listener = null;
-
-        }
-        return responseObject;
+        };
     }
 
     /**
@@ -1084,6 +1359,41 @@ public class RemoteBuildConfiguration extends Builder {
         return this.preventRemoteBuildQueue;
     }
 
+    public boolean getLockRemoteJob() {
+        return this.lockRemoteJob;
+    }
+
+    /**
+     * @return the priority of this trigger when triggers have to wait for their turn, higher goes first; may contain
+     *         tokens
+     */
+    public String getPriority() {
+        return this.priority;
+    }
+
+    /**
+     * @return name of the remote job parameter that gets a unique value on every trigger, empty if none
+     */
+    public String getCorrelationParameter() {
+        return Util.fixNull(this.correlationParameter);
+    }
+
+    /**
+     * @return name of the remote job parameter that gets the URL the remote build calls back once it has finished,
+     *         empty if the remote build is only polled
+     */
+    public String getCallbackParameter() {
+        return Util.fixNull(this.callbackParameter);
+    }
+
+    /**
+     * @return how many of the last lines of the remote console are printed, the whole console being kept in a file
+     *         linked from the build page; 0 to print all of it
+     */
+    public int getConsoleTailLines() {
+        return this.consoleTailLines;
+    }
+
     public boolean getBlockBuildUntilComplete() {
         return this.blockBuildUntilComplete;
     }
@@ -1111,69 +1421,67 @@ public class RemoteBuildConfiguration extends Builder {
         return this.parameterFile;
     }
 
+    public boolean getReuseRecentBuild() {
+        return this.reuseRecentBuild;
+    }
+
     /**
-     * Based on the number of parameters set (and only on params set), returns the proper URL string 
-     * @return A string which represents a portion of the build URL
+     * @return how old, in minutes, a remote build may be to still be reused
      */
-    private String getBuildTypeUrl() {
-        boolean isParameterized = (this.getParameters().length() > 0);
+    public int getReuseWindow() {
+        return this.reuseWindow;
+    }
 
-        if (isParameterized) {
-            return RemoteBuildConfiguration.paramerizedBuildUrl;
-        } else {
-            return RemoteBuildConfiguration.normalBuildUrl;
-        }
+    public boolean getReuseSearchRemoteHistory() {
+        return this.reuseSearchRemoteHistory;
     }
-    
+
     /**
-     * Same as above, but takes in to consideration if the remote server has any default parameters set or not
-     * @param isRemoteJobParameterized Boolean indicating if the remote job is parameterized or not
-     * @return A string which represents a portion of the build URL
+     * @return true if any limit on how long to wait on the remote build is set
      */
-    private String getBuildTypeUrl(boolean isRemoteJobParameterized) {
-        boolean isParameterized = false;
-        
-        if(isRemoteJobParameterized || (this.getParameters().length() > 0)) {
-            isParameterized = true;
-        }
+    public boolean getTimeouts() {
+        return this.maxQueueWait > 0 || this.maxRunTime > 0 || this.maxTotalTime > 0;
+    }
 
-        if (isParameterized) {
-            return RemoteBuildConfiguration.paramerizedBuildUrl;
-        } else {
-            return RemoteBuildConfiguration.normalBuildUrl;
-        }
+    /**
+     * @return how long, in minutes, the remote build may take to start, 0 for no limit
+     */
+    public int getMaxQueueWait() {
+        return this.maxQueueWait;
     }
-    
+
+    /**
+     * @return how long, in minutes, the remote build may run once started, 0 for no limit
+     */
+    public int getMaxRunTime() {
+        return this.maxRunTime;
+    }
+
+    /**
+     * @return how long, in minutes, the whole step may take, 0 for no limit
+     */
+    public int getMaxTotalTime() {
+        return this.maxTotalTime;
+    }
+
+    public boolean getDetachOnTimeout() {
+        return this.detachOnTimeout;
+    }
+
     /**
      * Pokes the remote server to see if it has default parameters defined or not.
      * 
      * @param jobName Name of the remote job to test
-     * @param build Build object
      * @param listener listner object
      * @return true if the remote job has default parameters set, otherwise false
      */
-    private boolean isRemoteJobParameterized(String jobName, AbstractBuild build, BuildListener listener) {
-        boolean isParameterized = false;
-        
+    boolean isRemoteJobParameterized(String jobName, BuildListener listener, RemoteJenkinsServer remoteServer,
+            AuthContext auth, Deadline deadline) throws IOException, InterruptedException {
         //build the proper URL to inspect the remote job
-        RemoteJenkinsServer remoteServer = this.findRemoteHost(this.getRemoteJenkinsName());
-        String remoteServerUrl = remoteServer.getAddress().toString();
-        remoteServerUrl += "/job/" + encodeValue(jobName);
-        remoteServerUrl += "/api/json";
-        
-        try {
-            JSONObject response = sendHTTPCall(remoteServerUrl, "GET", build, listener);
+        String remoteServerUrl = this.urlTemplate.getJobUrl(remoteServer.getBaseUrl(), jobName) + "/api/json";
 
-            if(response.getJSONArray("actions").size() >= 1){
-                isParameterized = true;
-            }
-            
-        } catch (IOException e) {
-            // TODO Auto-generated catch block
-            e.printStackTrace();
-        }
-        
-        return isParameterized;
+        JSONObject response = fetch(remoteServerUrl, "GET", listener, remoteServer, auth, deadline);
+        return response != null && response.getJSONArray("actions").size() >= 1;
     }
 
     public boolean getOverrideAuth() {
@@ -1189,10 +1497,6 @@ public class RemoteBuildConfiguration extends Builder {
         return this.parameters;
     }
 
-    private List<String> getParameterList() {
-        return this.parameterList;
-    }
-
     public String getQueryString() {
         return this.queryString;
     }
@@ -1208,6 +1512,23 @@ public class RemoteBuildConfiguration extends Builder {
         this.setQueryString("");
     }
 
+    /**
+     * What has been started on the remote server by one execution of this builder, so far.
+     */
+    static final class RemoteWork {
+        // id of the remote queue item, -1 if unknown
+        long    queueId     = -1;
+        // number of the remote build this execution is responsible for, -1 if unknown
+        int     buildNumber = -1;
+        boolean started;
+        // our turn in the TriggerDispatcher, released once the remote build has finished
+        TriggerDispatcher.Permit permit;
+        // the server the remote build is on, a member of the pool if a pool was configured
+        RemoteJenkinsServer remoteServer;
+        // expands the tokens of this execution
+        TokenExpansion tokens;
+    }
+
     // Overridden for better type safety.
     // If your plugin doesn't really define any property on Descriptor,
     // you don't have to do this.
@@ -1228,6 +1549,9 @@ public class RemoteBuildConfiguration extends Builder {
 v         */
         private CopyOnWriteList<RemoteJenkinsServer> remoteSites = new CopyOnWriteList<RemoteJenkinsServer>();
 
+        // indexed copy of remoteSites, replaced as a whole whenever they change
+        private transient volatile RemoteSites sites;
+
         /**
          * In order to load the persisted global configuration, you have to call load() in the constructor.
          */
@@ -1265,6 +1589,7 @@ v         */
         public boolean configure(StaplerRequest req, JSONObject formData) throws FormException {
 
             remoteSites.replaceBy(req.bindJSONToList(RemoteJenkinsServer.class, formData.get("remoteSites")));
+            rebuildSites();
             save();
 
             return super.configure(req, formData);
@@ -1273,8 +1598,15 @@ v         */
         public ListBoxModel doFillRemoteJenkinsNameItems() {
             ListBoxModel model = new ListBoxModel();
 
+            Set<String> pools = new LinkedHashSet<String>();
             for (RemoteJenkinsServer site : getRemoteSites()) {
                 model.add(site.getDisplayName());
+                if (site.getPool().length() > 0) {
+                    pools.add(site.getPool());
+                }
+            }
+            for (String pool : pools) {
+                model.add("Pool: " + pool, pool);
             }
 
             return model;
@@ -1282,11 +1614,37 @@ v         */
 
         public RemoteJenkinsServer[] getRemoteSites() {
 
-            return remoteSites.toArray(new RemoteJenkinsServer[this.remoteSites.size()]);
+            return getSites().getSites();
         }
 
         public void setRemoteSites(RemoteJenkinsServer... remoteSites) {
             this.remoteSites.replaceBy(remoteSites);
+            rebuildSites();
+        }
+
+        /**
+         * @return the remote servers of the given pool, in the order they were configured
+         */
+        public List<RemoteJenkinsServer> getPoolMembers(String pool) {
+            return getSites().getPool(pool);
+        }
+
+        /**
+         * @return the current snapshot of the remote servers, taken again after every change
+         */
+        RemoteSites getSites() {
+            RemoteSites snapshot = sites;
+            if (snapshot == null) {
+                // not taken yet since the configuration was loaded
+                snapshot = rebuildSites();
+            }
+            return snapshot;
+        }
+
+        private synchronized RemoteSites rebuildSites() {
+            RemoteSites snapshot = new RemoteSites(remoteSites.toArray(new RemoteJenkinsServer[remoteSites.size()]));
+            sites = snapshot;
+            return snapshot;
         }
     }
 }
@@ -0,0 +1,1037 @@
+package org.jenkinsci.plugins.ParameterizedRemoteTrigger;
+
+import hudson.AbortException;
+import hudson.model.AbstractBuild;
+import hudson.model.BuildListener;
+import hudson.model.Result;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import jenkins.model.Jenkins;
+
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+
+/**
+ * One execution of a {@link RemoteBuildConfiguration}: the remote build is triggered (or reused, or resumed),
+ * identified, and waited on until it has finished. The execution goes through its {@link Phase}s one short step at a
+ * time. No step ever waits: waiting for the next poll, for the remote job to be idle or for a retry is a step scheduled
+ * for later, and waiting for the turn of the trigger, for the lock of the remote job, for a free connection to the
+ * remote server or for a crumb another build is fetching is a step run once it has come. A single thread shared by all
+ * executions keeps the time; the steps run on a pool that only holds a thread while a call to the remote server is on
+ * the wire, so that a slow remote server holds up nobody but the builds waiting on it.
+ * <p>
+ * With {@link VirtualThreads} enabled, each step runs on a virtual thread of its own. The execution is guarded by a
+ * {@link ReentrantLock} rather than its monitor, so that a step blocked on the remote server doesn't pin its carrier
+ * thread.
+ * <p>
+ * A step that fails to reach the remote server is tried again after the poll interval, as often as the connection
+ * retry limit allows.
+ */
+final class RemoteBuildExecution {
+
+    enum Phase {
+        /** Resume an earlier wait, reuse a recent build, or wait for the turn of the trigger. */
+        PRE_CHECK,
+        /** Wait for the remote job to be idle, if asked to, and trigger it. */
+        TRIGGER,
+        /** Find out which build number the trigger got. */
+        IDENTIFY,
+        /** Wait for the remote build to leave the remote queue. */
+        QUEUED,
+        /** Wait for the remote build to finish. */
+        RUNNING,
+        /** Copy the console output of the remote build. */
+        CONSOLE,
+        DONE
+    }
+
+    // runs the steps, on a virtual thread each if enabled
+    private static final ExecutorService STEPS = newStepPool();
+
+    // only keeps the time: hands the steps that are due over to STEPS
+    private static final ScheduledExecutorService SCHEDULER = Executors
+            .newSingleThreadScheduledExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "Parameterized Remote Trigger scheduler");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    // longest wait between two checks for remote capacity, in seconds
+    private static final int MAX_CAPACITY_BACKOFF = 120;
+
+    // how many times the build numbers around the expected one are searched for the triggered build
+    private static final int IDENTIFY_TRIES = 3;
+
+    // returned by a step that waits to be woken up, rather than for some time
+    private static final long WAKE_UP = -1;
+
+    private final RemoteBuildConfiguration        config;
+    private final AbstractBuild<?, ?>             build;
+    private final BuildListener                   listener;
+    private final PrintStream                     logger;
+    private final String                          jobName;
+    private final String                          securityToken;
+    private RemoteParameters                      params;
+    private final Deadline                        totalDeadline;
+    private final Deadline                        queueDeadline;
+    private Deadline                              runDeadline;
+    private final RemoteBuildConfiguration.RemoteWork work = new RemoteBuildConfiguration.RemoteWork();
+
+    // held while a step runs
+    private final ReentrantLock                   lock = new ReentrantLock();
+    private Phase                                 phase = Phase.PRE_CHECK;
+    // bumped whenever the execution moves on, so that a timer meant for an earlier step is ignored
+    private int                                   generation;
+    private ScheduledFuture<?>                    timer;
+    private boolean                               waitingForWakeUp;
+    // the connections of the remote server, while waiting for one to be free
+    private ConnectionLimiter                     connectionsWaitedOn;
+    // the id the remote build calls back with, null if it doesn't
+    private String                                callbackId;
+    // set when the remote build has called back, until it has been polled
+    private volatile boolean                      notified;
+    // consecutive failures to reach the remote server
+    private int                                   failures;
+
+    private AuthContext                           auth;
+    private InFlightJournal                       journal;
+    private String                                handleKey;
+    private RemoteBuildHandle                     handle;
+    private String                                reuseHash;
+    private boolean                               triggered;
+    // there is a remote build to wait on, triggered by this execution or by an earlier one
+    private boolean                               attached;
+    // the remote build to wait on, triggered earlier without waiting; null to trigger one
+    private RemoteBuildHandle                     awaited;
+
+    // the lock of the remote job, while waiting for it or holding it
+    private RemoteJobLocks.Lock                   jobLock;
+    private Runnable                              jobLockWaiter;
+    private volatile boolean                      jobLockHandedOver;
+    private boolean                               jobLockHeld;
+
+    private String                                triggerUrlString;
+    private ParameterMatcher                      matcher;
+    // seconds until the next check for remote capacity, 0 before the first one
+    private int                                   capacityBackoff;
+    private int                                   nextBuildNumber;
+    private int                                   identifyTries;
+    private Iterator<Integer>                     identifyCandidates;
+    private String                                jobUrl;
+    // the last answer of the JSON API of the remote build
+    private JSONObject                            lastStatus;
+    private String                                buildStatus;
+
+    private final CountDownLatch                  done = new CountDownLatch(1);
+    private Throwable                             failure;
+    private final List<Runnable>                  whenDone = new ArrayList<Runnable>();
+
+    /**
+     * @param params
+     *            the parameters of the remote build, with all tokens expanded
+     * @param totalDeadline
+     *            bounds the whole execution
+     * @param queueDeadline
+     *            bounds everything up to the moment the remote build starts running
+     */
+    RemoteBuildExecution(RemoteBuildConfiguration config, AbstractBuild<?, ?> build, BuildListener listener,
+            RemoteJenkinsServer remoteServer, TokenExpansion tokens, String jobName, String securityToken,
+            RemoteParameters params, Deadline totalDeadline, Deadline queueDeadline) {
+        this.config = config;
+        this.build = build;
+        this.listener = listener;
+        this.logger = listener.getLogger();
+        this.jobName = jobName;
+        this.securityToken = securityToken;
+        this.params = params;
+        this.totalDeadline = totalDeadline;
+        this.queueDeadline = queueDeadline;
+        this.runDeadline = totalDeadline;
+        this.work.remoteServer = remoteServer;
+        this.work.tokens = tokens;
+    }
+
+    /**
+     * Schedules the first step.
+     */
+    RemoteBuildExecution start() {
+        lock.lock();
+        try {
+            execute(new Step(generation));
+        } finally {
+            lock.unlock();
+        }
+        return this;
+    }
+
+    /**
+     * Waits for the execution to be done.
+     *
+     * @throws AbortException
+     *             if the remote build failed, and the local build is to fail with it
+     * @throws DeadlineExceededException
+     *             if one of the time limits was reached
+     */
+    void await() throws IOException, InterruptedException {
+        done.await();
+        Throwable cause = getFailure();
+        if (cause instanceof IOException) {
+            throw (IOException) cause;
+        }
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+    }
+
+    /**
+     * @param callback
+     *            run once the execution is done, right away if it already is
+     */
+    void whenDone(Runnable callback) {
+        synchronized (whenDone) {
+            if (done.getCount() > 0) {
+                whenDone.add(callback);
+                return;
+            }
+        }
+        callback.run();
+    }
+
+    boolean isDone() {
+        return done.getCount() == 0;
+    }
+
+    /**
+     * @return why the execution failed, null if it didn't (or isn't done yet)
+     */
+    Throwable getFailure() {
+        lock.lock();
+        try {
+            return failure;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return true if the execution has triggered a remote build, or found one to wait on; false if it ended before
+     */
+    boolean hasRemoteBuild() {
+        lock.lock();
+        try {
+            return triggered || attached;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    Phase getPhase() {
+        lock.lock();
+        try {
+            return phase;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Makes the execution wait on a remote build triggered earlier, see {@link AwaitRemoteBuilds}, instead of
+     * triggering one. Called before {@link #start()}.
+     */
+    RemoteBuildExecution awaiting(RemoteBuildHandle handle) {
+        this.awaited = handle;
+        return this;
+    }
+
+    /**
+     * Stops waiting, once the step under way (if any) is over, and leaves the remote build running.
+     *
+     * @return false if the execution was already done
+     */
+    boolean detach() {
+        lock.lock();
+        try {
+            if (phase == Phase.DONE) {
+                return false;
+            }
+            finish(new InterruptedIOException("No longer waiting on the remote build"));
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops the execution, once the step under way (if any) is over, and cancels whatever it has started on the remote
+     * server. Called when the local build has been aborted.
+     */
+    void cancel() {
+        lock.lock();
+        try {
+            if (phase == Phase.DONE) {
+                return;
+            }
+            finish(new InterruptedIOException("Aborted while waiting on the remote build"));
+        } finally {
+            lock.unlock();
+        }
+        // the remote call is made without holding on to the execution
+        config.cancelRemoteWork(build, listener, work.remoteServer, jobName, work);
+    }
+
+    private final class Step implements Runnable {
+        private final int generation;
+
+        Step(int generation) {
+            this.generation = generation;
+        }
+
+        public void run() {
+            RemoteBuildExecution.this.run(generation);
+        }
+    }
+
+    /**
+     * Run by whoever is to wake this execution up, on their own thread: only hands over to the scheduler.
+     */
+    private final Runnable wakeUp = new Runnable() {
+        public void run() {
+            execute(new Runnable() {
+                public void run() {
+                    wokenUp();
+                }
+            });
+        }
+    };
+
+    private void wokenUp() {
+        lock.lock();
+        try {
+            // a late wake-up, after the execution has moved on, is ignored; one while waiting for something else only
+            // makes the step look again
+            if (waitingForWakeUp) {
+                run(generation);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static ExecutorService newStepPool() {
+        ExecutorService virtualThreads = VirtualThreads
+                .newPerTaskExecutorIfEnabled("Parameterized Remote Trigger execution #");
+        if (virtualThreads != null) {
+            return virtualThreads;
+        }
+        return Executors.newCachedThreadPool(new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "Parameterized Remote Trigger execution #" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    private static void execute(Runnable step) {
+        STEPS.execute(step);
+    }
+
+    private static ScheduledFuture<?> schedule(final Runnable step, long delay) {
+        return SCHEDULER.schedule(new Runnable() {
+            public void run() {
+                STEPS.execute(step);
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void run(int stepGeneration) {
+        lock.lock();
+        try {
+            runStep(stepGeneration);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void runStep(int stepGeneration) {
+        if (stepGeneration != generation || phase == Phase.DONE) {
+            return;
+        }
+        generation++;
+        waitingForWakeUp = false;
+        if (timer != null) {
+            timer.cancel(false);
+            timer = null;
+        }
+
+        long delay;
+        try {
+            currentDeadline().check();
+            delay = stepOnConnection();
+        } catch (AbortException e) {
+            finish(e);
+            return;
+        } catch (DeadlineExceededException e) {
+            finish(e);
+            return;
+        } catch (IOException e) {
+            try {
+                delay = retry(e);
+            } catch (IOException e2) {
+                finish(e2);
+                return;
+            }
+        } catch (InterruptedException e) {
+            // not from the local build, which is aborted through cancel()
+            finish(new InterruptedIOException(e.getMessage()));
+            return;
+        } catch (RuntimeException e) {
+            finish(e);
+            return;
+        } catch (Error e) {
+            finish(e);
+            throw e;
+        }
+        if (phase == Phase.DONE) {
+            return;
+        }
+
+        Deadline deadline = currentDeadline();
+        if (delay == WAKE_UP) {
+            waitingForWakeUp = true;
+            // come back anyway at the deadline
+            if (deadline != Deadline.NONE) {
+                timer = schedule(new Step(generation), deadline.remaining());
+            }
+        } else {
+            generation++;
+            timer = schedule(new Step(generation), Math.min(delay, deadline.remaining()));
+        }
+    }
+
+    /**
+     * Runs the step on a connection to the remote server, held for all the calls it makes.
+     *
+     * @return how long to wait before the next step, in milliseconds, or {@link #WAKE_UP}; also if no connection was
+     *         free, the step is run again once one has been given back
+     */
+    private long stepOnConnection() throws IOException, InterruptedException {
+        ConnectionLimiter connections = work.remoteServer.getConnections();
+        if (!connections.tryHold(wakeUp)) {
+            connectionsWaitedOn = connections;
+            return WAKE_UP;
+        }
+        connectionsWaitedOn = null;
+        try {
+            long delay = step();
+            failures = 0;
+            return delay;
+        } finally {
+            connections.unhold();
+        }
+    }
+
+    /**
+     * @return how long to wait before the next step, in milliseconds, or {@link #WAKE_UP}
+     */
+    private long step() throws IOException, InterruptedException {
+        switch (phase) {
+        case PRE_CHECK:
+            return preCheck();
+        case TRIGGER:
+            return trigger();
+        case IDENTIFY:
+            return identify();
+        case QUEUED:
+            return waitForStart();
+        case RUNNING:
+            return waitForEnd();
+        case CONSOLE:
+            return copyConsole();
+        default:
+            throw new IllegalStateException(phase.name());
+        }
+    }
+
+    private Deadline currentDeadline() {
+        switch (phase) {
+        case RUNNING:
+            return runDeadline;
+        case CONSOLE:
+            return totalDeadline;
+        default:
+            return queueDeadline;
+        }
+    }
+
+    /**
+     * The step failed to reach the remote server.
+     *
+     * @return how long to wait before trying again
+     * @throws IOException
+     *             if it is not worth trying again
+     */
+    private long retry(IOException e) throws IOException {
+        logger.println(e.getMessage());
+        // a timeout caused by the deadline is not worth a retry
+        currentDeadline().check();
+
+        int retryLimit = config.getConnectionRetryLimit();
+        if (++failures > retryLimit) {
+            if (phase == Phase.CONSOLE && config.getConsoleTailLines() > 0) {
+                logger.println("Unable to read the console output of the remote build: " + e);
+                // the remote build has finished all the same, its result still counts
+                return checkResult();
+            }
+            config.failBuild(new Exception("Max number of connection retries have been exeeded."), listener);
+            return done(false);
+        }
+        logger.println("Connection to remote server failed, waiting for to retry - " + config.getPollInterval()
+                + " seconds until next attempt.");
+        logger.println("Retry attempt #" + failures + " out of " + retryLimit);
+        return config.getPollInterval() * 1000L;
+    }
+
+    private long preCheck() throws IOException, InterruptedException {
+        if (work.permit != null) {
+            // woken up by the dispatcher, or by the deadline
+            return work.permit.isGranted() ? goTo(Phase.TRIGGER) : WAKE_UP;
+        }
+
+        RemoteJenkinsServer remoteServer = work.remoteServer;
+        if (awaited != null) {
+            // polled as it was triggered, e.g. with the credentials of the trigger rather than those of the server
+            auth = awaited.getAuth() != null ? awaited.getAuth() : config.resolveAuth(remoteServer, work.tokens,
+                    listener);
+            nextBuildNumber = awaited.getBuildNumber();
+            work.queueId = awaited.getQueueId();
+            work.buildNumber = nextBuildNumber;
+            logger.println("Waiting on remote job " + jobName + " #" + nextBuildNumber + ", triggered at "
+                    + new Date(awaited.getStartTime()) + ".");
+            return identified();
+        }
+
+        // a previous run of this job may have been cut short by a restart of this Jenkins while it was waiting on the
+        // very same remote build - if so, pick that build back up instead of triggering it a second time
+        if (journal == null) {
+            journal = InFlightJournal.get();
+            handleKey = config.getHandleKey(build, jobName, params);
+            handle = config.getBlockBuildUntilComplete() ? journal.claimRecovered(handleKey) : null;
+            if (handle != null && !handle.getRemoteServerName().equals(remoteServer.getDisplayName())) {
+                // the earlier run may have picked another member of the pool
+                RemoteJenkinsServer resumedServer = config.findRemoteHost(handle.getRemoteServerName());
+                if (resumedServer == null) {
+                    handle = null;
+                } else {
+                    remoteServer = resumedServer;
+                    work.remoteServer = resumedServer;
+                }
+            }
+            // credentials are resolved once, for every call this execution makes to the remote server
+            auth = config.resolveAuth(remoteServer, work.tokens, listener);
+            reuseHash = RecentBuildIndex.hash(remoteServer.getDisplayName(), jobName, params.toList());
+        }
+
+        if (handle != null) {
+            nextBuildNumber = handle.getBuildNumber();
+            work.queueId = handle.getQueueId();
+            work.buildNumber = nextBuildNumber;
+            logger.println("Resuming the wait on remote job " + jobName + " #" + nextBuildNumber
+                    + " that was triggered at " + new Date(handle.getStartTime())
+                    + " by an earlier run which did not complete.");
+            return identified();
+        }
+
+        // build avoidance: an identical remote build that recently succeeded (or is still running) can be reused
+        if (config.getReuseRecentBuild()) {
+            RecentBuildIndex.Entry reusable = config.findReusableBuild(build, listener, remoteServer, auth, reuseHash,
+                    jobName, securityToken, params, queueDeadline);
+            if (reusable != null && !reusable.isBuilding()) {
+                logger.println("Remote job " + jobName + " #" + reusable.getBuildNumber()
+                        + " already succeeded with identical parameters at " + new Date(reusable.getTimestamp())
+                        + ", reusing it instead of triggering a new build.");
+                BuildInfoExporterAction.addBuildInfoExporterAction(build, jobName, reusable.getBuildNumber(),
+                        Result.SUCCESS, remoteServer.getDisplayName());
+                return done(true);
+            } else if (reusable != null) {
+                nextBuildNumber = reusable.getBuildNumber();
+                logger.println("Remote job " + jobName + " #" + nextBuildNumber
+                        + " is already running with identical parameters, attaching to it instead of triggering a new build.");
+                return identified();
+            }
+        }
+
+        // wait for our turn, so that we don't trigger more remote builds than the remote server is allowed to run
+        work.permit = TriggerDispatcher.get().enqueue(remoteServer.getDisplayName(), jobName,
+                config.getTriggerPriority(work.tokens, listener), remoteServer.getMaxConcurrentBuilds(),
+                remoteServer.getMaxConcurrentBuildsPerJob(), wakeUp);
+        return work.permit.isGranted() ? goTo(Phase.TRIGGER) : WAKE_UP;
+    }
+
+    private long trigger() throws IOException, InterruptedException {
+        RemoteJenkinsServer remoteServer = work.remoteServer;
+        if (work.permit.getWaited() >= 1000 && triggerUrlString == null) {
+            logger.println("Waited " + work.permit.getWaited() / 1000 + " seconds for other triggers of "
+                    + remoteServer.getDisplayName() + " to finish.");
+        }
+        if (triggerUrlString == null) {
+            boolean isRemoteParameterized = config.isRemoteJobParameterized(jobName, listener, remoteServer, auth,
+                    queueDeadline);
+
+            // a unique value the triggered build can be recognized by, among others triggered with the same parameters
+            String correlationName = null;
+            if (config.getCorrelationParameter().length() > 0) {
+                correlationName = config.getCorrelationParameter();
+                params = params.with(correlationName, UUID.randomUUID().toString());
+                logger.println("Recognizing the remote build by " + correlationName + "="
+                        + params.get(correlationName));
+            }
+            matcher = new ParameterMatcher(params, correlationName);
+
+            // the callback URL is left out of the matching, the remote job may not pass it on
+            if (config.getCallbackParameter().length() > 0 && config.getBlockBuildUntilComplete()) {
+                callbackId = RemoteBuildCallback.register(notification);
+                String callbackUrl = RemoteBuildCallback.getCallbackUrl(callbackId);
+                if (callbackUrl == null) {
+                    logger.println("The Jenkins URL is not configured, the remote build can't call back: polling it.");
+                    RemoteBuildCallback.unregister(callbackId);
+                    callbackId = null;
+                } else {
+                    params = params.with(config.getCallbackParameter(), callbackUrl);
+                }
+            }
+            triggerUrlString = config.buildTriggerUrl(remoteServer, jobName, securityToken, params,
+                    isRemoteParameterized);
+
+            // Trigger remote job
+            // print out some debugging information to the console
+            logger.println("Triggering this remote job: " + jobName);
+        }
+
+        // other local builds triggering the same remote job have to wait until this one has been identified
+        if (config.getLockRemoteJob() && !jobLockHeld) {
+            if (jobLock == null) {
+                jobLock = RemoteJobLocks.get(remoteServer.getDisplayName(), jobName);
+                jobLockWaiter = new Runnable() {
+                    public void run() {
+                        jobLockHandedOver = true;
+                        wakeUp.run();
+                    }
+                };
+                jobLockHeld = jobLock.tryLock(jobLockWaiter);
+            } else {
+                jobLockHeld = jobLockHandedOver;
+            }
+            if (!jobLockHeld) {
+                return WAKE_UP;
+            }
+        }
+
+        // don't hold on to a thread while another trigger fetches the crumb of the remote server
+        if (!CrumbCache.whenFetched(remoteServer.getBaseUrl(), auth, wakeUp)) {
+            return WAKE_UP;
+        }
+
+        if (config.getPreventRemoteBuildQueue()) {
+            long wait = checkRemoteCapacity();
+            if (wait > 0) {
+                // let the others have a look in the meantime
+                unlockRemoteJob();
+                return wait;
+            }
+        } else {
+            logger.println("Not checking if the remote job " + jobName + " is building.");
+        }
+
+        // get the ID of the Next Job to run.
+        String queryUrlString = config.buildGetUrl(remoteServer, jobName, securityToken) + "/api/json/";
+        JSONObject queryResponseObject = config.fetch(queryUrlString, "GET", listener, remoteServer, auth,
+                queueDeadline);
+        if (queryResponseObject == null) {
+            //This should not happen as this page should return a JSON object
+            config.failBuild(new Exception("Got a blank response from Remote Jenkins Server ["
+                    + remoteServer.getBestAddress() + "], cannot continue."), listener);
+            return done(false);
+        }
+        nextBuildNumber = queryResponseObject.getInt("nextBuildNumber");
+
+        if (config.getOverrideAuth()) {
+            logger.println("Using job-level defined credentails in place of those from remote Jenkins config ["
+                    + config.getRemoteJenkinsName() + "]");
+        }
+
+        logger.println("Triggering remote job now.");
+        work.queueId = config.sendTriggerCall(triggerUrlString, listener, remoteServer, auth, queueDeadline);
+        triggered = true;
+        identifyTries = IDENTIFY_TRIES;
+        identifyCandidates = new SearchPattern(nextBuildNumber, 2).iterator();
+        return goTo(Phase.IDENTIFY);
+    }
+
+    /**
+     * Checks that the remote job has neither a build running nor one waiting in the remote queue. The wait between two
+     * checks starts at the poll interval and doubles every time, up to {@link #MAX_CAPACITY_BACKOFF}.
+     *
+     * @return how long to wait before checking again, in milliseconds, 0 if the remote job is idle
+     */
+    private long checkRemoteCapacity() throws IOException, InterruptedException {
+        RemoteJenkinsServer remoteServer = work.remoteServer;
+        if (capacityBackoff == 0) {
+            logger.println("Checking that the remote job " + jobName + " is not currently building.");
+            capacityBackoff = Math.max(1, config.getPollInterval());
+        }
+
+        String jobUrlString = config.buildGetUrl(remoteServer, jobName, securityToken)
+                + "/api/json?tree=inQueue,lastBuild[building]";
+        JSONObject jobResponse = config.fetch(jobUrlString, "GET", listener, remoteServer, auth, queueDeadline);
+        if (jobResponse == null) {
+            config.failBuild(new Exception("Got a blank response from Remote Jenkins Server, cannot continue."),
+                    listener);
+            return 0;
+        }
+
+        String busy = null;
+        JSONObject lastBuild = jobResponse.optJSONObject("lastBuild");
+        if (lastBuild != null && !lastBuild.isNullObject() && lastBuild.optBoolean("building")) {
+            busy = "Remote build is currently running";
+        } else if (jobResponse.optBoolean("inQueue")) {
+            busy = "Remote job is waiting in the remote queue";
+        } else {
+            // the queue only knows the short name of a job, not the folders it is in
+            String taskName = jobName.substring(jobName.lastIndexOf('/') + 1);
+            String queueUrlString = remoteServer.getBaseUrl() + "/queue/api/json?tree=items[id,task[name]]";
+            if (config.isQueued(config.fetch(queueUrlString, "GET", listener, remoteServer, auth, queueDeadline),
+                    taskName)) {
+                busy = "Remote job is waiting in the remote queue";
+            }
+        }
+
+        if (busy == null) {
+            logger.println("Remote job remote job " + jobName + " is not currenlty building.");
+            return 0;
+        }
+        logger.println(busy + " - waiting for it to finish.");
+        logger.println("Waiting for " + capacityBackoff + " seconds until next retry.");
+        long wait = capacityBackoff * 1000L;
+        capacityBackoff = Math.min(capacityBackoff * 2, Math.max(MAX_CAPACITY_BACKOFF, config.getPollInterval()));
+        return wait;
+    }
+
+    /**
+     * Validates the build number via parameters, one candidate per step.
+     */
+    private long identify() throws IOException, InterruptedException {
+        if (!identifyCandidates.hasNext()) {
+            if (--identifyTries == 0) {
+                // not recognized, go with the next build number
+                return identified();
+            }
+            identifyCandidates = new SearchPattern(nextBuildNumber, 2).iterator();
+        }
+        int buildNumber = identifyCandidates.next();
+
+        RemoteJenkinsServer remoteServer = work.remoteServer;
+        logger.println("Checking parameters of #" + buildNumber);
+        String validateUrlString = config.buildGetUrl(remoteServer, jobName, securityToken) + "/" + buildNumber
+                + "/api/json/";
+        JSONObject validateResponse = config.fetch(validateUrlString, "GET", listener, remoteServer, auth,
+                queueDeadline);
+        if (validateResponse == null) {
+            logger.println("Query failed.");
+            return 0;
+        }
+        JSONArray actions = validateResponse.getJSONArray("actions");
+        for (int i = 0; i < actions.size(); i++) {
+            JSONObject action = actions.getJSONObject(i);
+            if (!action.has("parameters")) continue;
+            // Check if the parameters match
+            if (matcher.matches(action.getJSONArray("parameters"), logger)) {
+                // We now have a very high degree of confidence that this is the correct build.
+                // It is still possible that this is a false positive if there are no parameters,
+                // or multiple jobs use the same parameters.
+                nextBuildNumber = buildNumber;
+                return identified();
+            }
+            // This is the wrong build
+            break;
+        }
+        return config.getPollInterval() * 1000L;
+    }
+
+    /**
+     * The number of the remote build is known: wait for it to finish, or leave it to run on its own.
+     */
+    private long identified() {
+        attached = true;
+        unlockRemoteJob();
+        RemoteJenkinsServer remoteServer = work.remoteServer;
+        if (triggered) {
+            work.buildNumber = nextBuildNumber;
+            RecentBuildIndex.get().recordTriggered(reuseHash, jobName, nextBuildNumber);
+        }
+        logger.println("This job is build #[" + Integer.toString(nextBuildNumber) + "] on the remote server.");
+        BuildInfoExporterAction.addBuildInfoExporterAction(build, jobName, nextBuildNumber, Result.NOT_BUILT,
+                remoteServer.getDisplayName());
+
+        if (!config.getBlockBuildUntilComplete()) {
+            logger.println("Not blocking local job until remote job completes - fire and forget.");
+            // an "Await remote builds" step later in this build can still wait on it
+            RemoteBuildHandle triggeredBuild = new RemoteBuildHandle(UUID.randomUUID().toString(), handleKey,
+                    remoteServer.getDisplayName(), jobName, nextBuildNumber, work.queueId, System.currentTimeMillis());
+            triggeredBuild.setAuth(auth);
+            RemoteBuildHandles.add(build, triggeredBuild);
+            return done(true);
+        }
+
+        logger.println("Blocking local job until remote job completes");
+        jobUrl = config.buildGetUrl(remoteServer, jobName, securityToken);
+        // remember what we are waiting on, so a restart of this Jenkins doesn't make us trigger it again
+        if (handle == null && awaited == null) {
+            handle = journal.open(handleKey, remoteServer.getDisplayName(), jobName, nextBuildNumber, work.queueId);
+        }
+        return goTo(Phase.QUEUED);
+    }
+
+    private long waitForStart() throws IOException, InterruptedException {
+        String status = poll(queueDeadline);
+        if (status.equals("not started")) {
+            logger.println("Waiting for remote build to start.");
+            logger.println("Waiting for " + getPollDelay() + " seconds until next poll.");
+            return getPollDelay() * 1000L;
+        }
+
+        logger.println("Remote build started!");
+        work.started = true;
+        // the run time is counted from the moment the remote build has started
+        runDeadline = totalDeadline.min(Deadline.after(config.getMaxRunTime(), "max run time of "
+                + config.getMaxRunTime() + " minutes"));
+        goTo(Phase.RUNNING);
+        return status.equals("running") ? waitingForEnd() : finished(status);
+    }
+
+    private long waitForEnd() throws IOException, InterruptedException {
+        String status = poll(runDeadline);
+        return status.equals("running") ? waitingForEnd() : finished(status);
+    }
+
+    private long waitingForEnd() {
+        logger.println("Waiting for remote build to finish.");
+        logger.println("Waiting for " + getPollDelay() + " seconds until next poll.");
+        return getPollDelay() * 1000L;
+    }
+
+    /**
+     * @return seconds between two polls of the remote build
+     */
+    private int getPollDelay() {
+        if (callbackId == null) {
+            return config.getPollInterval();
+        }
+        // only a safety net, the remote build calls back
+        return Math.max(config.getPollInterval(), RemoteBuildCallback.SAFETY_POLL_INTERVAL);
+    }
+
+    /**
+     * Run by {@link RemoteBuildCallback} on the request thread when the remote build calls back: polls it right away.
+     */
+    private final Runnable notification = new Runnable() {
+        public void run() {
+            notified = true;
+            execute(new Runnable() {
+                public void run() {
+                    pollNow();
+                }
+            });
+        }
+    };
+
+    private void pollNow() {
+        lock.lock();
+        try {
+            if (phase == Phase.QUEUED || phase == Phase.RUNNING) {
+                // the step the timer is due to run, ahead of time
+                run(generation);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private String poll(final Deadline deadline) throws IOException, InterruptedException {
+        final RemoteJenkinsServer remoteServer = work.remoteServer;
+        // polled together with the other builds of the remote job that are waited on
+        BuildStatusPoller poller = BuildStatusPoller.get(remoteServer.getDisplayName(), jobName,
+                auth.getAuthorization());
+        // after a call back, what the others polled earlier is too old
+        long maxAge = notified ? 0 : config.getPollInterval() * 1000L;
+        notified = false;
+        lastStatus = poller.poll(nextBuildNumber, jobUrl, maxAge,
+                new BuildStatusPoller.Source() {
+                    public JSONObject fetch(String urlString) throws IOException, InterruptedException {
+                        return config.fetch(urlString, "GET", listener, remoteServer, auth, deadline);
+                    }
+                });
+        return config.getBuildStatus(lastStatus, listener);
+    }
+
+    private long finished(String status) throws IOException {
+        buildStatus = status;
+        RemoteJenkinsServer remoteServer = work.remoteServer;
+        logger.println("Remote build finished with status " + buildStatus + ".");
+        BuildInfoExporterAction.addBuildInfoExporterAction(build, jobName, nextBuildNumber,
+                Result.fromString(buildStatus), remoteServer.getDisplayName());
+        if (reuseHash != null) {
+            RecentBuildIndex.get().recordResult(reuseHash, jobName, nextBuildNumber, Result.fromString(buildStatus));
+        }
+
+        if (config.getEnhancedLogging()) {
+            return goTo(Phase.CONSOLE);
+        }
+        return checkResult();
+    }
+
+    private long copyConsole() throws IOException, InterruptedException {
+        RemoteJenkinsServer remoteServer = work.remoteServer;
+        // the remote build told where it is in its last status
+        String buildUrl = lastStatus == null ? null : lastStatus.optString("url", null);
+        if (buildUrl == null) {
+            logger.println("WARNING: URL not found in JSON Response!");
+            return checkResult();
+        }
+
+        if (config.getConsoleTailLines() > 0) {
+            ConsoleCapture capture = config.captureConsole(buildUrl, build, jobName, nextBuildNumber, remoteServer,
+                    auth, totalDeadline);
+            config.printConsoleTail(listener, capture, jobName, nextBuildNumber);
+        } else {
+            String consoleOutput = config.readConsole(buildUrl, "GET", remoteServer, auth, totalDeadline);
+
+            logger.println();
+            logger.println("Console output of remote job:");
+            logger.println("--------------------------------------------------------------------------------");
+            logger.println(consoleOutput);
+            logger.println("--------------------------------------------------------------------------------");
+        }
+        return checkResult();
+    }
+
+    private long checkResult() throws IOException {
+        // If build did not finish with 'success' then fail build step.
+        if (!buildStatus.equals("SUCCESS")) {
+            // failBuild will check if the 'shouldNotFailBuild' parameter is set or not, so will decide how to
+            // handle the failure.
+            config.failBuild(new Exception("The remote job did not succeed."), listener);
+        }
+        return done(true);
+    }
+
+    private long goTo(Phase next) {
+        phase = next;
+        return 0;
+    }
+
+    /**
+     * @param completed
+     *            false if the execution was cut short by a failure that doesn't fail the local build
+     */
+    private long done(boolean completed) {
+        RemoteJenkinsServer remoteServer = work.remoteServer;
+        if (completed && config.getEnhancedLogging() && remoteServer.getHedgePercentile() > 0) {
+            logger.println("Remote call statistics for " + remoteServer.getDisplayName() + ": "
+                    + remoteServer.getStatistics());
+        }
+        finish(null);
+        return 0;
+    }
+
+    /**
+     * Gives back everything the execution holds, and wakes up whoever is waiting on it.
+     */
+    private void finish(Throwable cause) {
+        phase = Phase.DONE;
+        failure = cause;
+        if (timer != null) {
+            timer.cancel(false);
+            timer = null;
+        }
+        unlockRemoteJob();
+        if (connectionsWaitedOn != null) {
+            connectionsWaitedOn.withdraw(wakeUp);
+            connectionsWaitedOn = null;
+        }
+        if (work.permit != null) {
+            work.permit.release();
+        }
+        if (callbackId != null) {
+            RemoteBuildCallback.unregister(callbackId);
+        }
+        // a remote build whose wait was cut short has no result to record, don't let it be attached to as running
+        if (cause != null && attached && buildStatus == null && reuseHash != null) {
+            RecentBuildIndex.get().forget(reuseHash, nextBuildNumber);
+        }
+        // a wait cut short by this Jenkins going down is picked up again after the restart
+        if (handle != null && journal != null && !(isInterruption(cause) && isShuttingDown())) {
+            journal.close(handle);
+        }
+
+        List<Runnable> callbacks;
+        synchronized (whenDone) {
+            done.countDown();
+            callbacks = new ArrayList<Runnable>(whenDone);
+            whenDone.clear();
+        }
+        for (Runnable callback : callbacks) {
+            callback.run();
+        }
+    }
+
+    private static boolean isInterruption(Throwable cause) {
+        return cause instanceof InterruptedException || cause instanceof InterruptedIOException;
+    }
+
+    /**
+     * @return true if this Jenkins is going down: the builds it is running are then interrupted without having been
+     *         aborted. Not while it only prepares for shutdown, a build can still be aborted on purpose then.
+     */
+    static boolean isShuttingDown() {
+        Jenkins jenkins = Jenkins.getInstance();
+        return jenkins == null || jenkins.isTerminating();
+    }
+
+    private void unlockRemoteJob() {
+        if (jobLock == null) {
+            return;
+        }
+        if (jobLockHeld || !jobLock.withdraw(jobLockWaiter)) {
+            jobLock.unlock();
+        }
+        jobLock = null;
+        jobLockWaiter = null;
+        jobLockHandedOver = false;
+        jobLockHeld = false;
+    }
+}
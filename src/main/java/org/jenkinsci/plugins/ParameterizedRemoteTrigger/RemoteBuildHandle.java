@@ -0,0 +1,93 @@
+package org.jenkinsci.plugins.ParameterizedRemoteTrigger;
+
+import java.io.Serializable;
+
+/**
+ * Everything needed to find a triggered build on the remote server again: which server and job it runs on, its build
+ * number and queue item, and when it was triggered.
+ */
+public class RemoteBuildHandle implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String      id;
+    private final String      key;
+    private final String      remoteServerName;
+    private final String      jobName;
+    private final int         buildNumber;
+    private final long        queueId;
+    private final long        startTime;
+    // the credentials the build was triggered with, never saved: only needed while the local build is running
+    private transient AuthContext auth;
+
+    /**
+     * @param id
+     *            unique id of this handle
+     * @param key
+     *            identifies the trigger (local job, remote server, remote job and parameters) that created the handle
+     * @param remoteServerName
+     *            display name of the {@link RemoteJenkinsServer}
+     * @param jobName
+     *            name of the remote job, with all tokens already expanded
+     * @param buildNumber
+     *            number of the remote build
+     * @param queueId
+     *            id of the remote queue item, or -1 if it is not known
+     * @param startTime
+     *            time the remote build was triggered, in milliseconds
+     */
+    public RemoteBuildHandle(String id, String key, String remoteServerName, String jobName, int buildNumber,
+            long queueId, long startTime) {
+        this.id = id;
+        this.key = key;
+        this.remoteServerName = remoteServerName;
+        this.jobName = jobName;
+        this.buildNumber = buildNumber;
+        this.queueId = queueId;
+        this.startTime = startTime;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public String getRemoteServerName() {
+        return remoteServerName;
+    }
+
+    public String getJobName() {
+        return jobName;
+    }
+
+    public int getBuildNumber() {
+        return buildNumber;
+    }
+
+    public long getQueueId() {
+        return queueId;
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * @return the credentials the remote build was triggered with, null if not known (any more)
+     */
+    AuthContext getAuth() {
+        return auth;
+    }
+
+    void setAuth(AuthContext auth) {
+        this.auth = auth;
+    }
+
+    @Override
+    public String toString() {
+        return remoteServerName + " " + jobName + " #" + buildNumber;
+    }
+}
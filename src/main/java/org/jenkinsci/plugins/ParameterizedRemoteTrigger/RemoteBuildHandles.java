@@ -0,0 +1,59 @@
+package org.jenkinsci.plugins.ParameterizedRemoteTrigger;
+
+import hudson.model.AbstractBuild;
+import hudson.model.InvisibleAction;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The remote builds a local build has triggered without waiting on them, for a later {@link AwaitRemoteBuilds} step of
+ * the same build to wait on. Saved with the local build.
+ */
+public class RemoteBuildHandles extends InvisibleAction {
+
+    private final List<RemoteBuildHandle> handles = new ArrayList<RemoteBuildHandle>();
+
+    /**
+     * Adds a remote build to the ones the given local build hasn't waited on yet.
+     */
+    static void add(AbstractBuild<?, ?> build, RemoteBuildHandle handle) {
+        RemoteBuildHandles action;
+        synchronized (build) {
+            action = build.getAction(RemoteBuildHandles.class);
+            if (action == null) {
+                action = new RemoteBuildHandles();
+                build.addAction(action);
+            }
+        }
+        action.add(handle);
+    }
+
+    synchronized void add(RemoteBuildHandle handle) {
+        handles.add(handle);
+    }
+
+    /**
+     * Takes the remote builds to wait on out of the ones not waited on yet.
+     *
+     * @param jobName
+     *            only the builds of this remote job, all of them if empty
+     */
+    synchronized List<RemoteBuildHandle> take(String jobName) {
+        List<RemoteBuildHandle> taken = new ArrayList<RemoteBuildHandle>();
+        for (RemoteBuildHandle handle : handles) {
+            if (jobName.length() == 0 || handle.getJobName().equals(jobName)) {
+                taken.add(handle);
+            }
+        }
+        handles.removeAll(taken);
+        return taken;
+    }
+
+    /**
+     * @return the remote builds not waited on yet
+     */
+    public synchronized List<RemoteBuildHandle> getHandles() {
+        return new ArrayList<RemoteBuildHandle>(handles);
+    }
+}
@@ -0,0 +1,123 @@
+package org.jenkinsci.plugins.ParameterizedRemoteTrigger;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latency and hedging statistics of the calls made to one remote server, kept for the lifetime of this Jenkins.
+ */
+public final class RemoteCallStatistics {
+
+    /** Number of recent latencies the hedge delay is computed from. */
+    static final int SAMPLE_SIZE = 256;
+
+    /** Don't hedge before we know enough about the latency of a server. */
+    static final int MIN_SAMPLES = 20;
+
+    private static final ConcurrentMap<String, RemoteCallStatistics> STATISTICS = new ConcurrentHashMap<String, RemoteCallStatistics>();
+
+    private final long[]     latencies = new long[SAMPLE_SIZE];
+    private int              samples;
+
+    private final AtomicLong requests  = new AtomicLong();
+    private final AtomicLong hedged    = new AtomicLong();
+    private final AtomicLong hedgeWins = new AtomicLong();
+    // response bodies, as received and once decompressed
+    private final AtomicLong wireBytes    = new AtomicLong();
+    private final AtomicLong decodedBytes = new AtomicLong();
+
+    /**
+     * @param remoteServerName
+     *            display name of the remote server
+     * @return the statistics of the given server, never null
+     */
+    public static RemoteCallStatistics of(String remoteServerName) {
+        RemoteCallStatistics statistics = STATISTICS.get(remoteServerName);
+        if (statistics == null) {
+            STATISTICS.putIfAbsent(remoteServerName, new RemoteCallStatistics());
+            statistics = STATISTICS.get(remoteServerName);
+        }
+        return statistics;
+    }
+
+    /**
+     * Records the latency of a successful request, in milliseconds.
+     */
+    public synchronized void recordLatency(long millis) {
+        latencies[samples % SAMPLE_SIZE] = millis;
+        samples++;
+    }
+
+    /**
+     * @param percentile
+     *            between 1 and 100
+     * @return the given percentile of the recent latencies, in milliseconds, or -1 if there are not enough samples
+     *         yet
+     */
+    public long getLatencyPercentile(int percentile) {
+        long[] sorted;
+        synchronized (this) {
+            if (samples < MIN_SAMPLES) {
+                return -1;
+            }
+            sorted = Arrays.copyOf(latencies, Math.min(samples, SAMPLE_SIZE));
+        }
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    void recordRequest() {
+        requests.incrementAndGet();
+    }
+
+    void recordHedge() {
+        hedged.incrementAndGet();
+    }
+
+    void recordHedgeWin() {
+        hedgeWins.incrementAndGet();
+    }
+
+    void recordTransfer(long wire, long decoded) {
+        wireBytes.addAndGet(wire);
+        decodedBytes.addAndGet(decoded);
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getHedged() {
+        return hedged.get();
+    }
+
+    public long getHedgeWins() {
+        return hedgeWins.get();
+    }
+
+    /**
+     * @return bytes of response bodies received from the server, compressed or not
+     */
+    public long getWireBytes() {
+        return wireBytes.get();
+    }
+
+    /**
+     * @return bytes of response bodies once decompressed
+     */
+    public long getDecodedBytes() {
+        return decodedBytes.get();
+    }
+
+    @Override
+    public String toString() {
+        long requests = getRequests();
+        long hedged = getHedged();
+        return String.format("%d requests, %d hedged (%.1f%%), %d won by the hedge, %d KB received for %d KB of responses",
+                requests, hedged, requests == 0 ? 0.0 : 100.0 * hedged / requests, getHedgeWins(),
+                getWireBytes() / 1024, getDecodedBytes() / 1024);
+    }
+}
@@ -0,0 +1,99 @@
+package org.jenkinsci.plugins.ParameterizedRemoteTrigger;
+
+import hudson.model.Action;
+import hudson.model.AbstractBuild;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+/**
+ * Links the full console output of a remote build, as it was captured (gzip-compressed) into the directory of the
+ * local build, from the page of the local build.
+ */
+public class RemoteConsoleAction implements Action {
+
+    private final String jobName;
+    private final int    buildNumber;
+
+    RemoteConsoleAction(String jobName, int buildNumber) {
+        this.jobName = jobName;
+        this.buildNumber = buildNumber;
+    }
+
+    /**
+     * @return name of the file, in the directory of the local build, the console output of the given remote build is
+     *         captured into
+     */
+    static String getFileName(String jobName, int buildNumber) {
+        return getUrlName(jobName, buildNumber) + ".log.gz";
+    }
+
+    private static String getUrlName(String jobName, int buildNumber) {
+        return "remoteConsole-" + jobName.replaceAll("[^A-Za-z0-9_.-]", "_") + "-" + buildNumber;
+    }
+
+    /**
+     * Adds the link to the given build, unless it already has one for that remote build.
+     */
+    static void addTo(AbstractBuild<?, ?> build, String jobName, int buildNumber) {
+        String urlName = getUrlName(jobName, buildNumber);
+        for (RemoteConsoleAction action : build.getActions(RemoteConsoleAction.class)) {
+            if (action.getUrlName().equals(urlName)) {
+                return;
+            }
+        }
+        build.addAction(new RemoteConsoleAction(jobName, buildNumber));
+    }
+
+    public String getIconFileName() {
+        return "terminal.png";
+    }
+
+    public String getDisplayName() {
+        return "Remote console of " + jobName + " #" + buildNumber;
+    }
+
+    public String getUrlName() {
+        return getUrlName(jobName, buildNumber);
+    }
+
+    /**
+     * Sends the captured console output, as is to clients that accept gzip, decompressed to the others.
+     */
+    public void doIndex(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        AbstractBuild<?, ?> build = req.findAncestorObject(AbstractBuild.class);
+        File file = build == null ? null : new File(build.getRootDir(), getFileName(jobName, buildNumber));
+        if (file == null || !file.exists()) {
+            rsp.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        rsp.setContentType("text/plain;charset=UTF-8");
+        String acceptEncoding = req.getHeader("Accept-Encoding");
+        boolean gzip = acceptEncoding != null && acceptEncoding.contains("gzip");
+        if (gzip) {
+            rsp.setHeader("Content-Encoding", "gzip");
+        }
+        InputStream captured = new FileInputStream(file);
+        try {
+            InputStream in = gzip ? captured : new GZIPInputStream(captured);
+            OutputStream out = rsp.getOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, read);
+            }
+        } finally {
+            captured.close();
+        }
+    }
+}
@@ -5,6 +5,7 @@ import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import net.sf.json.JSONObject;
@@ -28,20 +29,65 @@ import hudson.util.ListBoxModel;
 public class RemoteJenkinsServer extends AbstractDescribableImpl<RemoteJenkinsServer> {
 
     private final URL             address;
+    // other ways to reach the same server (proxy, DR site, ...), tried when they do better than the address above
+    private final List<URL>       alternateAddresses;
     private final String          displayName;
     private final boolean         hasBuildTokenRootSupport;
     private final String          username;
     private final String          apiToken;
 
+    // latency percentile after which an idempotent request is hedged, 0 to never hedge
+    private final int             hedgePercentile;
+
+    // in seconds, 0 for the default
+    private final int             readTimeout;
+
+    // limits on how many of our remote builds may run at the same time, 0 for no limit
+    private final int             maxConcurrentBuilds;
+    private final int             maxConcurrentBuildsPerJob;
+
+    // name of the pool of equivalent servers this one belongs to, empty if none
+    private final String          pool;
+
+    // how many requests to this server may be on the wire at the same time, 0 for no limit
+    private final int             maxConnections;
+
+    /** Used when no read timeout is configured, in seconds. */
+    static final int              DEFAULT_READ_TIMEOUT = 60;
+
     private CopyOnWriteList<Auth> auth = new CopyOnWriteList<Auth>();
 
-    @DataBoundConstructor
+    // getAddresses() and their string forms, parsed once instead of on every call to this server
+    private transient volatile List<URL> addressList;
+    private transient volatile String[]  addressStrings;
+
     public RemoteJenkinsServer(String address, String displayName, boolean hasBuildTokenRootSupport, JSONObject auth)
             throws MalformedURLException {
+        this(address, displayName, hasBuildTokenRootSupport, auth, 0, 0, 0, 0, null, null, 0);
+    }
+
+    @DataBoundConstructor
+    public RemoteJenkinsServer(String address, String displayName, boolean hasBuildTokenRootSupport, JSONObject auth,
+            int hedgePercentile, int readTimeout, int maxConcurrentBuilds, int maxConcurrentBuildsPerJob,
+            String alternateAddresses, String pool, int maxConnections) throws MalformedURLException {
 
         this.address = new URL(address);
+        this.alternateAddresses = new ArrayList<URL>();
+        if (alternateAddresses != null) {
+            for (String alternate : alternateAddresses.split("\n")) {
+                if (alternate.trim().length() > 0) {
+                    this.alternateAddresses.add(new URL(alternate.trim()));
+                }
+            }
+        }
         this.displayName = displayName.trim();
         this.hasBuildTokenRootSupport = hasBuildTokenRootSupport;
+        this.hedgePercentile = Math.max(0, Math.min(hedgePercentile, 100));
+        this.readTimeout = Math.max(0, readTimeout);
+        this.maxConcurrentBuilds = Math.max(0, maxConcurrentBuilds);
+        this.maxConcurrentBuildsPerJob = Math.max(0, maxConcurrentBuildsPerJob);
+        this.pool = pool == null ? "" : pool.trim();
+        this.maxConnections = Math.max(0, maxConnections);
 
         // Holding on to both of these variables for legacy purposes. The seemingly 'dirty' getters for these properties
         // are for the same reason.
@@ -74,10 +120,220 @@ public class RemoteJenkinsServer extends AbstractDescribableImpl<RemoteJenkinsSe
         return address;
     }
 
+    /**
+     * @return the other addresses of this server, one per line
+     */
+    public String getAlternateAddresses() {
+        StringBuilder addresses = new StringBuilder();
+        if (this.alternateAddresses != null) {
+            for (URL alternate : this.alternateAddresses) {
+                addresses.append(alternate).append('\n');
+            }
+        }
+        return addresses.toString();
+    }
+
+    /**
+     * @return all the addresses of this server, the main one first
+     */
+    public List<URL> getAddresses() {
+        List<URL> addresses = this.addressList;
+        if (addresses == null) {
+            addresses = new ArrayList<URL>();
+            addresses.add(this.address);
+            if (this.alternateAddresses != null) {
+                addresses.addAll(this.alternateAddresses);
+            }
+            addresses = Collections.unmodifiableList(addresses);
+            String[] strings = new String[addresses.size()];
+            for (int i = 0; i < strings.length; i++) {
+                strings[i] = addresses.get(i).toString();
+            }
+            this.addressStrings = strings;
+            this.addressList = addresses;
+        }
+        return addresses;
+    }
+
+    private String[] getAddressStrings() {
+        getAddresses();
+        return this.addressStrings;
+    }
+
+    /**
+     * @return the address with the best {@link EndpointHealth}; the main address unless another one does better
+     */
+    public URL getBestAddress() {
+        return getAddresses().get(getBestIndex());
+    }
+
+    /**
+     * @return {@link #getBestAddress()} as a string, to build the URLs of calls to this server on
+     */
+    public String getBaseUrl() {
+        return getAddressStrings()[getBestIndex()];
+    }
+
+    private int getBestIndex() {
+        String[] addresses = getAddressStrings();
+        if (addresses.length == 1) {
+            return 0;
+        }
+        int best = 0;
+        double bestScore = 0;
+        for (int i = 0; i < addresses.length; i++) {
+            double score = EndpointHealth.of(addresses[i]).getScore();
+            if (i == 0 || score < bestScore) {
+                best = i;
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Moves a URL of this server over to its best address, e.g. after the address it was built with has gone down.
+     * 
+     * @return the URL on the best address, or the given URL if it is not on one of the addresses of this server
+     */
+    public String rebase(String urlString) {
+        String[] addresses = getAddressStrings();
+        if (addresses.length == 1) {
+            return urlString;
+        }
+        int index = indexOfAddress(urlString);
+        if (index < 0) {
+            return urlString;
+        }
+        return trimSlash(addresses[getBestIndex()]) + urlString.substring(trimSlash(addresses[index]).length());
+    }
+
+    private static String trimSlash(String address) {
+        return address.endsWith("/") ? address.substring(0, address.length() - 1) : address;
+    }
+
+    /**
+     * @return the health of the address the given URL is on, or null if it is not on one of the addresses of this
+     *         server
+     */
+    public EndpointHealth getHealth(String urlString) {
+        int index = indexOfAddress(urlString);
+        return index < 0 ? null : EndpointHealth.of(getAddressStrings()[index]);
+    }
+
+    /**
+     * Addresses can be prefixes of each other, e.g. <tt>http://host</tt> and <tt>http://host/jenkins</tt>: the URL is
+     * on the longest one it starts with up to a path boundary.
+     * 
+     * @return the index of the address the given URL is on, or -1 if it is not on one of the addresses of this server
+     */
+    private int indexOfAddress(String urlString) {
+        String[] addresses = getAddressStrings();
+        int found = -1;
+        for (int i = 0; i < addresses.length; i++) {
+            String prefix = addresses[i];
+            if (urlString.startsWith(prefix)
+                    && (urlString.length() == prefix.length() || prefix.endsWith("/")
+                            || urlString.charAt(prefix.length()) == '/')
+                    && (found < 0 || prefix.length() > addresses[found].length())) {
+                found = i;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @return a one-line summary of the health of every address
+     */
+    public String getEndpointHealth() {
+        StringBuilder summary = new StringBuilder();
+        for (URL candidate : getAddresses()) {
+            if (summary.length() > 0) {
+                summary.append("; ");
+            }
+            summary.append(candidate).append(": ").append(EndpointHealth.of(candidate.toString()));
+        }
+        return summary.toString();
+    }
+
     public boolean getHasBuildTokenRootSupport() {
         return this.hasBuildTokenRootSupport;
     }
 
+    /**
+     * @return the latency percentile after which idempotent requests to this server are hedged, or 0 if they are
+     *         never hedged
+     */
+    public int getHedgePercentile() {
+        return this.hedgePercentile;
+    }
+
+    /**
+     * @return how long, in seconds, to wait for data from this server before a request is considered failed
+     */
+    public int getReadTimeout() {
+        return this.readTimeout > 0 ? this.readTimeout : DEFAULT_READ_TIMEOUT;
+    }
+
+    /**
+     * @return how many remote builds triggered by this Jenkins may run on this server at the same time, 0 for no
+     *         limit
+     */
+    public int getMaxConcurrentBuilds() {
+        return this.maxConcurrentBuilds;
+    }
+
+    /**
+     * @return how many remote builds triggered by this Jenkins may run for one job of this server at the same time, 0
+     *         for no limit
+     */
+    public int getMaxConcurrentBuildsPerJob() {
+        return this.maxConcurrentBuildsPerJob;
+    }
+
+    /**
+     * @return the name of the pool of equivalent servers this one belongs to, empty if none
+     */
+    public String getPool() {
+        return this.pool == null ? "" : this.pool;
+    }
+
+    /**
+     * @return how many requests to this server may be on the wire at the same time, 0 for no limit
+     */
+    public int getMaxConnections() {
+        return this.maxConnections;
+    }
+
+    /**
+     * @return what caps the requests on the wire to this server
+     */
+    public ConnectionLimiter getConnections() {
+        return ConnectionLimiter.of(this.getDisplayName(), this.maxConnections);
+    }
+
+    /**
+     * @return the last known load of this server, as used to pick the least loaded member of its pool
+     */
+    public ServerLoad getLoad() {
+        return ServerLoad.of(this.getDisplayName());
+    }
+
+    /**
+     * @return how many triggers to this server are running and waiting in the {@link TriggerDispatcher}, and how long
+     *         they waited
+     */
+    public String getTriggerQueue() {
+        return TriggerDispatcher.get().getStatus(this.getDisplayName());
+    }
+
+    /**
+     * @return latency and hedging statistics of the calls made to this server
+     */
+    public RemoteCallStatistics getStatistics() {
+        return RemoteCallStatistics.of(this.getDisplayName());
+    }
+
     @Override
     public DescriptorImpl getDescriptor() {
         return (DescriptorImpl) super.getDescriptor();
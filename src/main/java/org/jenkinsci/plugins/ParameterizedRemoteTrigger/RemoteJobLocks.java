@@ -0,0 +1,79 @@
+package org.jenkinsci.plugins.ParameterizedRemoteTrigger;
+
+import java.util.LinkedList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Controller-wide locks, one per remote job, held while a remote job is checked for capacity and triggered. Without
+ * them, local builds that check the same idle remote job at the same time would all see it idle and all trigger it.
+ */
+final class RemoteJobLocks {
+
+    private static final ConcurrentMap<String, Lock> LOCKS = new ConcurrentHashMap<String, Lock>();
+
+    private RemoteJobLocks() {
+    }
+
+    /**
+     * @return the lock of the given remote job, handed out in the order it was asked for
+     */
+    static Lock get(String remoteServerName, String jobName) {
+        String key = remoteServerName + '\n' + jobName;
+        Lock lock = LOCKS.get(key);
+        if (lock == null) {
+            LOCKS.putIfAbsent(key, new Lock());
+            lock = LOCKS.get(key);
+        }
+        return lock;
+    }
+
+    /**
+     * Unlike a {@link java.util.concurrent.locks.ReentrantLock}, not owned by a thread: a remote build execution moves
+     * from thread to thread, and unlocks from whichever one it is on.
+     */
+    static final class Lock {
+        private boolean                    locked;
+        private final LinkedList<Runnable> waiters = new LinkedList<Runnable>();
+
+        /**
+         * @param waiter
+         *            if the lock is taken, run once it has been handed over to the caller, on the thread that unlocks
+         *            it: it must only hand over to another thread
+         * @return true if the caller now holds the lock, false if it has been queued for it
+         */
+        synchronized boolean tryLock(Runnable waiter) {
+            if (!locked) {
+                locked = true;
+                return true;
+            }
+            waiters.add(waiter);
+            return false;
+        }
+
+        /**
+         * Takes a caller that no longer wants the lock out of the queue.
+         *
+         * @return false if the lock has already been handed over to it, it then has to unlock it
+         */
+        synchronized boolean withdraw(Runnable waiter) {
+            return waiters.remove(waiter);
+        }
+
+        /**
+         * Hands the lock over to the first caller in the queue, if any.
+         */
+        void unlock() {
+            Runnable next;
+            synchronized (this) {
+                next = waiters.poll();
+                if (next == null) {
+                    locked = false;
+                }
+            }
+            if (next != null) {
+                next.run();
+            }
+        }
+    }
+}
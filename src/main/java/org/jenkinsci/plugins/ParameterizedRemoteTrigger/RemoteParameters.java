@@ -0,0 +1,227 @@
+package org.jenkinsci.plugins.ParameterizedRemoteTrigger;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The parameters sent to the remote job, as name/value pairs. Parsed in a single pass over the text the user entered
+ * (one <tt>NAME=value</tt> per line, empty lines and lines starting with <tt>#</tt> are skipped), and then used as is
+ * to build the query string, to key remote builds and to recognize the remote build among others.
+ * <p>
+ * Only the first <tt>=</tt> of a line separates the name from the value, a value may contain more of them.
+ */
+final class RemoteParameters {
+
+    /**
+     * Expands the tokens of one line.
+     */
+    interface Expander {
+        String expand(String line);
+    }
+
+    static final RemoteParameters EMPTY = new RemoteParameters(new String[0], new String[0], new boolean[0], 0);
+
+    private final String[]  names;
+    // null for a line without "=", which is sent as is
+    private final String[]  values;
+    // whether the line has tokens to expand before it is sent
+    private final boolean[] tokens;
+    private final int       size;
+
+    // value of the first parameter by name, with that name, built on first use
+    private volatile Map<String, String> byName;
+
+    private RemoteParameters(String[] names, String[] values, boolean[] tokens, int size) {
+        this.names = names;
+        this.values = values;
+        this.tokens = tokens;
+        this.size = size;
+    }
+
+    /**
+     * @param text
+     *            one parameter per line
+     */
+    static RemoteParameters parse(String text) {
+        Parser parser = new Parser();
+        int start = 0;
+        while (start <= text.length()) {
+            int end = text.indexOf('\n', start);
+            if (end < 0) {
+                end = text.length();
+            }
+            parser.add(text.substring(start, end));
+            start = end + 1;
+        }
+        return parser.build();
+    }
+
+    /**
+     * @param lines
+     *            one parameter per element
+     */
+    static RemoteParameters parse(List<String> lines) {
+        Parser parser = new Parser();
+        for (String line : lines) {
+            parser.add(line);
+        }
+        return parser.build();
+    }
+
+    /**
+     * @return these parameters with the tokens of every line that has any expanded; these very parameters if no line
+     *         has tokens
+     */
+    RemoteParameters expand(Expander expander) {
+        Parser parser = null;
+        for (int i = 0; i < size; i++) {
+            if (tokens[i] && parser == null) {
+                parser = new Parser();
+                for (int j = 0; j < i; j++) {
+                    parser.add(names[j], values[j], false);
+                }
+            }
+            if (parser != null) {
+                if (tokens[i]) {
+                    parser.add(expander.expand(toString(i)), false);
+                } else {
+                    parser.add(names[i], values[i], false);
+                }
+            }
+        }
+        return parser == null ? this : parser.build();
+    }
+
+    /**
+     * @return these parameters with the given one in place of any parameter of the same name, at the end
+     */
+    RemoteParameters with(String name, String value) {
+        Parser parser = new Parser();
+        for (int i = 0; i < size; i++) {
+            if (!names[i].equals(name)) {
+                parser.add(names[i], values[i], tokens[i]);
+            }
+        }
+        parser.add(name, value, false);
+        return parser.build();
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    String getName(int i) {
+        return names[i];
+    }
+
+    /**
+     * @return the value of the i-th parameter, null if its line has no "="
+     */
+    String getValue(int i) {
+        return values[i];
+    }
+
+    /**
+     * @return the value of the first parameter with the given name, null if there is none
+     */
+    String get(String name) {
+        Map<String, String> index = byName;
+        if (index == null) {
+            index = new HashMap<String, String>(size * 2);
+            for (int i = size - 1; i >= 0; i--) {
+                if (values[i] != null) {
+                    index.put(names[i], values[i]);
+                }
+            }
+            byName = index;
+        }
+        return index.get(name);
+    }
+
+    /**
+     * Appends the parameters as an URL-encoded query string, without a leading or trailing "&".
+     */
+    void appendQueryString(StringBuilder query) {
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                query.append('&');
+            }
+            query.append(TriggerUrlTemplate.encode(names[i]));
+            if (values[i] != null) {
+                query.append('=').append(TriggerUrlTemplate.encode(values[i]));
+            }
+        }
+    }
+
+    /**
+     * @return every parameter as <tt>NAME=value</tt>, in order
+     */
+    List<String> toList() {
+        List<String> list = new ArrayList<String>(size);
+        for (int i = 0; i < size; i++) {
+            list.add(toString(i));
+        }
+        return list;
+    }
+
+    private String toString(int i) {
+        return values[i] == null ? names[i] : names[i] + '=' + values[i];
+    }
+
+    @Override
+    public String toString() {
+        return toList().toString();
+    }
+
+    /**
+     * Collects the parameters into arrays that grow as needed.
+     */
+    private static final class Parser {
+        private String[]  names  = new String[8];
+        private String[]  values = new String[8];
+        private boolean[] tokens = new boolean[8];
+        private int       size;
+
+        /**
+         * Adds a line as the user entered it, skipping empty lines and comments.
+         */
+        void add(String line) {
+            if (line.length() == 0 || line.equals(" ") || line.charAt(0) == '#') {
+                return;
+            }
+            add(line, line.indexOf('$') >= 0);
+        }
+
+        void add(String line, boolean hasTokens) {
+            int equals = line.indexOf('=');
+            if (equals < 0) {
+                add(line, null, hasTokens);
+            } else {
+                add(line.substring(0, equals), line.substring(equals + 1), hasTokens);
+            }
+        }
+
+        void add(String name, String value, boolean hasTokens) {
+            if (size == names.length) {
+                names = Arrays.copyOf(names, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+                tokens = Arrays.copyOf(tokens, size * 2);
+            }
+            names[size] = name;
+            values[size] = value;
+            tokens[size] = hasTokens;
+            size++;
+        }
+
+        RemoteParameters build() {
+            return size == 0 ? EMPTY : new RemoteParameters(names, values, tokens, size);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package org.jenkinsci.plugins.ParameterizedRemoteTrigger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable snapshot of the configured remote servers, indexed by display name and by pool. Taken whenever the
+ * configuration changes, so that every build step (and every poll) can look up its remote server without going through
+ * the whole list.
+ */
+final class RemoteSites {
+
+    static final RemoteSites EMPTY = new RemoteSites(new RemoteJenkinsServer[0]);
+
+    private final RemoteJenkinsServer[]                  sites;
+    private final Map<String, RemoteJenkinsServer>       byName;
+    private final Map<String, List<RemoteJenkinsServer>> byPool;
+
+    RemoteSites(RemoteJenkinsServer[] sites) {
+        this.sites = sites.clone();
+        Map<String, RemoteJenkinsServer> byName = new HashMap<String, RemoteJenkinsServer>();
+        Map<String, List<RemoteJenkinsServer>> byPool = new HashMap<String, List<RemoteJenkinsServer>>();
+
+        for (RemoteJenkinsServer site : sites) {
+            // on a duplicate name the first one wins, as it always has
+            if (!byName.containsKey(site.getDisplayName())) {
+                byName.put(site.getDisplayName(), site);
+            }
+            if (site.getPool().length() > 0) {
+                List<RemoteJenkinsServer> members = byPool.get(site.getPool());
+                if (members == null) {
+                    members = new ArrayList<RemoteJenkinsServer>();
+                    byPool.put(site.getPool(), members);
+                }
+                members.add(site);
+            }
+        }
+        for (Map.Entry<String, List<RemoteJenkinsServer>> pool : byPool.entrySet()) {
+            pool.setValue(Collections.unmodifiableList(pool.getValue()));
+        }
+        this.byName = byName;
+        this.byPool = byPool;
+    }
+
+    /**
+     * @return all remote servers, in the order they were configured
+     */
+    RemoteJenkinsServer[] getSites() {
+        return sites.clone();
+    }
+
+    /**
+     * @return the remote server with the given display name, or null if there is none
+     */
+    RemoteJenkinsServer get(String displayName) {
+        return byName.get(displayName);
+    }
+
+    /**
+     * @return the remote servers of the given pool, in the order they were configured
+     */
+    List<RemoteJenkinsServer> getPool(String pool) {
+        List<RemoteJenkinsServer> members = byPool.get(pool);
+        return members == null ? Collections.<RemoteJenkinsServer> emptyList() : members;
+    }
+}
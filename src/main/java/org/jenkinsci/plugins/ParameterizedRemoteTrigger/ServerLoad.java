@@ -0,0 +1,108 @@
+package org.jenkinsci.plugins.ParameterizedRemoteTrigger;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Last known load of one remote server: the length of its build queue and the number of its idle executors, as
+ * refreshed in the background by the {@link ServerLoadMonitor}. Used to trigger on the least loaded member of a server
+ * pool.
+ */
+public final class ServerLoad {
+
+    /** A load older than this is no longer trusted, in milliseconds. */
+    static final long MAX_AGE = 5 * ServerLoadMonitor.RECURRENCE_PERIOD;
+
+    private static final ConcurrentMap<String, ServerLoad> LOADS = new ConcurrentHashMap<String, ServerLoad>();
+
+    private int  queueLength;
+    private int  idleExecutors;
+    // when the load was last read from the remote server, 0 if it never was or the last read failed
+    private long updated;
+
+    ServerLoad() {
+    }
+
+    /**
+     * @param remoteServerName
+     *            display name of a remote server
+     * @return the load of the given remote server, never null
+     */
+    public static ServerLoad of(String remoteServerName) {
+        ServerLoad load = LOADS.get(remoteServerName);
+        if (load == null) {
+            LOADS.putIfAbsent(remoteServerName, new ServerLoad());
+            load = LOADS.get(remoteServerName);
+        }
+        return load;
+    }
+
+    /**
+     * @param remoteServerNames
+     *            display names of the members of a pool, in the order they were configured
+     * @return the name of the member with the lowest {@link #getScore() score}, the first one on a tie, or null if
+     *         there are none
+     */
+    static String leastLoaded(List<String> remoteServerNames) {
+        String best = null;
+        long bestScore = 0;
+        for (String remoteServerName : remoteServerNames) {
+            long score = of(remoteServerName).getScore();
+            if (best == null || score < bestScore) {
+                best = remoteServerName;
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    synchronized void update(int queueLength, int idleExecutors) {
+        this.queueLength = queueLength;
+        this.idleExecutors = idleExecutors;
+        this.updated = System.currentTimeMillis();
+    }
+
+    /**
+     * Forgets the load, e.g. because the remote server could not be reached.
+     */
+    synchronized void invalidate() {
+        this.updated = 0;
+    }
+
+    /**
+     * Accounts for a build we just triggered, until the next refresh tells us the actual load. Without this, every
+     * trigger until then would pick the very same member.
+     */
+    synchronized void recordTrigger() {
+        if (idleExecutors > 0) {
+            idleExecutors--;
+        } else {
+            queueLength++;
+        }
+    }
+
+    public synchronized boolean isKnown() {
+        return updated > 0 && System.currentTimeMillis() - updated <= MAX_AGE;
+    }
+
+    /**
+     * @return how many builds are waiting for an executor, minus the idle executors; {@link Long#MAX_VALUE} if the
+     *         load is not known
+     */
+    public synchronized long getScore() {
+        if (!isKnown()) {
+            return Long.MAX_VALUE;
+        }
+        return (long) queueLength - idleExecutors;
+    }
+
+    @Override
+    public synchronized String toString() {
+        if (!isKnown()) {
+            return "not known";
+        }
+        return String.format("%d queued, %d idle executors, %d s ago", queueLength, idleExecutors,
+                (System.currentTimeMillis() - updated) / 1000);
+    }
+}
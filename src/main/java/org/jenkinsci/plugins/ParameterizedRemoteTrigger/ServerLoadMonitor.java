@@ -0,0 +1,123 @@
+package org.jenkinsci.plugins.ParameterizedRemoteTrigger;
+
+import hudson.Extension;
+import hudson.model.PeriodicWork;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import jenkins.model.Jenkins;
+import net.sf.json.JSONObject;
+
+/**
+ * Keeps the {@link ServerLoad} of every member of a server pool up to date, so that picking the least loaded member
+ * doesn't cost the build a round trip to each of them.
+ */
+@Extension
+public class ServerLoadMonitor extends PeriodicWork {
+
+    static final long RECURRENCE_PERIOD = Long.getLong(ServerLoadMonitor.class.getName() + ".recurrencePeriod",
+                                                TimeUnit.SECONDS.toMillis(15));
+
+    /** A remote server that takes longer than this to answer is left out of the pool, in milliseconds. */
+    private static final int REFRESH_TIMEOUT = 5000;
+
+    private static final Logger LOGGER = Logger.getLogger(ServerLoadMonitor.class.getName());
+
+    @Override
+    public long getRecurrencePeriod() {
+        return RECURRENCE_PERIOD;
+    }
+
+    @Override
+    protected void doRun() throws Exception {
+        RemoteBuildConfiguration.DescriptorImpl descriptor = Jenkins.getInstance().getDescriptorByType(
+                RemoteBuildConfiguration.DescriptorImpl.class);
+        if (descriptor == null) {
+            return;
+        }
+        for (RemoteJenkinsServer server : descriptor.getRemoteSites()) {
+            if (server.getPool().length() > 0) {
+                AuthContext auth = resolveAuth(server);
+                if (auth != null) {
+                    refresh(server, auth);
+                }
+            }
+        }
+    }
+
+    /**
+     * The credentials of the server itself, the way {@link RemoteBuildConfiguration#resolveAuth} resolves them for a
+     * build. There is no build to expand their tokens against here: a server whose credentials have tokens is only
+     * refreshed by the builds that pick a member of its pool.
+     * 
+     * @return the credentials, or null if they have tokens
+     */
+    static AuthContext resolveAuth(RemoteJenkinsServer server) {
+        String usernameTokenConcat = server.getAuth()[0].getUsername() + ":" + server.getAuth()[0].getPassword();
+        if (usernameTokenConcat.equals(":")) {
+            return AuthContext.ANONYMOUS;
+        }
+        if (usernameTokenConcat.indexOf('$') >= 0) {
+            return null;
+        }
+        return new AuthContext(usernameTokenConcat);
+    }
+
+    /**
+     * Reads the length of the build queue and the number of idle executors of the given remote server.
+     * 
+     * @param auth
+     *            the credentials to read them with, the same a build uses for its calls to the server
+     */
+    static void refresh(RemoteJenkinsServer server, AuthContext auth) {
+        ServerLoad load = ServerLoad.of(server.getDisplayName());
+        String address = server.getBaseUrl();
+        try {
+            JSONObject queue = get(server, auth, address + "/queue/api/json?tree=items[id]");
+            JSONObject computers = get(server, auth, address
+                    + "/computer/api/json?tree=busyExecutors,totalExecutors");
+            int idleExecutors = computers.getInt("totalExecutors") - computers.getInt("busyExecutors");
+            load.update(queue.getJSONArray("items").size(), Math.max(0, idleExecutors));
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Unable to read the load of " + server.getDisplayName(), e);
+            load.invalidate();
+        } catch (RuntimeException e) {
+            // not the JSON we asked for, e.g. a login page
+            LOGGER.log(Level.FINE, "Unexpected answer from " + server.getDisplayName(), e);
+            load.invalidate();
+        }
+    }
+
+    private static JSONObject get(RemoteJenkinsServer server, AuthContext auth, String urlString) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(urlString).openConnection();
+        try {
+            connection.setConnectTimeout(REFRESH_TIMEOUT);
+            connection.setReadTimeout(REFRESH_TIMEOUT);
+            if (auth.getAuthorization() != null) {
+                connection.setRequestProperty("Authorization", auth.getAuthorization());
+            }
+            ContentEncoding.accept(connection);
+            BufferedReader in = new BufferedReader(new InputStreamReader(ContentEncoding.decode(connection,
+                    connection.getInputStream(), server.getStatistics()), "UTF-8"));
+            try {
+                StringBuilder response = new StringBuilder();
+                String line;
+                while ((line = in.readLine()) != null) {
+                    response.append(line);
+                }
+                return JSONObject.fromObject(response.toString());
+            } finally {
+                in.close();
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+}
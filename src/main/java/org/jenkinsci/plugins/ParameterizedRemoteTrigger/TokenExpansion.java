@@ -0,0 +1,242 @@
+package org.jenkinsci.plugins.ParameterizedRemoteTrigger;
+
+import hudson.model.AbstractBuild;
+import hudson.model.TaskListener;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.jenkinsci.plugins.tokenmacro.MacroEvaluationException;
+import org.jenkinsci.plugins.tokenmacro.TokenMacro;
+
+/**
+ * Expands the tokens of everything one execution of the build step sends to the remote server: the parameters, the job
+ * name, the security token, the priority and the credentials. <tt>TokenMacro.expandAll</tt> resolves the environment
+ * of the build and looks through the registered macros again on every call; this resolves the environment once, asks
+ * the macros about each token name once and remembers the value of every token it has expanded, so a token used on
+ * many lines costs one lookup.
+ * <p>
+ * Anything the simple scan below isn't sure about (escaped <tt>$$</tt>, quoted macro arguments, an unterminated
+ * <tt>${</tt>) is handed to <tt>TokenMacro.expandAll</tt> as a whole, as before.
+ */
+final class TokenExpansion implements RemoteParameters.Expander {
+
+    /**
+     * Where the values come from, the build by default.
+     */
+    interface Source {
+        /**
+         * @return the environment variables and build variables, resolved once per execution
+         */
+        Map<String, String> getVariables() throws IOException, InterruptedException;
+
+        boolean isMacro(String name);
+
+        /**
+         * @return the text with all its tokens expanded, the way <tt>TokenMacro.expandAll</tt> does
+         */
+        String expandAll(String text) throws MacroEvaluationException, IOException, InterruptedException;
+    }
+
+    private final Source               source;
+    private final TaskListener         listener;
+    // expansion of every token (or whole text handed to the source) seen so far
+    private final Map<String, String>  expanded = new HashMap<String, String>();
+    private final Map<String, Boolean> macros   = new HashMap<String, Boolean>();
+    private Map<String, String>        variables;
+
+    TokenExpansion(AbstractBuild<?, ?> build, TaskListener listener) {
+        this(new BuildSource(build, listener), listener);
+    }
+
+    TokenExpansion(Source source, TaskListener listener) {
+        this.source = source;
+        this.listener = listener;
+    }
+
+    /**
+     * Expands the tokens of the given text, logging and leaving the text as it is if that fails.
+     */
+    public String expand(String text) {
+        try {
+            return resolve(text);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log(text, e);
+        } catch (Exception e) {
+            log(text, e);
+        }
+        return text;
+    }
+
+    /**
+     * Expands the tokens of the given text.
+     */
+    String resolve(String text) throws MacroEvaluationException, IOException, InterruptedException {
+        int dollar = text.indexOf('$');
+        if (dollar < 0) {
+            return text;
+        }
+
+        StringBuilder result = new StringBuilder(text.length() + 16);
+        int start = 0;
+        while (dollar >= 0) {
+            result.append(text, start, dollar);
+            int end = findTokenEnd(text, dollar);
+            if (end < 0) {
+                // not sure how token-macro reads this one, let it handle the whole text
+                return expandWhole(text);
+            }
+            if (end == dollar + 1) {
+                // a lone "$"
+                result.append('$');
+            } else {
+                result.append(expandToken(text.substring(dollar, end)));
+            }
+            start = end;
+            dollar = text.indexOf('$', start);
+        }
+        return result.append(text, start, text.length()).toString();
+    }
+
+    /**
+     * @return the end of the token starting at the given "$", the position right after that "$" if no token starts
+     *         there, or -1 if the token is one this class leaves to token-macro
+     */
+    private static int findTokenEnd(String text, int dollar) {
+        int i = dollar + 1;
+        if (i == text.length()) {
+            return i;
+        }
+        char c = text.charAt(i);
+        if (c == '$') {
+            return -1;
+        }
+        if (c == '{') {
+            int close = text.indexOf('}', i);
+            if (close < 0 || contains(text, '"', i, close) || contains(text, '{', i + 1, close)) {
+                return -1;
+            }
+            return close + 1;
+        }
+        while (i < text.length() && isNameChar(text.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean contains(String text, char c, int from, int to) {
+        int i = text.indexOf(c, from);
+        return i >= 0 && i < to;
+    }
+
+    private String expandToken(String token) throws MacroEvaluationException, IOException, InterruptedException {
+        String value = expanded.get(token);
+        if (value != null) {
+            return value;
+        }
+
+        String name = getName(token);
+        if (name != null && !isMacro(name)) {
+            value = getVariables().get(name);
+            if (value == null) {
+                // neither a macro nor a variable, token-macro leaves it as it is too
+                value = token;
+            }
+        } else {
+            value = source.expandAll(token);
+        }
+        expanded.put(token, value);
+        return value;
+    }
+
+    private String expandWhole(String text) throws MacroEvaluationException, IOException, InterruptedException {
+        String value = expanded.get(text);
+        if (value == null) {
+            value = source.expandAll(text);
+            expanded.put(text, value);
+        }
+        return value;
+    }
+
+    /**
+     * @return the name of a plain <tt>$NAME</tt> or <tt>${NAME}</tt> token, null if the token has macro arguments
+     */
+    private static String getName(String token) {
+        if (token.charAt(1) != '{') {
+            return token.substring(1);
+        }
+        String name = token.substring(2, token.length() - 1);
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (!isNameChar(c) && c != '.') {
+                return null;
+            }
+        }
+        return name.length() == 0 ? null : name;
+    }
+
+    private static boolean isNameChar(char c) {
+        return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '_';
+    }
+
+    private boolean isMacro(String name) {
+        Boolean macro = macros.get(name);
+        if (macro == null) {
+            macro = source.isMacro(name);
+            macros.put(name, macro);
+        }
+        return macro;
+    }
+
+    private Map<String, String> getVariables() throws IOException, InterruptedException {
+        if (variables == null) {
+            variables = source.getVariables();
+        }
+        return variables;
+    }
+
+    private void log(String text, Exception e) {
+        listener.getLogger().println(
+                String.format("Failed to resolve parameters in string %s due to following error:\n%s", text,
+                        e.getMessage()));
+    }
+
+    /**
+     * The values of a running build, looked up the way <tt>TokenMacro.expandAll</tt> does: macros first, then the
+     * environment, then the build variables.
+     */
+    private static final class BuildSource implements Source {
+        private final AbstractBuild<?, ?> build;
+        private final TaskListener        listener;
+
+        BuildSource(AbstractBuild<?, ?> build, TaskListener listener) {
+            this.build = build;
+            this.listener = listener;
+        }
+
+        public Map<String, String> getVariables() throws IOException, InterruptedException {
+            Map<String, String> variables = new HashMap<String, String>();
+            Map<String, String> buildVariables = build.getBuildVariables();
+            if (buildVariables != null) {
+                variables.putAll(buildVariables);
+            }
+            variables.putAll(build.getEnvironment(listener));
+            return variables;
+        }
+
+        public boolean isMacro(String name) {
+            for (TokenMacro macro : TokenMacro.all()) {
+                if (macro.acceptsMacroName(name)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public String expandAll(String text) throws MacroEvaluationException, IOException, InterruptedException {
+            return TokenMacro.expandAll(build, listener, text);
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package org.jenkinsci.plugins.ParameterizedRemoteTrigger;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Controller-wide queue of the remote triggers of all local builds. A trigger is only let through while the remote
+ * job, and the remote server, have fewer remote builds of ours running than their configured maximum; the others wait,
+ * highest priority first and then in the order they came in. This keeps us from flooding remote queues that we have no
+ * control over.
+ */
+public final class TriggerDispatcher {
+
+    private static final TriggerDispatcher INSTANCE = new TriggerDispatcher();
+
+    private final TreeSet<Request>            waiting          = new TreeSet<Request>();
+    private final Map<String, Integer>        runningPerJob    = new HashMap<String, Integer>();
+    private final Map<String, Integer>        runningPerServer = new HashMap<String, Integer>();
+    private final Map<String, WaitStatistics> statistics       = new HashMap<String, WaitStatistics>();
+    private long                              sequence;
+
+    TriggerDispatcher() {
+    }
+
+    public static TriggerDispatcher get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Queues a trigger without waiting for its turn.
+     *
+     * @param priority
+     *            higher goes first
+     * @param maxPerServer
+     *            maximum number of remote builds running on the remote server at the same time, 0 for no limit
+     * @param maxPerJob
+     *            maximum number of remote builds of the remote job running at the same time, 0 for no limit
+     * @param whenGranted
+     *            run once it is the turn of the trigger, maybe right away, with this dispatcher locked: it must only
+     *            hand over to another thread
+     * @return the permit to trigger, which is only valid once {@link Permit#isGranted()}; releasing it before then
+     *         takes the trigger out of the queue
+     */
+    synchronized Permit enqueue(String remoteServerName, String jobName, int priority, int maxPerServer,
+            int maxPerJob, Runnable whenGranted) {
+        Request request = new Request(remoteServerName, jobName, priority, maxPerServer, maxPerJob, sequence++,
+                whenGranted);
+        waiting.add(request);
+        dispatch();
+        return new Permit(request);
+    }
+
+    /**
+     * @return a one-line summary of the triggers to the given remote server: running, waiting, and how long they
+     *         waited
+     */
+    public synchronized String getStatus(String remoteServerName) {
+        int queued = 0;
+        for (Request request : waiting) {
+            if (request.remoteServerName.equals(remoteServerName)) {
+                queued++;
+            }
+        }
+        return String.format("%d running, %d waiting, %s", count(runningPerServer, remoteServerName), queued,
+                getStatistics(remoteServerName));
+    }
+
+    synchronized int getWaiting() {
+        return waiting.size();
+    }
+
+    private synchronized void release(Request request) {
+        add(runningPerJob, request.getJobKey(), -1);
+        add(runningPerServer, request.remoteServerName, -1);
+        dispatch();
+    }
+
+    /**
+     * Takes back a request whose permit was released, whether it has been granted or is still waiting.
+     */
+    private void withdraw(Request request) {
+        if (request.granted) {
+            release(request);
+        } else {
+            waiting.remove(request);
+        }
+    }
+
+    /**
+     * Lets through, in order, every waiting request there is capacity for.
+     */
+    private void dispatch() {
+        List<Request> granted = new ArrayList<Request>();
+
+        for (Iterator<Request> it = waiting.iterator(); it.hasNext();) {
+            Request request = it.next();
+            if (fits(request.maxPerServer, count(runningPerServer, request.remoteServerName))
+                    && fits(request.maxPerJob, count(runningPerJob, request.getJobKey()))) {
+                it.remove();
+                add(runningPerJob, request.getJobKey(), 1);
+                add(runningPerServer, request.remoteServerName, 1);
+                granted.add(request);
+            }
+        }
+        long now = System.currentTimeMillis();
+        for (Request request : granted) {
+            request.granted = true;
+            request.waited = now - request.created;
+            getStatistics(request.remoteServerName).record(request.waited);
+            if (request.whenGranted != null) {
+                request.whenGranted.run();
+            }
+        }
+    }
+
+    private static boolean fits(int max, int running) {
+        return max <= 0 || running < max;
+    }
+
+    private static int count(Map<String, Integer> counts, String key) {
+        Integer count = counts.get(key);
+        return count == null ? 0 : count;
+    }
+
+    private static void add(Map<String, Integer> counts, String key, int delta) {
+        int count = count(counts, key) + delta;
+        if (count <= 0) {
+            counts.remove(key);
+        } else {
+            counts.put(key, count);
+        }
+    }
+
+    private WaitStatistics getStatistics(String remoteServerName) {
+        WaitStatistics waitStatistics = statistics.get(remoteServerName);
+        if (waitStatistics == null) {
+            waitStatistics = new WaitStatistics();
+            statistics.put(remoteServerName, waitStatistics);
+        }
+        return waitStatistics;
+    }
+
+    /**
+     * Allows one trigger through. Has to be released once the remote build has finished (or as soon as it has been
+     * triggered, if nobody waits for it to finish).
+     */
+    final class Permit {
+        private final Request request;
+        private boolean       released;
+
+        private Permit(Request request) {
+            this.request = request;
+        }
+
+        boolean isGranted() {
+            synchronized (TriggerDispatcher.this) {
+                return request.granted;
+            }
+        }
+
+        /**
+         * @return how long the trigger waited for its turn, in milliseconds
+         */
+        long getWaited() {
+            synchronized (TriggerDispatcher.this) {
+                return request.waited;
+            }
+        }
+
+        void release() {
+            synchronized (TriggerDispatcher.this) {
+                if (released) {
+                    return;
+                }
+                released = true;
+                withdraw(request);
+            }
+        }
+    }
+
+    private static final class Request implements Comparable<Request> {
+        private final String   remoteServerName;
+        private final String   jobName;
+        private final int      priority;
+        private final int      maxPerServer;
+        private final int      maxPerJob;
+        private final long     sequence;
+        private final Runnable whenGranted;
+        private final long     created = System.currentTimeMillis();
+        private boolean        granted;
+        // how long the request waited for its turn, in milliseconds
+        private long           waited;
+
+        Request(String remoteServerName, String jobName, int priority, int maxPerServer, int maxPerJob,
+                long sequence, Runnable whenGranted) {
+            this.remoteServerName = remoteServerName;
+            this.jobName = jobName;
+            this.priority = priority;
+            this.maxPerServer = maxPerServer;
+            this.maxPerJob = maxPerJob;
+            this.sequence = sequence;
+            this.whenGranted = whenGranted;
+        }
+
+        String getJobKey() {
+            return remoteServerName + '\n' + jobName;
+        }
+
+        public int compareTo(Request other) {
+            if (priority != other.priority) {
+                return priority > other.priority ? -1 : 1;
+            }
+            return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+        }
+    }
+
+    /**
+     * How long the triggers to one remote server waited for their turn.
+     */
+    private static final class WaitStatistics {
+        private long triggers;
+        private long totalWait;
+        private long longestWait;
+
+        void record(long waited) {
+            triggers++;
+            totalWait += waited;
+            longestWait = Math.max(longestWait, waited);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("average wait %d s, longest wait %d s", triggers == 0 ? 0 : totalWait / triggers
+                    / 1000, longestWait / 1000);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package org.jenkinsci.plugins.ParameterizedRemoteTrigger;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+
+/**
+ * The parts of the trigger and job URLs of one build step that don't change from one build to the next, encoded once
+ * when the build step is configured (or loaded). The job name and the security token are only encoded again at trigger
+ * time if they contain tokens, which is the only way they can change.
+ */
+final class TriggerUrlTemplate {
+
+    static final String PARAMETERIZED_BUILD_URL = "/buildWithParameters";
+    static final String NORMAL_BUILD_URL        = "/build";
+    static final String BUILD_TOKEN_ROOT_URL    = "/buildByToken";
+
+    private static final ThreadLocal<StringBuilder> BUFFER = new ThreadLocal<StringBuilder>() {
+        @Override
+        protected StringBuilder initialValue() {
+            return new StringBuilder(256);
+        }
+    };
+
+    // both encoded, null if they contain tokens and have to be encoded at trigger time
+    private final String  encodedJob;
+    private final String  encodedToken;
+    private final boolean jobHasTokens;
+    private final boolean tokenHasTokens;
+    // whether the build step itself has parameters to send
+    private final boolean parameterized;
+
+    TriggerUrlTemplate(String job, String token, boolean parameterized) {
+        this.jobHasTokens = hasTokens(job);
+        this.tokenHasTokens = hasTokens(token);
+        this.encodedJob = jobHasTokens ? null : encode(job);
+        this.encodedToken = tokenHasTokens ? null : encode(token);
+        this.parameterized = parameterized;
+    }
+
+    /**
+     * @return whether the job name has to go through token expansion at all
+     */
+    boolean jobHasTokens() {
+        return jobHasTokens;
+    }
+
+    /**
+     * @return whether the security token has to go through token expansion at all
+     */
+    boolean tokenHasTokens() {
+        return tokenHasTokens;
+    }
+
+    /**
+     * @param job
+     *            the job name, with its tokens expanded
+     * @param token
+     *            the security token, with its tokens expanded
+     * @param parameters
+     *            the parameters, with their tokens expanded
+     * @return fully formed, fully qualified remote trigger URL
+     */
+    String getTriggerUrl(String baseUrl, boolean buildTokenRoot, String job, String token,
+            RemoteParameters parameters, boolean remoteJobParameterized) {
+        StringBuilder url = buffer();
+        String buildType = parameterized || remoteJobParameterized ? PARAMETERIZED_BUILD_URL : NORMAL_BUILD_URL;
+
+        url.append(baseUrl);
+        if (buildTokenRoot) {
+            url.append(BUILD_TOKEN_ROOT_URL).append(buildType).append("?job=");
+            appendJob(url, job);
+            url.append('&');
+        } else {
+            url.append("/job/");
+            appendJob(url, job);
+            url.append(buildType).append('?');
+        }
+
+        // don't try to include a security token in the URL if none is provided
+        if (token.length() > 0) {
+            url.append("token=").append(encodedToken != null ? encodedToken : encode(token)).append('&');
+        }
+        if (!parameters.isEmpty()) {
+            parameters.appendQueryString(url);
+            url.append('&');
+        }
+        // by adding "delay=0", this will (theoretically) force this job to the top of the remote queue
+        url.append("delay=0");
+        return url.toString();
+    }
+
+    /**
+     * @param job
+     *            the job name, with its tokens expanded
+     * @return the URL of the remote job, without a trailing slash
+     */
+    String getJobUrl(String baseUrl, String job) {
+        StringBuilder url = buffer();
+        url.append(baseUrl).append("/job/");
+        appendJob(url, job);
+        return url.toString();
+    }
+
+    private void appendJob(StringBuilder url, String job) {
+        url.append(encodedJob != null ? encodedJob : encode(job));
+    }
+
+    private static StringBuilder buffer() {
+        StringBuilder buffer = BUFFER.get();
+        buffer.setLength(0);
+        return buffer;
+    }
+
+    private static boolean hasTokens(String value) {
+        return value.indexOf('$') >= 0;
+    }
+
+    static String encode(String value) {
+        try {
+            return URLEncoder.encode(value, "UTF-8").replace("+", "%20");
+        } catch (UnsupportedEncodingException e) {
+            // UTF-8 is always there
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package org.jenkinsci.plugins.ParameterizedRemoteTrigger;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Virtual threads (JDK 21 and later), looked up by reflection so that the plugin still runs on the JDKs Jenkins
+ * supports. A virtual thread that blocks on a remote call or sleeps until the next poll gives its carrier thread back,
+ * so waiting on a remote build costs next to nothing. They are off unless the controller is started with
+ * <tt>-Dorg.jenkinsci.plugins.ParameterizedRemoteTrigger.VirtualThreads.enabled=true</tt>.
+ * <p>
+ * Code run on them must not block while holding a monitor: up to JDK 23 that pins the carrier thread. Locks held
+ * across remote calls are {@link java.util.concurrent.locks.ReentrantLock}s for that reason.
+ */
+final class VirtualThreads {
+
+    private static final Logger LOGGER = Logger.getLogger(VirtualThreads.class.getName());
+
+    static final boolean ENABLED = Boolean.getBoolean(VirtualThreads.class.getName() + ".enabled");
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * @return true if this JVM has virtual threads
+     */
+    static boolean isAvailable() {
+        try {
+            Thread.class.getMethod("ofVirtual");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @param name
+     *            prefix of the names of the threads, followed by a counter
+     * @return an executor that starts a virtual thread per task, or null if this JVM has no virtual threads
+     */
+    static ExecutorService newPerTaskExecutor(String name) {
+        if (!isAvailable()) {
+            return null;
+        }
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, name, 1L);
+            ThreadFactory factory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            Method newExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            return (ExecutorService) newExecutor.invoke(null, factory);
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Failed to create virtual threads, using platform threads instead", e);
+            return null;
+        }
+    }
+
+    /**
+     * @param name
+     *            prefix of the names of the threads, followed by a counter
+     * @return an executor that starts a virtual thread per task, or null if virtual threads are not
+     *         {@link #ENABLED} or not available
+     */
+    static ExecutorService newPerTaskExecutorIfEnabled(String name) {
+        if (!ENABLED) {
+            return null;
+        }
+        ExecutorService executor = newPerTaskExecutor(name);
+        if (executor == null) {
+            LOGGER.info("Virtual threads are not available on this JVM, using platform threads for " + name.trim());
+        }
+        return executor;
+    }
+
+    /**
+     * @return true if the given thread is a virtual one
+     */
+    static boolean isVirtual(Thread thread) {
+        try {
+            return (Boolean) Thread.class.getMethod("isVirtual").invoke(thread);
+        } catch (Exception e) {
+            return false;
+        }
+    }
+}
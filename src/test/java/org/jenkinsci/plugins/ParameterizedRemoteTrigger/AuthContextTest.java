@@ -0,0 +1,18 @@
+package org.jenkinsci.plugins.ParameterizedRemoteTrigger;
+
+import junit.framework.TestCase;
+
+public class AuthContextTest extends TestCase {
+
+    public void testHeaderIsEncodedOnce() {
+        AuthContext auth = new AuthContext("jenkins:s3cr3t:with:colons");
+        assertEquals("jenkins", auth.getUsername());
+        assertEquals("Basic amVua2luczpzM2NyM3Q6d2l0aDpjb2xvbnM=", auth.getAuthorization());
+        assertSame(auth.getAuthorization(), auth.getAuthorization());
+    }
+
+    public void testAnonymousHasNoHeader() {
+        assertNull(AuthContext.ANONYMOUS.getAuthorization());
+        assertEquals("", AuthContext.ANONYMOUS.getUsername());
+    }
+}
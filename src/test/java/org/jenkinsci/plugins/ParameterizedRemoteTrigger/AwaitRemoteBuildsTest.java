@@ -0,0 +1,167 @@
+package org.jenkinsci.plugins.ParameterizedRemoteTrigger;
+
+import static org.junit.Assert.assertEquals;
+
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.Result;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.sf.json.JSONObject;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import com.sun.net.httpserver.HttpExchange;
+
+/**
+ * Two remote builds triggered without waiting, then waited on by a later step of the same build. The remote Jenkins is
+ * a stub whose builds are finished as soon as they are triggered, except for the one that is never finished.
+ */
+public class AwaitRemoteBuildsTest {
+    @Rule
+    public JenkinsRule jenkinsRule = new JenkinsRule();
+
+    private final AtomicInteger   triggered = new AtomicInteger();
+    // the remote build that never finishes, 0 if they all do
+    private volatile int          neverFinished;
+    // the remote build that fails, 0 if none does
+    private volatile int          failed;
+    // how long the stub takes to list the builds, in milliseconds
+    private volatile long         listDelay;
+    // the "Authorization" header the stub requires, null if anonymous
+    private volatile String       authorization;
+
+    @Rule
+    public StubRemoteJenkins      remote    = new StubRemoteJenkins() {
+        @Override
+        protected void handle(HttpExchange exchange, String path, String query) throws IOException {
+            if (authorization != null
+                    && !authorization.equals(exchange.getRequestHeaders().getFirst("Authorization"))) {
+                respond(exchange, 401, "Unauthorized");
+            } else if (path.startsWith("/job/remote/api/json") && query != null && query.startsWith("tree=builds")) {
+                try {
+                    Thread.sleep(listDelay);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                StringBuilder builds = new StringBuilder();
+                for (int number = triggered.get(); number > 0; number--) {
+                    builds.append(builds.length() == 0 ? "" : ",").append(build(number));
+                }
+                respond(exchange, 200, "{\"builds\":[" + builds + "]}");
+            } else if (path.startsWith("/job/remote/api/json")) {
+                respond(exchange, 200, "{\"nextBuildNumber\":" + (triggered.get() + 1)
+                        + ",\"actions\":[{\"parameterDefinitions\":[]}]}");
+            } else if (path.equals("/job/remote/buildWithParameters")) {
+                triggered.incrementAndGet();
+                respond(exchange, 201, "");
+            } else if (path.matches("/job/remote/\\d+/api/json/?")) {
+                int number = Integer.parseInt(path.split("/")[3]);
+                if (number > triggered.get()) {
+                    respond(exchange, 404, "Not found");
+                } else {
+                    respond(exchange, 200, build(number));
+                }
+            } else {
+                respond(exchange, 404, "Not found");
+            }
+        }
+    };
+
+    @Test
+    public void testWaitsOnAll() throws Exception {
+        FreeStyleProject project = createProject(null);
+        project.getBuildersList().add(new AwaitRemoteBuilds("", false, 1, false));
+
+        FreeStyleBuild build = jenkinsRule.buildAndAssertSuccess(project);
+        jenkinsRule.assertLogContains("Waiting on all of 2 remote builds.", build);
+        jenkinsRule.assertLogContains("Waiting on remote job remote #1", build);
+        jenkinsRule.assertLogContains("Waiting on remote job remote #2", build);
+        assertEquals(0, build.getAction(RemoteBuildHandles.class).getHandles().size());
+    }
+
+    @Test
+    public void testWaitsOnAnyAndLeavesTheOthers() throws Exception {
+        neverFinished = 2;
+        FreeStyleProject project = createProject(null);
+        project.getBuildersList().add(new AwaitRemoteBuilds("remote", true, 1, false));
+
+        FreeStyleBuild build = jenkinsRule.buildAndAssertSuccess(project);
+        jenkinsRule.assertLogContains("Waiting on any of 2 remote builds.", build);
+        jenkinsRule.assertLogContains("Still running, left for later: remote job remote #2.", build);
+        List<RemoteBuildHandle> left = build.getAction(RemoteBuildHandles.class).getHandles();
+        assertEquals(1, left.size());
+        assertEquals(2, left.get(0).getBuildNumber());
+    }
+
+    @Test
+    public void testAnyReportsEveryFinishedBuild() throws Exception {
+        failed = 2;
+        // both remote builds are polled in the same request, and are done at the same time
+        listDelay = 500;
+        FreeStyleProject project = createProject(null);
+        project.getBuildersList().add(new AwaitRemoteBuilds("", true, 1, false));
+
+        FreeStyleBuild build = project.scheduleBuild2(0).get();
+        jenkinsRule.assertBuildStatus(Result.FAILURE, build);
+        jenkinsRule.assertLogContains("Remote build finished with status FAILURE.", build);
+        jenkinsRule.assertLogNotContains("Still running", build);
+        assertEquals(0, build.getAction(RemoteBuildHandles.class).getHandles().size());
+    }
+
+    @Test
+    public void testPolledWithTheCredentialsOfTheTrigger() throws Exception {
+        authorization = new AuthContext("user:secret").getAuthorization();
+        JSONObject authenticationMode = new JSONObject();
+        authenticationMode.put("value", "apiToken");
+        authenticationMode.put("username", "user");
+        authenticationMode.put("apiToken", "secret");
+        JSONObject auth = new JSONObject();
+        auth.put("authenticationMode", authenticationMode);
+        JSONObject overrideAuth = new JSONObject();
+        overrideAuth.put("auth", auth);
+
+        FreeStyleProject project = createProject(overrideAuth);
+        project.getBuildersList().add(new AwaitRemoteBuilds("", false, 1, false));
+
+        FreeStyleBuild build = jenkinsRule.buildAndAssertSuccess(project);
+        jenkinsRule.assertLogContains("Waiting on all of 2 remote builds.", build);
+    }
+
+    @Test
+    public void testNothingToWaitOn() throws Exception {
+        FreeStyleProject project = jenkinsRule.createFreeStyleProject();
+        project.getBuildersList().add(new AwaitRemoteBuilds("", false, 1, false));
+
+        FreeStyleBuild build = jenkinsRule.buildAndAssertSuccess(project);
+        jenkinsRule.assertLogContains("No remote builds to wait on.", build);
+    }
+
+    /**
+     * @param overrideAuth
+     *            the credentials of the triggers, null for those of the remote server (none)
+     * @return a project that triggers two remote builds, without waiting on them
+     */
+    private FreeStyleProject createProject(JSONObject overrideAuth) throws Exception {
+        RemoteJenkinsServer remoteJenkinsServer = remote.register(jenkinsRule.jenkins);
+
+        FreeStyleProject project = jenkinsRule.createFreeStyleProject();
+        for (int i = 0; i < 2; i++) {
+            project.getBuildersList().add(new RemoteBuildConfiguration(remoteJenkinsServer.getDisplayName(), false,
+                    "remote", "", "", false, overrideAuth, null, false, false, 1, null, null, false, "", "", 0, ""));
+        }
+        return project;
+    }
+
+    private String build(int number) {
+        boolean finished = number != neverFinished;
+        String result = number == failed ? "\"FAILURE\"" : "\"SUCCESS\"";
+        return "{\"number\":" + number + ",\"building\":" + !finished + ",\"result\":"
+                + (finished ? result : "null") + ",\"actions\":[{\"parameters\":[]}]}";
+    }
+}
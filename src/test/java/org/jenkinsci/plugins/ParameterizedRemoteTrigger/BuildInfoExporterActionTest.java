@@ -0,0 +1,56 @@
+package org.jenkinsci.plugins.ParameterizedRemoteTrigger;
+
+import static org.junit.Assert.assertEquals;
+
+import hudson.EnvVars;
+import hudson.model.FreeStyleBuild;
+import hudson.model.Result;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+/**
+ * The remote builds of one local build can finish at the same time: every one of them must end up in the single
+ * {@link BuildInfoExporterAction} of the local build.
+ */
+public class BuildInfoExporterActionTest {
+    @Rule
+    public JenkinsRule jenkinsRule = new JenkinsRule();
+
+    @Test
+    public void testConcurrentReferencesShareOneAction() throws Exception {
+        final FreeStyleBuild build = jenkinsRule.createFreeStyleProject().scheduleBuild2(0).get();
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[16];
+        for (int i = 0; i < threads.length; i++) {
+            final int buildNumber = i + 1;
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    BuildInfoExporterAction.addBuildInfoExporterAction(build, "remote", buildNumber, Result.SUCCESS,
+                            "STUB");
+                }
+            };
+            threads[i].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(1, build.getActions(BuildInfoExporterAction.class).size());
+        EnvVars env = new EnvVars();
+        build.getAction(BuildInfoExporterAction.class).buildEnvVars(build, env);
+        assertEquals(Integer.toString(threads.length), env.get(BuildInfoExporterAction.BUILD_RUN_COUNT_PREFIX
+                + "remote"));
+        assertEquals("STUB", env.get(BuildInfoExporterAction.SERVER_VARIABLE_PREFIX + "remote"));
+    }
+}
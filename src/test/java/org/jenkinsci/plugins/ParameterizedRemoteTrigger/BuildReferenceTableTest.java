@@ -0,0 +1,71 @@
+package org.jenkinsci.plugins.ParameterizedRemoteTrigger;
+
+import hudson.model.Result;
+import junit.framework.TestCase;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+public class BuildReferenceTableTest extends TestCase {
+
+    private BuildReferenceTable newTable() {
+        BuildReferenceTable table = new BuildReferenceTable();
+        table.add("job-a", 12, Result.SUCCESS);
+        table.add("job-b", 7, Result.NOT_BUILT);
+        table.add("job-a", 13, Result.FAILURE);
+        table.add("job-a", 0, null);
+        return table;
+    }
+
+    private void assertSameContent(BuildReferenceTable expected, BuildReferenceTable actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.getProjectName(i), actual.getProjectName(i));
+            assertEquals(expected.getBuildNumber(i), actual.getBuildNumber(i));
+            assertSame(expected.getBuildResult(i), actual.getBuildResult(i));
+        }
+    }
+
+    public void testProjectNamesAreInterned() {
+        BuildReferenceTable table = newTable();
+
+        assertEquals(4, table.size());
+        assertEquals(2, table.getProjectNames().size());
+        assertEquals(table.getProjectIndex(0), table.getProjectIndex(2));
+        assertSame(Result.FAILURE, table.getBuildResult(2));
+        assertNull(table.getBuildResult(3));
+    }
+
+    public void testEncodedEntriesRoundTrip() {
+        BuildReferenceTable table = newTable();
+        String encoded = table.encodeEntries();
+
+        assertEquals("0:12:0,1:7:3,0:13:2,0:0:-1", encoded);
+        assertSameContent(table, BuildReferenceTable.decode(table.getProjectNames(), encoded));
+    }
+
+    public void testSidecarAppendsRoundTrip() throws Exception {
+        BuildReferenceTable table = newTable();
+        StringWriter out = new StringWriter();
+        table.writeTo(out);
+
+        boolean newProject = table.add("job-c", 3, Result.ABORTED);
+        table.writeEntry(table.size() - 1, newProject, out);
+        newProject = table.add("job-a", 14, Result.UNSTABLE);
+        table.writeEntry(table.size() - 1, newProject, out);
+
+        BuildReferenceTable read = BuildReferenceTable.readFrom(new BufferedReader(new StringReader(out.toString())));
+        assertSameContent(table, read);
+    }
+
+    public void testTruncatedSidecarKeepsCompleteEntries() throws Exception {
+        BuildReferenceTable table = newTable();
+        StringWriter out = new StringWriter();
+        table.writeTo(out);
+        out.write("R\t0\t99");
+
+        BuildReferenceTable read = BuildReferenceTable.readFrom(new BufferedReader(new StringReader(out.toString())));
+        assertSameContent(table, read);
+    }
+}
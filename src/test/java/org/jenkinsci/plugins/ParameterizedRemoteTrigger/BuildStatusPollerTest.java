@@ -0,0 +1,71 @@
+package org.jenkinsci.plugins.ParameterizedRemoteTrigger;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.sf.json.JSONObject;
+import junit.framework.TestCase;
+
+public class BuildStatusPollerTest extends TestCase {
+
+    private static final String JOB_URL = "http://jenkins/job/remote";
+
+    private final List<String> requests = new ArrayList<String>();
+
+    public void testBuildsAreBatched() throws Exception {
+        BuildStatusPoller poller = new BuildStatusPoller();
+        BuildStatusPoller.Source source = source("{\"builds\":[{\"number\":12,\"building\":true,\"result\":null},"
+                + "{\"number\":11,\"building\":false,\"result\":\"SUCCESS\"},"
+                + "{\"number\":10,\"building\":false,\"result\":\"FAILURE\"}]}");
+
+        assertEquals("FAILURE", poller.poll(10, JOB_URL, 60000, source).getString("result"));
+        assertEquals("SUCCESS", poller.poll(11, JOB_URL, 60000, source).getString("result"));
+        assertTrue(poller.poll(12, JOB_URL, 60000, source).getBoolean("building"));
+        // not started yet
+        assertNull(poller.poll(13, JOB_URL, 60000, source));
+
+        assertEquals(1, poller.getRequests());
+        assertEquals(requests.toString(), 1, requests.size());
+        assertEquals(JOB_URL + "/api/json?tree=builds[number,building,result,estimatedDuration,url]{0,1}",
+                requests.get(0));
+    }
+
+    public void testListReachesTheOldestBuildWaitedOn() throws Exception {
+        BuildStatusPoller poller = new BuildStatusPoller();
+        BuildStatusPoller.Source source = source("{\"builds\":[{\"number\":12,\"building\":true,\"result\":null}]}");
+
+        poller.poll(12, JOB_URL, 0, source);
+        poller.poll(10, JOB_URL, 0, source);
+        assertEquals(JOB_URL + "/api/json?tree=builds[number,building,result,estimatedDuration,url]{0,3}",
+                requests.get(1));
+        // pushed out of the list, polled on its own
+        assertEquals(JOB_URL + "/10/api/json", requests.get(2));
+    }
+
+    public void testFallsBackWhenBuildsAreNotListed() throws Exception {
+        BuildStatusPoller poller = new BuildStatusPoller();
+        BuildStatusPoller.Source source = source("{\"number\":5,\"building\":true,\"result\":null}");
+
+        assertTrue(poller.poll(5, JOB_URL, 60000, source).getBoolean("building"));
+        assertTrue(poller.poll(5, JOB_URL, 60000, source).getBoolean("building"));
+        assertEquals(1, poller.getRequests());
+        assertEquals(JOB_URL + "/5/api/json", requests.get(1));
+        assertEquals(JOB_URL + "/5/api/json", requests.get(2));
+    }
+
+    public void testOnePollerPerJobAndCredentials() {
+        BuildStatusPoller poller = BuildStatusPoller.get("JENKINS", "job", null);
+        assertSame(poller, BuildStatusPoller.get("JENKINS", "job", null));
+        assertNotSame(poller, BuildStatusPoller.get("JENKINS", "job", "Basic dXNlcjpwYXNz"));
+        assertNotSame(poller, BuildStatusPoller.get("JENKINS", "other job", null));
+    }
+
+    private BuildStatusPoller.Source source(final String response) {
+        return new BuildStatusPoller.Source() {
+            public JSONObject fetch(String urlString) {
+                requests.add(urlString);
+                return JSONObject.fromObject(response);
+            }
+        };
+    }
+}
@@ -0,0 +1,124 @@
+package org.jenkinsci.plugins.ParameterizedRemoteTrigger;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+public class ConnectionLimiterTest extends TestCase {
+
+    public void testNoLimit() throws Exception {
+        ConnectionLimiter limiter = ConnectionLimiter.of("unlimited", 0);
+        assertSame(ConnectionLimiter.UNLIMITED, limiter);
+        for (int i = 0; i < 100; i++) {
+            limiter.acquire(Deadline.NONE);
+        }
+        assertEquals(0, limiter.getInUse());
+    }
+
+    public void testWaitsForAFreeConnection() throws Exception {
+        final ConnectionLimiter limiter = ConnectionLimiter.of("capped", 2);
+        limiter.acquire(Deadline.NONE);
+        limiter.acquire(Deadline.NONE);
+        assertEquals(2, limiter.getInUse());
+
+        final CountDownLatch acquired = new CountDownLatch(1);
+        Thread waiter = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    limiter.acquire(Deadline.NONE);
+                    acquired.countDown();
+                } catch (Exception e) {
+                    // the latch is never counted down
+                }
+            }
+        };
+        waiter.start();
+        assertFalse(acquired.await(200, TimeUnit.MILLISECONDS));
+        assertEquals(1, limiter.getWaiting());
+
+        limiter.release();
+        assertTrue(acquired.await(5, TimeUnit.SECONDS));
+        assertEquals(0, limiter.getWaiting());
+        assertEquals(2, limiter.getInUse());
+        waiter.join();
+    }
+
+    public void testGivesUpAtTheDeadline() throws Exception {
+        ConnectionLimiter limiter = new ConnectionLimiter(1);
+        limiter.acquire(Deadline.NONE);
+        try {
+            limiter.acquire(new Deadline(System.currentTimeMillis() + 100, "test deadline"));
+            fail("no connection should have been free");
+        } catch (DeadlineExceededException e) {
+            assertEquals(0, limiter.getWaiting());
+        }
+    }
+
+    public void testHeldConnectionServesTheRequestsOfTheStep() throws Exception {
+        ConnectionLimiter limiter = new ConnectionLimiter(1);
+        assertTrue(limiter.tryHold(new CountingWaiter()));
+        // the requests of the step go out on the connection it holds
+        limiter.acquire(new Deadline(System.currentTimeMillis() + 100, "test deadline"));
+        limiter.release();
+        limiter.acquire(new Deadline(System.currentTimeMillis() + 100, "test deadline"));
+        limiter.release();
+        assertEquals(1, limiter.getInUse());
+
+        limiter.unhold();
+        assertEquals(0, limiter.getInUse());
+    }
+
+    public void testWaiterIsWokenOnceAConnectionIsGivenBack() throws Exception {
+        ConnectionLimiter limiter = new ConnectionLimiter(1);
+        limiter.acquire(Deadline.NONE);
+        CountingWaiter first = new CountingWaiter();
+        CountingWaiter second = new CountingWaiter();
+        assertFalse(limiter.tryHold(first));
+        assertFalse(limiter.tryHold(second));
+        // asking again doesn't queue up twice
+        assertFalse(limiter.tryHold(first));
+        assertEquals(2, limiter.getWaiting());
+
+        limiter.release();
+        assertEquals(1, first.count);
+        assertEquals(0, second.count);
+        assertTrue(limiter.tryHold(first));
+        limiter.unhold();
+        assertEquals(1, second.count);
+    }
+
+    public void testWithdrawnWaiterPassesItsTurnOn() throws Exception {
+        ConnectionLimiter limiter = new ConnectionLimiter(1);
+        limiter.acquire(Deadline.NONE);
+        CountingWaiter first = new CountingWaiter();
+        CountingWaiter second = new CountingWaiter();
+        assertFalse(limiter.tryHold(first));
+        assertFalse(limiter.tryHold(second));
+
+        // woken up, but gone before taking the connection
+        limiter.release();
+        limiter.withdraw(first);
+        assertEquals(1, second.count);
+        assertEquals(0, limiter.getWaiting());
+    }
+
+    public void testNewLimiterOnceTheCapChanges() {
+        ConnectionLimiter limiter = ConnectionLimiter.of("resized", 4);
+        assertSame(limiter, ConnectionLimiter.of("resized", 4));
+
+        ConnectionLimiter resized = ConnectionLimiter.of("resized", 8);
+        assertNotSame(limiter, resized);
+        assertSame(resized, ConnectionLimiter.of("resized", 8));
+        assertEquals("0 of 8 in use, 0 requests waiting", resized.toString());
+    }
+
+    private static class CountingWaiter implements Runnable {
+        int count;
+
+        public void run() {
+            count++;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package org.jenkinsci.plugins.ParameterizedRemoteTrigger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.sun.net.httpserver.HttpExchange;
+
+/**
+ * A wave of status polls of many builds waiting on the same remote server, sent at once: each poll on a connection of
+ * its own that is closed afterwards (as every request used to be), against polls capped per server whose connections
+ * are kept open and reused. The remote server is a stub that answers with a small JSON document; the number of
+ * distinct client sockets it saw is printed after each iteration. Not run by the build, run it with <tt>mvn
+ * test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.openjdk.jmh.Main
+ * -Dexec.args=ConnectionReuseBenchmark</tt>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+public class ConnectionReuseBenchmark {
+
+    @Param({ "100", "1000" })
+    public int                      builds;
+
+    /** 0 for the old behavior: no cap, every connection closed */
+    @Param({ "0", "5" })
+    public int                      maxConnections;
+
+    private final StubRemoteJenkins remote = new StubRemoteJenkins(16) {
+        @Override
+        protected void handle(HttpExchange exchange, String path, String query) throws IOException {
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            respond(exchange, 200, "{\"building\":true,\"result\":null}");
+        }
+    };
+    private ExecutorService         executor;
+    private URL                     url;
+
+    @Setup
+    public void setUp() throws IOException {
+        remote.start();
+        url = new URL(remote.getUrl() + "/job/test/1/api/json");
+        executor = Executors.newFixedThreadPool(builds);
+    }
+
+    @TearDown(Level.Iteration)
+    public void printSockets() {
+        System.out.println(remote.getSockets().size() + " client sockets for " + builds + " polls");
+        remote.getSockets().clear();
+        remote.getRequests().clear();
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdownNow();
+        remote.stop();
+    }
+
+    @Benchmark
+    public void pollWave() throws InterruptedException {
+        final ConnectionLimiter limiter = new ConnectionLimiter(maxConnections);
+        final CountDownLatch done = new CountDownLatch(builds);
+        for (int i = 0; i < builds; i++) {
+            executor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        poll(limiter);
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            });
+        }
+        done.await();
+    }
+
+    private void poll(ConnectionLimiter limiter) throws IOException, InterruptedException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        limiter.acquire(Deadline.NONE);
+        try {
+            InputStream in = connection.getInputStream();
+            byte[] buffer = new byte[256];
+            while (in.read(buffer) >= 0) {
+                // read to the end, so that the connection can be reused
+            }
+            in.close();
+        } finally {
+            limiter.release();
+            if (maxConnections == 0) {
+                connection.disconnect();
+            }
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package org.jenkinsci.plugins.ParameterizedRemoteTrigger;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+public class ConsoleCaptureTest extends TestCase {
+
+    public void testKeepsTheLastLinesAndSpillsEverything() throws Exception {
+        StringBuilder console = new StringBuilder();
+        for (int i = 1; i <= 1000; i++) {
+            console.append("line ").append(i).append("\r\n");
+        }
+        byte[] bytes = console.toString().getBytes("UTF-8");
+        ByteArrayOutputStream spill = new ByteArrayOutputStream();
+
+        ConsoleCapture capture = new ConsoleCapture(3, 1024);
+        capture.copy(new ByteArrayInputStream(bytes), spill);
+
+        assertEquals(Arrays.asList("line 998", "line 999", "line 1000"), capture.getTail());
+        assertEquals(1000, capture.getLineCount());
+        assertEquals(997, capture.getSkippedLines());
+        assertEquals(bytes.length, capture.getByteCount());
+        assertTrue(Arrays.equals(bytes, spill.toByteArray()));
+    }
+
+    public void testLastLineWithoutNewline() throws Exception {
+        ConsoleCapture capture = new ConsoleCapture(10, 1024);
+        capture.copy(new ByteArrayInputStream("first\nlast".getBytes("UTF-8")), new ByteArrayOutputStream());
+
+        assertEquals(Arrays.asList("first", "last"), capture.getTail());
+    }
+
+    public void testTailIsBoundedInCharacters() {
+        ConsoleCapture capture = new ConsoleCapture(10, 10);
+        capture.add("12345");
+        capture.add("67890");
+        capture.add("abc");
+
+        assertEquals(Arrays.asList("67890", "abc"), capture.getTail());
+        assertEquals(1, capture.getSkippedLines());
+    }
+
+    public void testLongLinesAreCut() throws Exception {
+        ConsoleCapture capture = new ConsoleCapture(10, 4);
+        capture.copy(new ByteArrayInputStream("0123456789\n".getBytes("UTF-8")), new ByteArrayOutputStream());
+
+        assertEquals(Arrays.asList("0123"), capture.getTail());
+    }
+}
@@ -0,0 +1,96 @@
+package org.jenkinsci.plugins.ParameterizedRemoteTrigger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import junit.framework.TestCase;
+
+import com.sun.net.httpserver.HttpExchange;
+
+/**
+ * The remote Jenkins is a stub that sends a large, repetitive console output encoded the way the request path asks
+ * for, whatever the request accepts.
+ */
+public class ContentEncodingTest extends TestCase {
+
+    private byte[]                  console;
+    private final StubRemoteJenkins remote = new StubRemoteJenkins() {
+        @Override
+        protected void handle(HttpExchange exchange, String path, String query) throws IOException {
+            String encoding = path.substring(1);
+            if (encoding.length() > 0) {
+                exchange.getResponseHeaders().add("Content-Encoding", encoding);
+            }
+            exchange.sendResponseHeaders(200, 0);
+            OutputStream out = exchange.getResponseBody();
+            if (encoding.equals("gzip")) {
+                out = new GZIPOutputStream(out);
+            } else if (encoding.equals("deflate")) {
+                out = new DeflaterOutputStream(out);
+            }
+            out.write(console);
+            out.close();
+        }
+    };
+
+    @Override
+    protected void setUp() throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            text.append("[INFO] Building module ").append(i % 10).append('\n');
+        }
+        console = text.toString().getBytes("UTF-8");
+        remote.start();
+    }
+
+    @Override
+    protected void tearDown() {
+        remote.stop();
+    }
+
+    public void testGzip() throws IOException {
+        RemoteCallStatistics statistics = new RemoteCallStatistics();
+        assertEquals(console.length, read("gzip", statistics).length);
+        assertEquals(console.length, statistics.getDecodedBytes());
+        assertTrue(statistics.getWireBytes() < console.length / 10);
+    }
+
+    public void testDeflate() throws IOException {
+        RemoteCallStatistics statistics = new RemoteCallStatistics();
+        assertEquals(console.length, read("deflate", statistics).length);
+        assertTrue(statistics.getWireBytes() < console.length / 10);
+    }
+
+    public void testIdentity() throws IOException {
+        RemoteCallStatistics statistics = new RemoteCallStatistics();
+        assertEquals(console.length, read("", statistics).length);
+        assertEquals(console.length, statistics.getWireBytes());
+        assertEquals(console.length, statistics.getDecodedBytes());
+    }
+
+    private byte[] read(String encoding, RemoteCallStatistics statistics) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(remote.getUrl() + "/" + encoding).openConnection();
+        ContentEncoding.accept(connection);
+        InputStream in = ContentEncoding.decode(connection, connection.getInputStream(), statistics);
+        try {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                body.write(buffer, 0, read);
+            }
+            assertTrue(Arrays.equals(console, body.toByteArray()));
+            return body.toByteArray();
+        } finally {
+            in.close();
+            connection.disconnect();
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package org.jenkinsci.plugins.ParameterizedRemoteTrigger;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import com.sun.net.httpserver.HttpExchange;
+
+/**
+ * The remote Jenkins is a stub without CSRF protection, which answers the crumb requests slowly and counts them.
+ */
+public class CrumbCacheTest extends TestCase {
+
+    private final AtomicInteger     crumbRequests = new AtomicInteger();
+    private final StubRemoteJenkins remote        = new StubRemoteJenkins() {
+        @Override
+        protected void handle(HttpExchange exchange, String path, String query) throws IOException {
+            crumbRequests.incrementAndGet();
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            respond(exchange, 404, "");
+        }
+    };
+
+    @Override
+    protected void setUp() throws IOException {
+        remote.start();
+    }
+
+    @Override
+    protected void tearDown() {
+        remote.stop();
+    }
+
+    public void testConcurrentMissesFetchOnce() throws Exception {
+        final String address = remote.getUrl();
+        final List<CrumbCache.Crumb> crumbs = new ArrayList<CrumbCache.Crumb>();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 5; i++) {
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        CrumbCache.Crumb crumb = CrumbCache.get(address, AuthContext.ANONYMOUS, 5000, Deadline.NONE);
+                        synchronized (crumbs) {
+                            crumbs.add(crumb);
+                        }
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(5, crumbs.size());
+        assertEquals(1, crumbRequests.get());
+        for (CrumbCache.Crumb crumb : crumbs) {
+            assertSame(CrumbCache.Crumb.NONE, crumb);
+        }
+    }
+
+    public void testWaitingForAnotherFetchHoldsNoThread() throws Exception {
+        final String address = remote.getUrl();
+        final AuthContext auth = new AuthContext("waiting:token");
+        assertTrue(CrumbCache.whenFetched(address, auth, null));
+
+        Thread fetching = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    CrumbCache.get(address, auth, 5000, Deadline.NONE);
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        fetching.start();
+        while (crumbRequests.get() == 0) {
+            Thread.sleep(10);
+        }
+        final CountDownLatch fetched = new CountDownLatch(1);
+        assertFalse(CrumbCache.whenFetched(address, auth, new Runnable() {
+            public void run() {
+                fetched.countDown();
+            }
+        }));
+        assertTrue(fetched.await(5, TimeUnit.SECONDS));
+        assertTrue(CrumbCache.whenFetched(address, auth, null));
+        fetching.join();
+    }
+
+    public void testRejectedCrumbIsFetchedAgain() throws Exception {
+        String address = remote.getUrl();
+        AuthContext auth = new AuthContext("jenkins:token");
+
+        CrumbCache.Crumb crumb = CrumbCache.get(address, auth, 5000, Deadline.NONE);
+        CrumbCache.get(address, auth, 5000, Deadline.NONE);
+        assertEquals(1, crumbRequests.get());
+
+        CrumbCache.invalidate(address, auth, crumb);
+        CrumbCache.get(address, auth, 5000, Deadline.NONE);
+        assertEquals(2, crumbRequests.get());
+
+        // another user has a crumb of their own
+        CrumbCache.get(address, AuthContext.ANONYMOUS, 5000, Deadline.NONE);
+        assertEquals(3, crumbRequests.get());
+    }
+}
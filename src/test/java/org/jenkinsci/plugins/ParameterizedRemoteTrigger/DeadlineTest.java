@@ -0,0 +1,51 @@
+package org.jenkinsci.plugins.ParameterizedRemoteTrigger;
+
+import junit.framework.TestCase;
+
+public class DeadlineTest extends TestCase {
+
+    public void testNoLimit() throws Exception {
+        Deadline deadline = Deadline.after(0, "none");
+        assertSame(Deadline.NONE, deadline);
+        assertFalse(deadline.isExpired());
+        assertEquals(5000, deadline.clamp(5000));
+        assertEquals(0, deadline.clamp(0));
+    }
+
+    public void testClampNeverRunsPastTheDeadline() throws Exception {
+        Deadline deadline = Deadline.after(1, "max run time of 1 minutes");
+        assertEquals(5000, deadline.clamp(5000));
+
+        int clamped = deadline.clamp(0);
+        assertTrue(clamped > 0 && clamped <= 60 * 1000);
+        assertTrue(deadline.clamp(10 * 60 * 1000) <= 60 * 1000);
+    }
+
+    public void testMinPicksTheEarlierDeadline() {
+        Deadline total = Deadline.after(10, "total");
+        Deadline queue = Deadline.after(1, "queue");
+        assertSame(queue, total.min(queue));
+        assertSame(queue, queue.min(total));
+        assertSame(total, Deadline.NONE.min(total));
+        assertSame(total, total.min(Deadline.NONE));
+    }
+
+    public void testSleepStopsAtTheDeadline() throws Exception {
+        Deadline.after(1, "max queue wait of 1 minutes").sleep(1);
+
+        Deadline expired = new Deadline(System.currentTimeMillis() - 1, "max total time of 1 minutes");
+        assertTrue(expired.isExpired());
+        try {
+            expired.sleep(1000);
+            fail();
+        } catch (DeadlineExceededException e) {
+            assertTrue(e.getMessage().contains("max total time of 1 minutes"));
+        }
+        try {
+            expired.clamp(5000);
+            fail();
+        } catch (DeadlineExceededException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package org.jenkinsci.plugins.ParameterizedRemoteTrigger;
+
+import junit.framework.TestCase;
+
+public class EndpointHealthTest extends TestCase {
+
+    public void testMeasuredAddressBeatsUnknownOne() {
+        EndpointHealth measured = new EndpointHealth();
+        measured.recordSuccess(200);
+        assertTrue(measured.getScore() < new EndpointHealth().getScore());
+    }
+
+    public void testErrorsMakeTheScoreWorse() {
+        EndpointHealth flaky = new EndpointHealth();
+        EndpointHealth healthy = new EndpointHealth();
+        for (int i = 0; i < 5; i++) {
+            flaky.recordSuccess(100);
+            healthy.recordSuccess(150);
+        }
+        assertTrue(flaky.getScore() < healthy.getScore());
+
+        flaky.recordFailure();
+        assertTrue(flaky.getScore() > healthy.getScore());
+        assertFalse(flaky.isDown());
+    }
+
+    public void testDownAfterFailuresInARowUntilAnswered() {
+        EndpointHealth health = new EndpointHealth();
+        health.recordSuccess(100);
+        for (int i = 0; i < EndpointHealth.MAX_FAILURES_IN_A_ROW; i++) {
+            health.recordFailure();
+        }
+        assertTrue(health.isDown());
+        assertEquals(Double.MAX_VALUE, health.getScore(), 0);
+        assertTrue(health.toString().startsWith("down"));
+
+        health.recordSuccess(100);
+        assertFalse(health.isDown());
+        assertTrue(health.getScore() < EndpointHealth.UNKNOWN_SCORE);
+    }
+}
@@ -0,0 +1,162 @@
+package org.jenkinsci.plugins.ParameterizedRemoteTrigger;
+
+import hudson.model.StreamBuildListener;
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import net.sf.json.JSONObject;
+
+import com.sun.net.httpserver.HttpExchange;
+
+public class HedgedRequestTest extends TestCase {
+
+    /**
+     * Answers after the given delay, or fails if the delay is negative. Blocks until cancelled if the delay is
+     * {@link Long#MAX_VALUE}.
+     */
+    private static class FakeAttempt implements HedgedRequest.Attempt {
+        private final String response;
+        private final long delay;
+        private final CountDownLatch cancelled = new CountDownLatch(1);
+
+        FakeAttempt(String response, long delay) {
+            this.response = response;
+            this.delay = delay;
+        }
+
+        public String call() throws IOException {
+            try {
+                if (cancelled.await(Math.abs(delay), TimeUnit.MILLISECONDS)) {
+                    throw new IOException("cancelled");
+                }
+            } catch (InterruptedException e) {
+                throw new IOException("interrupted");
+            }
+            if (delay < 0) {
+                throw new IOException(response);
+            }
+            return response;
+        }
+
+        public void cancel() {
+            cancelled.countDown();
+        }
+
+        boolean isCancelled() {
+            return cancelled.getCount() == 0;
+        }
+    }
+
+    private static class FakeFactory implements HedgedRequest.AttemptFactory {
+        private final List<FakeAttempt> attempts = new ArrayList<FakeAttempt>();
+        private int next;
+
+        FakeFactory(FakeAttempt... attempts) {
+            for (FakeAttempt attempt : attempts) {
+                this.attempts.add(attempt);
+            }
+        }
+
+        public HedgedRequest.Attempt newAttempt() {
+            return attempts.get(next++);
+        }
+    }
+
+    public void testFastRequestIsNotHedged() throws Exception {
+        RemoteCallStatistics statistics = new RemoteCallStatistics();
+        FakeAttempt primary = new FakeAttempt("primary", 1);
+        FakeFactory factory = new FakeFactory(primary, new FakeAttempt("hedge", 1));
+
+        assertEquals("primary", HedgedRequest.execute(factory, 5000, statistics));
+        assertEquals(1, factory.next);
+        assertFalse(primary.isCancelled());
+        assertEquals(0, statistics.getHedged());
+    }
+
+    public void testSlowRequestIsHedgedAndCancelled() throws Exception {
+        RemoteCallStatistics statistics = new RemoteCallStatistics();
+        FakeAttempt primary = new FakeAttempt("primary", Long.MAX_VALUE);
+        FakeAttempt hedge = new FakeAttempt("hedge", 1);
+        FakeFactory factory = new FakeFactory(primary, hedge);
+
+        assertEquals("hedge", HedgedRequest.execute(factory, 10, statistics));
+        assertTrue(primary.isCancelled());
+        assertFalse(hedge.isCancelled());
+        assertEquals(1, statistics.getHedged());
+        assertEquals(1, statistics.getHedgeWins());
+    }
+
+    public void testFailedHedgeFallsBackToPrimary() throws Exception {
+        RemoteCallStatistics statistics = new RemoteCallStatistics();
+        FakeFactory factory = new FakeFactory(new FakeAttempt("primary", 200), new FakeAttempt("broken", -1));
+
+        assertEquals("primary", HedgedRequest.execute(factory, 10, statistics));
+        assertEquals(1, statistics.getHedged());
+        assertEquals(0, statistics.getHedgeWins());
+    }
+
+    public void testBothAttemptsFailing() {
+        RemoteCallStatistics statistics = new RemoteCallStatistics();
+        FakeFactory factory = new FakeFactory(new FakeAttempt("first", -50), new FakeAttempt("second", -1));
+
+        try {
+            HedgedRequest.execute(factory, 10, statistics);
+            fail("expected an IOException");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    /**
+     * The remote server is a stub that answers right away, long before the hedge delay, and tells how many client
+     * sockets the polls came on.
+     */
+    public void testWinnerKeepsItsConnection() throws Exception {
+        StubRemoteJenkins remote = new StubRemoteJenkins() {
+            @Override
+            protected void handle(HttpExchange exchange, String path, String query) throws IOException {
+                respond(exchange, 200, "{\"building\":true}");
+            }
+        };
+        remote.start();
+        try {
+            String address = remote.getUrl();
+            RemoteJenkinsServer remoteServer = new RemoteJenkinsServer(address, "HEDGED", false, new JSONObject(), 50,
+                    0, 0, 0, null, null, 0);
+            // hedge after a second
+            for (int i = 0; i < RemoteCallStatistics.MIN_SAMPLES; i++) {
+                remoteServer.getStatistics().recordLatency(1000);
+            }
+            RemoteBuildConfiguration config = new RemoteBuildConfiguration("HEDGED", false, "job", "", "", false,
+                    null, null, false, true, 1);
+
+            for (int i = 0; i < 5; i++) {
+                config.fetch(address + "/job/job/1/api/json", "GET", new StreamBuildListener(System.out),
+                        remoteServer, AuthContext.ANONYMOUS, Deadline.NONE);
+            }
+            assertEquals(0, remoteServer.getStatistics().getHedged());
+            assertEquals(1, remote.getSockets().size());
+        } finally {
+            remote.stop();
+        }
+    }
+
+    public void testLatencyPercentile() {
+        RemoteCallStatistics statistics = new RemoteCallStatistics();
+        for (int i = 1; i < RemoteCallStatistics.MIN_SAMPLES; i++) {
+            statistics.recordLatency(i);
+        }
+        assertEquals(-1, statistics.getLatencyPercentile(95));
+
+        for (int i = RemoteCallStatistics.MIN_SAMPLES; i <= 100; i++) {
+            statistics.recordLatency(i);
+        }
+        assertEquals(95, statistics.getLatencyPercentile(95));
+        assertEquals(50, statistics.getLatencyPercentile(50));
+    }
+}
@@ -0,0 +1,77 @@
+package org.jenkinsci.plugins.ParameterizedRemoteTrigger;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileWriter;
+
+public class InFlightJournalTest extends TestCase {
+
+    private File file;
+
+    @Override
+    protected void setUp() throws Exception {
+        file = File.createTempFile("inflight", ".log");
+        file.delete();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        file.delete();
+    }
+
+    public void testOpenHandleSurvivesRestart() {
+        InFlightJournal journal = new InFlightJournal(file);
+        RemoteBuildHandle handle = journal.open("key", "JENKINS", "remote job", 42, 7);
+
+        RemoteBuildHandle resumed = new InFlightJournal(file).claimRecovered("key");
+        assertNotNull(resumed);
+        assertEquals(handle.getId(), resumed.getId());
+        assertEquals("JENKINS", resumed.getRemoteServerName());
+        assertEquals("remote job", resumed.getJobName());
+        assertEquals(42, resumed.getBuildNumber());
+        assertEquals(7, resumed.getQueueId());
+        assertEquals(handle.getStartTime(), resumed.getStartTime());
+    }
+
+    public void testHandleIsResumedOnce() {
+        new InFlightJournal(file).open("key", "JENKINS", "job", 1, -1);
+
+        InFlightJournal restarted = new InFlightJournal(file);
+        assertNotNull(restarted.claimRecovered("key"));
+        assertNull(restarted.claimRecovered("key"));
+        assertEquals(1, restarted.getOpenHandles().size());
+    }
+
+    public void testHandleOfARunningWaitIsNotResumed() {
+        InFlightJournal journal = new InFlightJournal(file);
+        journal.open("key", "JENKINS", "job", 1, -1);
+
+        assertNull(journal.claimRecovered("key"));
+    }
+
+    public void testClosedHandleIsNotResumed() {
+        InFlightJournal journal = new InFlightJournal(file);
+        RemoteBuildHandle handle = journal.open("key", "JENKINS", "job", 1, -1);
+        journal.open("other", "JENKINS", "job", 2, -1);
+        journal.close(handle);
+
+        InFlightJournal restarted = new InFlightJournal(file);
+        assertNull(restarted.claimRecovered("key"));
+        assertNotNull(restarted.claimRecovered("other"));
+        assertEquals(1, restarted.getOpenHandles().size());
+    }
+
+    public void testPartiallyWrittenRecordIsIgnored() throws Exception {
+        InFlightJournal journal = new InFlightJournal(file);
+        journal.open("key", "JENKINS", "job", 1, -1);
+
+        FileWriter out = new FileWriter(file, true);
+        out.write("OPEN\tbroken\tkey2\tJENKINS");
+        out.close();
+
+        InFlightJournal restarted = new InFlightJournal(file);
+        assertNotNull(restarted.claimRecovered("key"));
+        assertNull(restarted.claimRecovered("key2"));
+    }
+}
@@ -0,0 +1,59 @@
+package org.jenkinsci.plugins.ParameterizedRemoteTrigger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+
+public class ParameterMatcherTest extends TestCase {
+
+    private final ByteArrayOutputStream log    = new ByteArrayOutputStream();
+    private final PrintStream           logger = new PrintStream(log);
+
+    public void testMatchingParametersInAnyOrder() {
+        ParameterMatcher matcher = new ParameterMatcher(RemoteParameters.parse("A=1\nB=x=y"), null);
+
+        assertTrue(matcher.matches(parameters("B", "x=y", "A", "1"), logger));
+        assertTrue(matcher.matches(parameters("A", "1", "B", "x=y", "DEFAULTED", "z"), logger));
+    }
+
+    public void testFingerprintRejectsOtherValues() {
+        ParameterMatcher matcher = new ParameterMatcher(RemoteParameters.parse("A=1\nB=2"), null);
+
+        assertFalse(matcher.matches(parameters("A", "1", "B", "3"), logger));
+        // swapped values, same hashes on each side
+        assertFalse(new ParameterMatcher(RemoteParameters.parse("A=1\nB=2"), null).matches(
+                parameters("A", "2", "B", "1"), logger));
+        assertTrue(log.toString().contains("Parameters don't match."));
+    }
+
+    public void testParametersMissingOnTheRemoteJobAreIgnored() {
+        ParameterMatcher matcher = new ParameterMatcher(RemoteParameters.parse("A=1\nUNKNOWN=2"), null);
+
+        assertTrue(matcher.matches(parameters("A", "1"), logger));
+        assertFalse(matcher.matches(parameters("A", "2"), logger));
+    }
+
+    public void testCorrelationParameterDecides() {
+        RemoteParameters sent = RemoteParameters.parse("A=1\nTRIGGER_ID=old").with("TRIGGER_ID", "1234");
+        ParameterMatcher matcher = new ParameterMatcher(sent, "TRIGGER_ID");
+
+        assertEquals(Arrays.asList("A=1", "TRIGGER_ID=1234"), sent.toList());
+        assertTrue(matcher.matches(parameters("A", "1", "TRIGGER_ID", "1234"), logger));
+        assertFalse(matcher.matches(parameters("A", "1", "TRIGGER_ID", "5678"), logger));
+        // the remote job doesn't know the parameter, fall back to the others
+        assertTrue(matcher.matches(parameters("A", "1"), logger));
+    }
+
+    private static JSONArray parameters(String... namesAndValues) {
+        JSONArray parameters = new JSONArray();
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            parameters.element(new JSONObject().element("name", namesAndValues[i]).element("value",
+                    namesAndValues[i + 1]));
+        }
+        return parameters;
+    }
+}
@@ -0,0 +1,85 @@
+package org.jenkinsci.plugins.ParameterizedRemoteTrigger;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * What one trigger does with the configured parameters (clean them up, build the query string, find one of them
+ * again to recognize the remote build): {@link RemoteParameters} against the list pipeline it replaced. Not run by the
+ * build, run it with <tt>mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.openjdk.jmh.Main
+ * -Dexec.args=ParameterPipelineBenchmark</tt>.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+public class ParameterPipelineBenchmark {
+
+    @Param({ "10", "100", "1000" })
+    public int               parameterCount;
+
+    private String           text;
+    private RemoteParameters parsed;
+    private String           lastName;
+
+    @Setup
+    public void setUp() {
+        StringBuilder parameters = new StringBuilder("# generated\n");
+        for (int i = 0; i < parameterCount; i++) {
+            parameters.append("PARAM_").append(i).append("=value ").append(i).append('\n');
+        }
+        text = parameters.toString();
+        parsed = RemoteParameters.parse(text);
+        lastName = "PARAM_" + (parameterCount - 1);
+    }
+
+    @Benchmark
+    public String remoteParameters() {
+        StringBuilder query = new StringBuilder();
+        parsed.appendQueryString(query);
+        return query.append(parsed.get(lastName)).toString();
+    }
+
+    @Benchmark
+    public String lists() {
+        List<String> params = new ArrayList<String>(Arrays.asList(text.split("\n")));
+        params.removeAll(Arrays.asList(null, ""));
+        params.removeAll(Arrays.asList(" "));
+        List<String> cleaned = new ArrayList<String>(params);
+        for (String param : params) {
+            if (param.indexOf("#") == 0) {
+                cleaned.remove(param);
+            }
+        }
+
+        StringBuilder query = new StringBuilder();
+        for (String param : cleaned) {
+            String[] pair = param.split("=");
+            if (query.length() > 0) {
+                query.append('&');
+            }
+            query.append(TriggerUrlTemplate.encode(pair[0]));
+            if (pair.length > 1) {
+                query.append('=').append(TriggerUrlTemplate.encode(pair[1]));
+            }
+        }
+        for (String search : cleaned) {
+            if (search.startsWith(lastName + "=")) {
+                return query.append(search.substring(lastName.length() + 1)).toString();
+            }
+        }
+        return query.toString();
+    }
+}
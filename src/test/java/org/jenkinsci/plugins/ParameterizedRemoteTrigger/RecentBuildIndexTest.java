@@ -0,0 +1,72 @@
+package org.jenkinsci.plugins.ParameterizedRemoteTrigger;
+
+import hudson.model.Result;
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+
+public class RecentBuildIndexTest extends TestCase {
+
+    private static final long HOUR = 60 * 60 * 1000L;
+
+    public void testHashIgnoresParameterOrder() {
+        assertEquals(RecentBuildIndex.hash("JENKINS", "job", Arrays.asList("a=1", "b=2")),
+                RecentBuildIndex.hash("JENKINS", "job", Arrays.asList("b=2", "a=1")));
+        assertFalse(RecentBuildIndex.hash("JENKINS", "job", Arrays.asList("a=1")).equals(
+                RecentBuildIndex.hash("JENKINS", "job", Arrays.asList("a=2"))));
+        assertFalse(RecentBuildIndex.hash("JENKINS", "job", Arrays.asList("a=1")).equals(
+                RecentBuildIndex.hash("OTHER", "job", Arrays.asList("a=1"))));
+    }
+
+    public void testOnlyRunningOrSuccessfulBuildsAreReused() {
+        RecentBuildIndex index = new RecentBuildIndex(10);
+
+        index.recordTriggered("running", "job", 1);
+        index.recordResult("passed", "job", 2, Result.SUCCESS);
+        index.recordResult("failed", "job", 3, Result.FAILURE);
+
+        assertTrue(index.find("running", HOUR).isBuilding());
+        assertEquals(2, index.find("passed", HOUR).getBuildNumber());
+        assertNull(index.find("failed", HOUR));
+        assertNull(index.find("unknown", HOUR));
+    }
+
+    public void testOnlyRunningBuildsAreForgotten() {
+        RecentBuildIndex index = new RecentBuildIndex(10);
+
+        index.recordTriggered("cancelled", "job", 1);
+        index.recordTriggered("retriggered", "job", 3);
+        index.recordResult("passed", "job", 2, Result.SUCCESS);
+        index.forget("cancelled", 1);
+        index.forget("retriggered", 2);
+        index.forget("passed", 2);
+
+        assertNull(index.find("cancelled", HOUR));
+        assertEquals(3, index.find("retriggered", HOUR).getBuildNumber());
+        assertEquals(2, index.find("passed", HOUR).getBuildNumber());
+    }
+
+    public void testEntriesExpireAfterTheWindow() {
+        RecentBuildIndex index = new RecentBuildIndex(10);
+
+        index.record("old", "job", 1, Result.SUCCESS, System.currentTimeMillis() - 2 * HOUR);
+        index.record("new", "job", 2, Result.SUCCESS, System.currentTimeMillis() - HOUR / 2);
+
+        assertNull(index.find("old", HOUR));
+        assertNotNull(index.find("new", HOUR));
+    }
+
+    public void testIndexIsBounded() {
+        RecentBuildIndex index = new RecentBuildIndex(2);
+
+        index.recordResult("a", "job", 1, Result.SUCCESS);
+        index.recordResult("b", "job", 2, Result.SUCCESS);
+        index.find("a", HOUR);
+        index.recordResult("c", "job", 3, Result.SUCCESS);
+
+        // "b" was the least recently used entry
+        assertNull(index.find("b", HOUR));
+        assertNotNull(index.find("a", HOUR));
+        assertNotNull(index.find("c", HOUR));
+    }
+}
@@ -0,0 +1,104 @@
+package org.jenkinsci.plugins.ParameterizedRemoteTrigger;
+
+import static org.junit.Assert.assertEquals;
+
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.sf.json.JSONObject;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import com.sun.net.httpserver.HttpExchange;
+
+/**
+ * A remote build triggered without waiting on it stays in the {@link RecentBuildIndex} as running: it may only be
+ * attached to while it really is. The remote Jenkins is a stub that numbers the builds it is asked to trigger.
+ */
+public class RecentBuildReuseTest {
+    @Rule
+    public JenkinsRule       jenkinsRule = new JenkinsRule();
+
+    // the number the next remote build gets
+    private volatile int     nextBuildNumber = 1;
+    // what the stub answers for remote build #1
+    private volatile String  remoteBuild;
+
+    @Rule
+    public StubRemoteJenkins remote      = new StubRemoteJenkins() {
+        @Override
+        protected void handle(HttpExchange exchange, String path, String query) throws IOException {
+            if (path.startsWith("/job/remote/api/json")) {
+                respond(exchange, 200, "{\"nextBuildNumber\":" + nextBuildNumber + ",\"actions\":[]}");
+            } else if (path.equals("/job/remote/build")) {
+                nextBuildNumber++;
+                respond(exchange, 201, "");
+            } else if (path.startsWith("/job/remote/1/api/json")) {
+                respond(exchange, 200, remoteBuild);
+            } else {
+                respond(exchange, 404, "Not found");
+            }
+        }
+    };
+
+    @Before
+    public void clearIndex() {
+        RecentBuildIndex.get().clear();
+    }
+
+    @Test
+    public void testRunningBuildIsAttachedTo() throws Exception {
+        remoteBuild = "{\"number\":1,\"building\":true,\"result\":null}";
+        FreeStyleProject project = createProject();
+
+        jenkinsRule.buildAndAssertSuccess(project);
+        FreeStyleBuild second = jenkinsRule.buildAndAssertSuccess(project);
+
+        jenkinsRule.assertLogContains("Remote job remote #1 is already running with identical parameters", second);
+        assertEquals(1, countTriggers());
+    }
+
+    @Test
+    public void testFailedBuildIsNotAttachedTo() throws Exception {
+        remoteBuild = "{\"number\":1,\"building\":false,\"result\":\"FAILURE\"}";
+        FreeStyleProject project = createProject();
+
+        jenkinsRule.buildAndAssertSuccess(project);
+        FreeStyleBuild second = jenkinsRule.buildAndAssertSuccess(project);
+
+        jenkinsRule.assertLogContains("This job is build #[2] on the remote server.", second);
+        assertEquals(2, countTriggers());
+    }
+
+    private FreeStyleProject createProject() throws Exception {
+        RemoteJenkinsServer remoteServer = remote.register(jenkinsRule.jenkins);
+        JSONObject reuseRecentBuild = new JSONObject();
+        reuseRecentBuild.put("reuseWindow", 60);
+
+        FreeStyleProject project = jenkinsRule.createFreeStyleProject();
+        project.getBuildersList().add(new RemoteBuildConfiguration(remoteServer.getDisplayName(), false, "remote", "",
+                "", false, null, null, false, false, 1, reuseRecentBuild, null, false, "", "", 0, ""));
+        return project;
+    }
+
+    private int countTriggers() {
+        List<String> requests;
+        synchronized (remote.getRequests()) {
+            requests = new ArrayList<String>(remote.getRequests());
+        }
+        int triggers = 0;
+        for (String request : requests) {
+            if (request.startsWith("POST /job/remote/build")) {
+                triggers++;
+            }
+        }
+        return triggers;
+    }
+}
@@ -0,0 +1,186 @@
+package org.jenkinsci.plugins.ParameterizedRemoteTrigger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.Result;
+import hudson.model.queue.QueueTaskFuture;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+
+import jenkins.model.Jenkins;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import com.sun.net.httpserver.HttpExchange;
+
+/**
+ * Aborting the local build has to take the remote build out of the remote queue, or stop it once it is running.
+ * The remote Jenkins is a stub that records every request it receives.
+ */
+public class RemoteBuildAbortTest {
+    @Rule
+    public JenkinsRule jenkinsRule = new JenkinsRule();
+
+    // what the stub answers for remote build #1, null while it is still in the queue
+    private volatile String       remoteBuild;
+    // what the stub answers the trigger with
+    private volatile int          triggerStatus = 201;
+
+    @Rule
+    public StubRemoteJenkins      remote = new StubRemoteJenkins() {
+        @Override
+        protected void handle(HttpExchange exchange, String path, String query) throws IOException {
+            if (path.startsWith("/job/remote/api/json")) {
+                respond(exchange, 200, "{\"nextBuildNumber\":1,\"actions\":[]}");
+            } else if (path.equals("/job/remote/build")) {
+                exchange.getResponseHeaders().add("Location", getUrl() + "/queue/item/7/");
+                respond(exchange, triggerStatus, "");
+            } else if (path.startsWith("/job/remote/1/api/json") && remoteBuild != null) {
+                respond(exchange, 200, remoteBuild);
+            } else if (path.equals("/queue/cancelItem") || path.equals("/job/remote/1/stop")) {
+                exchange.getResponseHeaders().add("Location", getUrl() + "/");
+                respond(exchange, 302, "");
+            } else {
+                respond(exchange, 404, "Not found");
+            }
+        }
+    };
+
+    @Test
+    public void testAbortCancelsQueuedRemoteBuild() throws Exception {
+        FreeStyleProject project = createProject();
+
+        QueueTaskFuture<FreeStyleBuild> future = project.scheduleBuild2(0);
+        FreeStyleBuild build = future.waitForStart();
+        remote.waitForRequest("POST /job/remote/build?delay=0");
+        remote.waitForRequest("GET /job/remote/1/api/json");
+
+        build.getExecutor().interrupt();
+        jenkinsRule.assertBuildStatus(Result.ABORTED, future.get());
+
+        assertTrue(remote.getRequests().toString(), remote.getRequests().contains("POST /queue/cancelItem?id=7"));
+        assertFalse(remote.getRequests().toString(), remote.getRequests().contains("POST /job/remote/1/stop"));
+    }
+
+    @Test
+    public void testAbortStopsRunningRemoteBuild() throws Exception {
+        remoteBuild = "{\"number\":1,\"building\":true,\"result\":null,\"url\":\"" + remote.getUrl()
+                + "/job/remote/1/\",\"actions\":[{\"parameters\":[]}]}";
+        FreeStyleProject project = createProject();
+
+        QueueTaskFuture<FreeStyleBuild> future = project.scheduleBuild2(0);
+        FreeStyleBuild build = future.waitForStart();
+        remote.waitForRequest("GET /job/remote/1/api/json");
+        StubRemoteJenkins.waitForLog(build, "Waiting for remote build to finish.");
+
+        build.getExecutor().interrupt();
+        jenkinsRule.assertBuildStatus(Result.ABORTED, future.get());
+
+        assertTrue(remote.getRequests().toString(), remote.getRequests().contains("POST /job/remote/1/stop"));
+        assertFalse(remote.getRequests().toString(), remote.getRequests().contains("POST /queue/cancelItem?id=7"));
+    }
+
+    @Test
+    public void testShutdownLeavesRemoteBuildRunning() throws Exception {
+        remoteBuild = "{\"number\":1,\"building\":true,\"result\":null,\"url\":\"" + remote.getUrl()
+                + "/job/remote/1/\",\"actions\":[{\"parameters\":[]}]}";
+        FreeStyleProject project = createProject();
+
+        QueueTaskFuture<FreeStyleBuild> future = project.scheduleBuild2(0);
+        FreeStyleBuild build = future.waitForStart();
+        remote.waitForRequest("GET /job/remote/1/api/json");
+        StubRemoteJenkins.waitForLog(build, "Waiting for remote build to finish.");
+
+        // as a restart does once the running builds didn't finish in time
+        setTerminating(true);
+        try {
+            build.getExecutor().interrupt();
+            future.get();
+        } finally {
+            setTerminating(false);
+        }
+
+        assertFalse(remote.getRequests().toString(), remote.getRequests().contains("POST /job/remote/1/stop"));
+        assertFalse(remote.getRequests().toString(), remote.getRequests().contains("POST /queue/cancelItem?id=7"));
+        // the next run picks the remote build up again
+        assertTrue(InFlightJournal.get().getOpenHandles().toString(), isStillOpen("remote", 1));
+    }
+
+    @Test
+    public void testAbortWhilePreparingForShutdownStopsRemoteBuild() throws Exception {
+        remoteBuild = "{\"number\":1,\"building\":true,\"result\":null,\"url\":\"" + remote.getUrl()
+                + "/job/remote/1/\",\"actions\":[{\"parameters\":[]}]}";
+        FreeStyleProject project = createProject();
+
+        QueueTaskFuture<FreeStyleBuild> future = project.scheduleBuild2(0);
+        FreeStyleBuild build = future.waitForStart();
+        remote.waitForRequest("GET /job/remote/1/api/json");
+        StubRemoteJenkins.waitForLog(build, "Waiting for remote build to finish.");
+
+        // the running builds are let finish, or aborted on purpose
+        jenkinsRule.jenkins.doQuietDown();
+        try {
+            build.getExecutor().interrupt();
+            jenkinsRule.assertBuildStatus(Result.ABORTED, future.get());
+        } finally {
+            jenkinsRule.jenkins.doCancelQuietDown();
+        }
+
+        assertTrue(remote.getRequests().toString(), remote.getRequests().contains("POST /job/remote/1/stop"));
+        assertFalse(InFlightJournal.get().getOpenHandles().toString(), isStillOpen("remote", 1));
+    }
+
+    @Test
+    public void testRejectedTriggerFailsTheBuild() throws Exception {
+        triggerStatus = 404;
+        FreeStyleProject project = createProject();
+
+        FreeStyleBuild build = project.scheduleBuild2(0).get();
+        jenkinsRule.assertBuildStatus(Result.FAILURE, build);
+        jenkinsRule.assertLogContains("Remote Jenkins server answered the trigger with HTTP status 404.", build);
+        // never waited on a remote build that doesn't exist
+        assertFalse(remote.getRequests().toString(), remote.getRequests().contains("GET /job/remote/1/api/json"));
+    }
+
+    @Test
+    public void testQueueIdIsParsedFromTheTriggerResponse() {
+        assertEquals(42, RemoteBuildConfiguration.parseQueueId("http://jenkins:8080/queue/item/42/"));
+        assertEquals(42, RemoteBuildConfiguration.parseQueueId("http://jenkins:8080/ci/queue/item/42"));
+        assertEquals(-1, RemoteBuildConfiguration.parseQueueId("http://jenkins:8080/job/remote/"));
+        assertEquals(-1, RemoteBuildConfiguration.parseQueueId(null));
+    }
+
+    private FreeStyleProject createProject() throws Exception {
+        RemoteJenkinsServer remoteJenkinsServer = remote.register(jenkinsRule.jenkins);
+
+        FreeStyleProject project = jenkinsRule.createFreeStyleProject();
+        project.getBuildersList().add(new RemoteBuildConfiguration(remoteJenkinsServer.getDisplayName(), false,
+                "remote", "", "", false, null, null, false, true, 1));
+        return project;
+    }
+
+    /**
+     * Makes this Jenkins look as if it was going down, as it does once it has started to shut down.
+     */
+    private void setTerminating(boolean terminating) throws Exception {
+        Field field = Jenkins.class.getDeclaredField("terminating");
+        field.setAccessible(true);
+        field.setBoolean(jenkinsRule.jenkins, terminating);
+    }
+
+    private static boolean isStillOpen(String jobName, int buildNumber) {
+        for (RemoteBuildHandle handle : InFlightJournal.get().getOpenHandles()) {
+            if (handle.getJobName().equals(jobName) && handle.getBuildNumber() == buildNumber) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,129 @@
+package org.jenkinsci.plugins.ParameterizedRemoteTrigger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.Result;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.util.concurrent.TimeUnit;
+
+import jenkins.model.JenkinsLocationConfiguration;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import com.sun.net.httpserver.HttpExchange;
+
+/**
+ * A remote build that calls back once it has finished ends the wait right away, long before the next poll. The remote
+ * Jenkins is a stub that finishes its build shortly after it has first been polled, and then posts to the callback URL
+ * it was triggered with.
+ */
+public class RemoteBuildCallbackTest {
+    @Rule
+    public JenkinsRule jenkinsRule = new JenkinsRule();
+
+    private volatile String   callbackUrl;
+    private volatile boolean  finished;
+    private volatile boolean  callingBack;
+
+    @Rule
+    public StubRemoteJenkins  remote = new StubRemoteJenkins() {
+        @Override
+        protected void handle(HttpExchange exchange, String path, String query) throws IOException {
+            if (path.startsWith("/job/remote/api/json") && query != null && query.startsWith("tree=builds")) {
+                if (callbackUrl != null && !callingBack) {
+                    callingBack = true;
+                    finishAndCallBack();
+                }
+                respond(exchange, 200, "{\"builds\":[" + build() + "]}");
+            } else if (path.startsWith("/job/remote/api/json")) {
+                respond(exchange, 200, "{\"nextBuildNumber\":1,\"actions\":[{\"parameterDefinitions\":[]}]}");
+            } else if (path.equals("/job/remote/buildWithParameters")) {
+                for (String pair : exchange.getRequestURI().getRawQuery().split("&")) {
+                    if (pair.startsWith("CALLBACK_URL=")) {
+                        callbackUrl = URLDecoder.decode(pair.substring("CALLBACK_URL=".length()), "UTF-8");
+                    }
+                }
+                respond(exchange, 201, "");
+            } else if (path.startsWith("/job/remote/1/api/json")) {
+                respond(exchange, 200, build());
+            } else {
+                respond(exchange, 404, "Not found");
+            }
+        }
+    };
+
+    @Before
+    public void setRootUrl() throws IOException {
+        JenkinsLocationConfiguration.get().setUrl(jenkinsRule.getURL().toString());
+    }
+
+    @Test
+    public void testCallbackEndsTheWait() throws Exception {
+        FreeStyleProject project = createProject();
+
+        long start = System.currentTimeMillis();
+        FreeStyleBuild build = project.scheduleBuild2(0).get(60, TimeUnit.SECONDS);
+        jenkinsRule.assertBuildStatus(Result.SUCCESS, build);
+
+        assertNotNull(callbackUrl);
+        // the remote build is only polled every 10 minutes
+        assertTrue(build.getLog(), System.currentTimeMillis() - start < TimeUnit.MINUTES.toMillis(1));
+        jenkinsRule.assertLogContains("Remote build finished with status SUCCESS.", build);
+    }
+
+    @Test
+    public void testUnknownCallbackIsRejected() throws Exception {
+        assertEquals(404, post(jenkinsRule.getURL() + RemoteBuildCallback.URL_NAME + "/notify?id=unknown"));
+    }
+
+    private FreeStyleProject createProject() throws Exception {
+        RemoteJenkinsServer remoteJenkinsServer = remote.register(jenkinsRule.jenkins);
+
+        FreeStyleProject project = jenkinsRule.createFreeStyleProject();
+        project.getBuildersList().add(new RemoteBuildConfiguration(remoteJenkinsServer.getDisplayName(), false,
+                "remote", "", "", false, null, null, false, true, 600, null, null, false, "", "", 0, "CALLBACK_URL"));
+        return project;
+    }
+
+    private String build() {
+        return "{\"number\":1,\"building\":" + !finished + ",\"result\":" + (finished ? "\"SUCCESS\"" : "null")
+                + ",\"actions\":[{\"parameters\":[]}]}";
+    }
+
+    /**
+     * Finishes the remote build a little later, and posts to the callback URL, as a notification hook would.
+     */
+    private void finishAndCallBack() {
+        new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(500);
+                    finished = true;
+                    post(callbackUrl);
+                } catch (Exception e) {
+                    // the wait then ends at the next poll, and the test fails
+                }
+            }
+        }.start();
+    }
+
+    private static int post(String url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.getOutputStream().close();
+        return connection.getResponseCode();
+    }
+}
@@ -0,0 +1,202 @@
+package org.jenkinsci.plugins.ParameterizedRemoteTrigger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import hudson.model.FreeStyleBuild;
+import hudson.model.StreamBuildListener;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import net.sf.json.JSONObject;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import com.sun.net.httpserver.HttpExchange;
+
+/**
+ * Many executions at once, all triggering the same remote job: each has to recognize its own remote build and wait
+ * for it, with a single thread keeping the time. The remote Jenkins is a stub whose builds are finished as soon as they
+ * are triggered; another one never answers, and mustn't hold up the executions waiting on the first.
+ */
+public class RemoteBuildExecutionTest {
+    @Rule
+    public JenkinsRule jenkinsRule = new JenkinsRule();
+
+    private static final int        EXECUTIONS = 100;
+
+    // the query string each remote build was triggered with, by build number
+    private final Map<Integer, String> triggers = new ConcurrentHashMap<Integer, String>();
+
+    @Rule
+    public StubRemoteJenkins          remote   = new StubRemoteJenkins(8) {
+        @Override
+        protected void handle(HttpExchange exchange, String path, String query) throws IOException {
+            if (path.startsWith("/job/remote/api/json") && query != null && query.startsWith("tree=builds")) {
+                respond(exchange, 200, "{\"builds\":" + builds() + "}");
+            } else if (path.startsWith("/job/remote/api/json")) {
+                respond(exchange, 200, "{\"nextBuildNumber\":" + (triggers.size() + 1)
+                        + ",\"actions\":[{\"parameterDefinitions\":[]}]}");
+            } else if (path.equals("/job/remote/buildWithParameters")) {
+                synchronized (triggers) {
+                    triggers.put(triggers.size() + 1, query);
+                }
+                respond(exchange, 201, "");
+            } else if (path.matches("/job/remote/\\d+/api/json/?")) {
+                int number = Integer.parseInt(path.split("/")[3]);
+                String trigger = triggers.get(number);
+                if (trigger == null) {
+                    respond(exchange, 404, "Not found");
+                } else {
+                    respond(exchange, 200, "{\"number\":" + number + ",\"building\":false,\"result\":\"SUCCESS\","
+                            + "\"actions\":[{\"parameters\":" + parameters(trigger) + "}]}");
+                }
+            } else {
+                respond(exchange, 404, "Not found");
+            }
+        }
+    };
+
+    // the remote server that doesn't answer until the test is over
+    private final CountDownLatch      slowServerAnswers = new CountDownLatch(1);
+
+    @Rule
+    public StubRemoteJenkins          slow     = new StubRemoteJenkins(32) {
+        @Override
+        protected void handle(HttpExchange exchange, String path, String query) throws IOException {
+            try {
+                slowServerAnswers.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            respond(exchange, 404, "Not found");
+        }
+    };
+
+    @Test
+    public void testManyExecutionsShareTheScheduler() throws Exception {
+        RemoteJenkinsServer remoteServer = remote.register(jenkinsRule.jenkins);
+        // the lock makes the executions trigger one after the other, so that the stub hands out build numbers in order
+        RemoteBuildConfiguration config = new RemoteBuildConfiguration(remoteServer.getDisplayName(), false, "remote",
+                "", "", false, null, null, false, true, 1, null, null, true, "", "CORRELATION", 0, "");
+
+        FreeStyleBuild build = jenkinsRule.buildAndAssertSuccess(jenkinsRule.createFreeStyleProject());
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        StreamBuildListener listener = new StreamBuildListener(log);
+        TokenExpansion tokens = new TokenExpansion(build, listener);
+
+        final CountDownLatch done = new CountDownLatch(EXECUTIONS);
+        List<RemoteBuildExecution> executions = new ArrayList<RemoteBuildExecution>();
+        for (int i = 0; i < EXECUTIONS; i++) {
+            RemoteBuildExecution execution = new RemoteBuildExecution(config, build, listener, remoteServer, tokens,
+                    "remote", "", RemoteParameters.parse("RUN=" + i), Deadline.NONE, Deadline.NONE);
+            execution.whenDone(new Runnable() {
+                public void run() {
+                    done.countDown();
+                }
+            });
+            executions.add(execution.start());
+        }
+        assertTrue(log.toString(), done.await(60, TimeUnit.SECONDS));
+
+        for (RemoteBuildExecution execution : executions) {
+            assertNull(log.toString(), execution.getFailure());
+            assertEquals(RemoteBuildExecution.Phase.DONE, execution.getPhase());
+        }
+        assertEquals(EXECUTIONS, triggers.size());
+        assertEquals(1, countThreads("Parameterized Remote Trigger scheduler"));
+    }
+
+    @Test
+    public void testSlowServerHoldsUpNobodyElse() throws Exception {
+        RemoteJenkinsServer remoteServer = remote.register(jenkinsRule.jenkins);
+        RemoteJenkinsServer slowServer = new RemoteJenkinsServer(slow.getUrl(), "SLOW", false, new JSONObject());
+        RemoteBuildConfiguration config = new RemoteBuildConfiguration(remoteServer.getDisplayName(), false, "remote",
+                "", "", false, null, null, false, true, 1);
+
+        FreeStyleBuild build = jenkinsRule.buildAndAssertSuccess(jenkinsRule.createFreeStyleProject());
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        StreamBuildListener listener = new StreamBuildListener(log);
+        TokenExpansion tokens = new TokenExpansion(build, listener);
+
+        List<RemoteBuildExecution> stuck = new ArrayList<RemoteBuildExecution>();
+        try {
+            // more than there used to be threads to run the steps on
+            for (int i = 0; i < 20; i++) {
+                stuck.add(new RemoteBuildExecution(config, build, listener, slowServer, tokens, "remote", "",
+                        RemoteParameters.parse("RUN=" + i), Deadline.NONE, Deadline.NONE).start());
+            }
+            slow.waitForRequest("GET /job/remote/api/json");
+
+            final CountDownLatch done = new CountDownLatch(1);
+            RemoteBuildExecution execution = new RemoteBuildExecution(config, build, listener, remoteServer, tokens,
+                    "remote", "", RemoteParameters.parse("RUN=fast"), Deadline.NONE, Deadline.NONE);
+            execution.whenDone(new Runnable() {
+                public void run() {
+                    done.countDown();
+                }
+            });
+            execution.start();
+            assertTrue(log.toString(), done.await(30, TimeUnit.SECONDS));
+            assertNull(log.toString(), execution.getFailure());
+        } finally {
+            for (RemoteBuildExecution execution : stuck) {
+                execution.detach();
+            }
+            slowServerAnswers.countDown();
+        }
+    }
+
+    private static int countThreads(String name) {
+        int count = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().equals(name)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return all the builds of the remote job, newest first, as listed by its JSON API
+     */
+    private String builds() {
+        StringBuilder json = new StringBuilder("[");
+        for (int number = triggers.size(); number > 0; number--) {
+            if (json.length() > 1) {
+                json.append(',');
+            }
+            json.append("{\"number\":").append(number).append(",\"building\":false,\"result\":\"SUCCESS\"}");
+        }
+        return json.append(']').toString();
+    }
+
+    /**
+     * @return the JSON parameters of a build triggered with the given query string
+     */
+    private static String parameters(String query) {
+        StringBuilder json = new StringBuilder("[");
+        for (String pair : query.split("&")) {
+            String[] nameAndValue = pair.split("=", 2);
+            if (nameAndValue[0].equals("delay")) {
+                continue;
+            }
+            if (json.length() > 1) {
+                json.append(',');
+            }
+            json.append("{\"name\":\"").append(nameAndValue[0]).append("\",\"value\":\"")
+                    .append(nameAndValue.length > 1 ? nameAndValue[1] : "").append("\"}");
+        }
+        return json.append(']').toString();
+    }
+}
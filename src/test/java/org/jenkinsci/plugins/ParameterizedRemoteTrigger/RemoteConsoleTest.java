@@ -0,0 +1,60 @@
+package org.jenkinsci.plugins.ParameterizedRemoteTrigger;
+
+import static org.junit.Assert.assertEquals;
+
+import hudson.EnvVars;
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.Result;
+
+import java.io.IOException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import com.sun.net.httpserver.HttpExchange;
+
+/**
+ * The console output of a remote build that has failed can't be read: the local build fails all the same. The remote
+ * Jenkins is a stub whose build has failed as soon as it is triggered, and that answers every request for its console
+ * output with an error.
+ */
+public class RemoteConsoleTest {
+    @Rule
+    public JenkinsRule       jenkinsRule = new JenkinsRule();
+
+    @Rule
+    public StubRemoteJenkins remote      = new StubRemoteJenkins() {
+        @Override
+        protected void handle(HttpExchange exchange, String path, String query) throws IOException {
+            if (path.startsWith("/job/remote/api/json")) {
+                respond(exchange, 200, "{\"nextBuildNumber\":1,\"actions\":[{\"parameterDefinitions\":[]}]}");
+            } else if (path.equals("/job/remote/buildWithParameters")) {
+                respond(exchange, 201, "");
+            } else if (path.startsWith("/job/remote/1/api/json")) {
+                respond(exchange, 200, "{\"number\":1,\"building\":false,\"result\":\"FAILURE\",\"url\":\"" + getUrl()
+                        + "/job/remote/1/\",\"actions\":[{\"parameters\":[]}]}");
+            } else if (path.equals("/job/remote/1/consoleText")) {
+                respond(exchange, 500, "Server error");
+            } else {
+                respond(exchange, 404, "Not found");
+            }
+        }
+    };
+
+    @Test
+    public void testUnreadableConsoleStillFailsTheBuild() throws Exception {
+        RemoteJenkinsServer remoteServer = remote.register(jenkinsRule.jenkins);
+        FreeStyleProject project = jenkinsRule.createFreeStyleProject();
+        project.getBuildersList().add(new RemoteBuildConfiguration(remoteServer.getDisplayName(), false, "remote", "",
+                "", true, null, null, false, true, 1, null, null, false, "", "", 10, ""));
+
+        FreeStyleBuild build = project.scheduleBuild2(0).get();
+        jenkinsRule.assertBuildStatus(Result.FAILURE, build);
+        jenkinsRule.assertLogContains("Unable to read the console output of the remote build", build);
+        EnvVars env = new EnvVars();
+        build.getAction(BuildInfoExporterAction.class).buildEnvVars(build, env);
+        assertEquals("FAILURE", env.get(BuildInfoExporterAction.BUILD_RESULT_VARIABLE_PREFIX + "remote"));
+    }
+}
@@ -0,0 +1,71 @@
+package org.jenkinsci.plugins.ParameterizedRemoteTrigger;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+public class RemoteJobLocksTest extends TestCase {
+
+    public void testSameRemoteJobIsLockedOnce() throws Exception {
+        RemoteJobLocks.Lock lock = RemoteJobLocks.get("JENKINS", "job");
+        assertSame(lock, RemoteJobLocks.get("JENKINS", "job"));
+        assertTrue(lock.tryLock(null));
+        try {
+            Runnable waiter = new Runnable() {
+                public void run() {
+                    fail("withdrawn before the lock was handed over");
+                }
+            };
+            assertFalse(RemoteJobLocks.get("JENKINS", "job").tryLock(waiter));
+            assertTrue(lock.withdraw(waiter));
+
+            RemoteJobLocks.Lock otherJob = RemoteJobLocks.get("JENKINS", "other job");
+            assertNotSame(lock, otherJob);
+            assertTrue(otherJob.tryLock(null));
+            otherJob.unlock();
+        } finally {
+            lock.unlock();
+        }
+        assertTrue(lock.tryLock(null));
+        lock.unlock();
+    }
+
+    public void testWaiterIsRunOnHandover() throws Exception {
+        RemoteJobLocks.Lock lock = RemoteJobLocks.get("JENKINS", "async");
+        final AtomicInteger handedOver = new AtomicInteger();
+        Runnable waiter = new Runnable() {
+            public void run() {
+                handedOver.incrementAndGet();
+            }
+        };
+        assertTrue(lock.tryLock(waiter));
+        assertFalse(lock.tryLock(waiter));
+        assertEquals(0, handedOver.get());
+
+        lock.unlock();
+        assertEquals(1, handedOver.get());
+        assertFalse(lock.withdraw(waiter));
+        lock.unlock();
+        assertTrue(lock.tryLock(null));
+        lock.unlock();
+    }
+
+    public void testLocksAreHandedOverInOrder() throws Exception {
+        RemoteJobLocks.Lock lock = RemoteJobLocks.get("JENKINS", "order");
+        final StringBuffer order = new StringBuffer();
+        assertTrue(lock.tryLock(null));
+        for (final String name : new String[] { "a", "b", "c" }) {
+            assertFalse(lock.tryLock(new Runnable() {
+                public void run() {
+                    order.append(name);
+                }
+            }));
+        }
+        for (int i = 0; i < 4; i++) {
+            lock.unlock();
+        }
+        assertEquals("abc", order.toString());
+        assertTrue(lock.tryLock(null));
+        lock.unlock();
+    }
+}
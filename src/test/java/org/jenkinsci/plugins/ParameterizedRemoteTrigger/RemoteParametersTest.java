@@ -0,0 +1,64 @@
+package org.jenkinsci.plugins.ParameterizedRemoteTrigger;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+public class RemoteParametersTest extends TestCase {
+
+    public void testCommentsAndEmptyLinesAreSkipped() {
+        RemoteParameters parameters = RemoteParameters.parse("# comment\nA=1\n\n \nB=2\n");
+
+        assertEquals(2, parameters.size());
+        assertEquals(Arrays.asList("A=1", "B=2"), parameters.toList());
+    }
+
+    public void testOnlyTheFirstEqualsSeparatesTheValue() {
+        RemoteParameters parameters = RemoteParameters.parse("QUERY=a=b&c");
+
+        assertEquals("QUERY", parameters.getName(0));
+        assertEquals("a=b&c", parameters.getValue(0));
+
+        StringBuilder query = new StringBuilder();
+        parameters.appendQueryString(query);
+        assertEquals("QUERY=a%3Db%26c", query.toString());
+    }
+
+    public void testLineWithoutEqualsIsSentAsIs() {
+        RemoteParameters parameters = RemoteParameters.parse("FLAG\nA=1");
+
+        assertNull(parameters.getValue(0));
+        assertNull(parameters.get("FLAG"));
+
+        StringBuilder query = new StringBuilder();
+        parameters.appendQueryString(query);
+        assertEquals("FLAG&A=1", query.toString());
+    }
+
+    public void testFirstOccurrenceWins() {
+        RemoteParameters parameters = RemoteParameters.parse("A=1\nB=2\nA=3");
+
+        assertEquals("1", parameters.get("A"));
+        assertEquals("2", parameters.get("B"));
+        assertNull(parameters.get("C"));
+    }
+
+    public void testExpandOnlyTouchesLinesWithTokens() {
+        RemoteParameters.Expander expander = new RemoteParameters.Expander() {
+            public String expand(String line) {
+                return line.replace("$NUMBER", "42");
+            }
+        };
+
+        RemoteParameters plain = RemoteParameters.parse("A=1\nB=2");
+        assertSame(plain, plain.expand(expander));
+
+        RemoteParameters expanded = RemoteParameters.parse("A=1\nB=$NUMBER\nC=3").expand(expander);
+        assertEquals(Arrays.asList("A=1", "B=42", "C=3"), expanded.toList());
+    }
+
+    public void testEmpty() {
+        assertTrue(RemoteParameters.parse("").isEmpty());
+        assertTrue(RemoteParameters.parse("# only a comment").isEmpty());
+    }
+}
@@ -0,0 +1,57 @@
+package org.jenkinsci.plugins.ParameterizedRemoteTrigger;
+
+import java.net.MalformedURLException;
+
+import junit.framework.TestCase;
+import net.sf.json.JSONObject;
+
+public class RemoteSitesTest extends TestCase {
+
+    public void testLookupByNameAndPool() throws MalformedURLException {
+        RemoteJenkinsServer a = server("http://a:8080", "A", "pool");
+        RemoteJenkinsServer b = server("http://b:8080", "B", "");
+        RemoteJenkinsServer c = server("http://c:8080", "C", "pool");
+        RemoteJenkinsServer duplicate = server("http://a2:8080", "A", "");
+
+        RemoteSites sites = new RemoteSites(new RemoteJenkinsServer[] { a, b, c, duplicate });
+
+        assertSame(a, sites.get("A"));
+        assertSame(b, sites.get("B"));
+        assertNull(sites.get("D"));
+        assertEquals(2, sites.getPool("pool").size());
+        assertSame(a, sites.getPool("pool").get(0));
+        assertSame(c, sites.getPool("pool").get(1));
+        assertTrue(sites.getPool("other").isEmpty());
+        assertEquals(4, sites.getSites().length);
+    }
+
+    public void testAddressesAreParsedOnce() throws MalformedURLException {
+        RemoteJenkinsServer server = new RemoteJenkinsServer("http://main:8080", "S", false, new JSONObject(), 0, 0,
+                0, 0, "http://backup:8080\n", "", 0);
+
+        assertSame(server.getAddresses(), server.getAddresses());
+        assertEquals("http://main:8080", server.getBaseUrl());
+        assertEquals("http://main:8080/job/x", server.rebase("http://backup:8080/job/x"));
+        assertNull(server.getHealth("http://elsewhere:8080/job/x"));
+    }
+
+    public void testUrlIsOnTheLongestAddressAtAPathBoundary() throws MalformedURLException {
+        RemoteJenkinsServer server = new RemoteJenkinsServer("http://main:8080", "S", false, new JSONObject(), 0, 0,
+                0, 0, "http://main:8080/jenkins\nhttp://backup:8080/jenkins/\n", "", 0);
+
+        assertSame(EndpointHealth.of("http://main:8080/jenkins"), server.getHealth("http://main:8080/jenkins/job/x"));
+        assertSame(EndpointHealth.of("http://main:8080"), server.getHealth("http://main:8080/jenkinsfoo/job/x"));
+        assertSame(EndpointHealth.of("http://main:8080"), server.getHealth("http://main:8080"));
+        assertSame(EndpointHealth.of("http://backup:8080/jenkins/"),
+                server.getHealth("http://backup:8080/jenkins/job/x"));
+        assertNull(server.getHealth("http://main:80800/job/x"));
+        assertEquals("http://main:8080/job/x", server.rebase("http://backup:8080/jenkins/job/x"));
+        assertEquals("http://main:8080/job/x", server.rebase("http://main:8080/jenkins/job/x"));
+        assertEquals("http://main:80800/job/x", server.rebase("http://main:80800/job/x"));
+    }
+
+    private static RemoteJenkinsServer server(String address, String name, String pool)
+            throws MalformedURLException {
+        return new RemoteJenkinsServer(address, name, false, new JSONObject(), 0, 0, 0, 0, null, pool, 0);
+    }
+}
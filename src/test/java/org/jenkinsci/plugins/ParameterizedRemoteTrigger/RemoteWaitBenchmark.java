@@ -0,0 +1,137 @@
+package org.jenkinsci.plugins.ParameterizedRemoteTrigger;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Many remote builds waited on at once, each polled a few times: on a platform thread per wait that sleeps between
+ * polls (as the build step used to), as steps timed by a single scheduler thread (as {@link RemoteBuildExecution}
+ * does), and on a virtual thread per wait that sleeps between polls. The polls themselves do no I/O, only the cost
+ * of waiting is measured. The peak number of live threads and the heap in use while all waits are under way are
+ * printed after each iteration; the virtual mode needs JDK 21 or later. Not run by the build, run it with <tt>mvn
+ * test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.openjdk.jmh.Main
+ * -Dexec.args=RemoteWaitBenchmark</tt>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+public class RemoteWaitBenchmark {
+
+    private static final int         POLLS         = 5;
+    private static final int         POLL_INTERVAL = 200;
+
+    @Param({ "5000" })
+    public int                       waits;
+
+    @Param({ "platform", "scheduled", "virtual" })
+    public String                    mode;
+
+    private ExecutorService          executor;
+    private ScheduledExecutorService scheduler;
+    private final ThreadMXBean       threads = ManagementFactory.getThreadMXBean();
+
+    @Setup
+    public void setUp() {
+        if (mode.equals("platform")) {
+            executor = Executors.newCachedThreadPool();
+        } else if (mode.equals("scheduled")) {
+            scheduler = Executors.newScheduledThreadPool(1);
+        } else {
+            executor = VirtualThreads.newPerTaskExecutor("wait #");
+            if (executor == null) {
+                throw new IllegalStateException("Virtual threads need JDK 21 or later");
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    @Benchmark
+    public void waitForAll() throws InterruptedException {
+        System.gc();
+        long heapBefore = usedHeap();
+        threads.resetPeakThreadCount();
+
+        CountDownLatch done = new CountDownLatch(waits);
+        for (int i = 0; i < waits; i++) {
+            if (scheduler != null) {
+                scheduler.schedule(new ScheduledWait(done), POLL_INTERVAL, TimeUnit.MILLISECONDS);
+            } else {
+                executor.execute(new BlockingWait(done));
+            }
+        }
+        // all waits are under way by now
+        Thread.sleep(POLL_INTERVAL);
+        long heapWhileWaiting = usedHeap() - heapBefore;
+        done.await();
+
+        System.out.println(mode + ": peak of " + threads.getPeakThreadCount() + " live threads, "
+                + heapWhileWaiting / 1024 + " KB more heap in use while waiting on " + waits + " remote builds");
+    }
+
+    private static long usedHeap() {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static final class BlockingWait implements Runnable {
+        private final CountDownLatch done;
+
+        BlockingWait(CountDownLatch done) {
+            this.done = done;
+        }
+
+        public void run() {
+            try {
+                for (int poll = 0; poll < POLLS; poll++) {
+                    Thread.sleep(POLL_INTERVAL);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                done.countDown();
+            }
+        }
+    }
+
+    private final class ScheduledWait implements Runnable {
+        private final CountDownLatch done;
+        private int                  polls;
+
+        ScheduledWait(CountDownLatch done) {
+            this.done = done;
+        }
+
+        public void run() {
+            if (++polls < POLLS) {
+                scheduler.schedule(this, POLL_INTERVAL, TimeUnit.MILLISECONDS);
+            } else {
+                done.countDown();
+            }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package org.jenkinsci.plugins.ParameterizedRemoteTrigger;
+
+import java.io.IOException;
+
+import junit.framework.TestCase;
+import net.sf.json.JSONObject;
+
+import com.sun.net.httpserver.HttpExchange;
+
+/**
+ * The remote Jenkins is a stub that only tells its load to the user the builds trigger as.
+ */
+public class ServerLoadMonitorTest extends TestCase {
+
+    private final String            authorization = new AuthContext("user:secret").getAuthorization();
+    private final StubRemoteJenkins remote        = new StubRemoteJenkins() {
+        @Override
+        protected void handle(HttpExchange exchange, String path, String query) throws IOException {
+            if (!authorization.equals(exchange.getRequestHeaders().getFirst("Authorization"))) {
+                respond(exchange, 401, "Unauthorized");
+            } else if (path.equals("/queue/api/json")) {
+                respond(exchange, 200, "{\"items\":[{\"id\":1},{\"id\":2}]}");
+            } else if (path.equals("/computer/api/json")) {
+                respond(exchange, 200, "{\"busyExecutors\":1,\"totalExecutors\":4}");
+            } else {
+                respond(exchange, 404, "Not found");
+            }
+        }
+    };
+
+    @Override
+    protected void setUp() throws IOException {
+        remote.start();
+    }
+
+    @Override
+    protected void tearDown() {
+        remote.stop();
+    }
+
+    public void testLoadIsReadWithTheGivenCredentials() throws IOException {
+        RemoteJenkinsServer server = server("MONITORED");
+
+        ServerLoadMonitor.refresh(server, new AuthContext("user:secret"));
+
+        assertTrue(server.getLoad().isKnown());
+        assertTrue(server.getLoad().toString(), server.getLoad().toString().startsWith("2 queued, 3 idle executors"));
+    }
+
+    public void testLoadIsUnknownWithoutCredentials() throws IOException {
+        RemoteJenkinsServer server = server("UNAUTHORIZED");
+
+        ServerLoadMonitor.refresh(server, AuthContext.ANONYMOUS);
+
+        assertFalse(server.getLoad().isKnown());
+    }
+
+    private RemoteJenkinsServer server(String name) throws IOException {
+        return new RemoteJenkinsServer(remote.getUrl(), name, false, new JSONObject(), 0, 0, 0, 0, null, "pool", 0);
+    }
+}
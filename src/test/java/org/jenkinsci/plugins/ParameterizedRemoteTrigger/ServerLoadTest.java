@@ -0,0 +1,39 @@
+package org.jenkinsci.plugins.ParameterizedRemoteTrigger;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+public class ServerLoadTest extends TestCase {
+
+    public void testLeastLoadedMemberIsPicked() {
+        ServerLoad.of("busy").update(4, 0);
+        ServerLoad.of("idle").update(0, 2);
+        ServerLoad.of("queued").update(1, 0);
+
+        assertEquals("idle", ServerLoad.leastLoaded(Arrays.asList("busy", "idle", "queued")));
+        assertEquals("queued", ServerLoad.leastLoaded(Arrays.asList("busy", "queued")));
+    }
+
+    public void testUnknownMemberComesLast() {
+        ServerLoad.of("measured").update(10, 0);
+        ServerLoad.of("unreachable").update(0, 5);
+        ServerLoad.of("unreachable").invalidate();
+
+        assertFalse(ServerLoad.of("unreachable").isKnown());
+        assertEquals("measured", ServerLoad.leastLoaded(Arrays.asList("unreachable", "never-checked", "measured")));
+        assertEquals("unreachable", ServerLoad.leastLoaded(Arrays.asList("unreachable", "never-checked")));
+    }
+
+    public void testTriggersAreSpreadUntilTheNextRefresh() {
+        ServerLoad.of("a").update(0, 1);
+        ServerLoad.of("b").update(0, 1);
+
+        assertEquals("a", ServerLoad.leastLoaded(Arrays.asList("a", "b")));
+        ServerLoad.of("a").recordTrigger();
+        assertEquals("b", ServerLoad.leastLoaded(Arrays.asList("a", "b")));
+        ServerLoad.of("b").recordTrigger();
+        ServerLoad.of("b").recordTrigger();
+        assertEquals("a", ServerLoad.leastLoaded(Arrays.asList("a", "b")));
+    }
+}
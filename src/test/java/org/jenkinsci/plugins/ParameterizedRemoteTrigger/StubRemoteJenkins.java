@@ -0,0 +1,161 @@
+package org.jenkinsci.plugins.ParameterizedRemoteTrigger;
+
+import static org.junit.Assert.assertTrue;
+
+import hudson.model.Run;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import jenkins.model.Jenkins;
+import net.sf.json.JSONObject;
+
+import org.junit.rules.ExternalResource;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A stub of the remote Jenkins, answering on localhost with the route table of the test. It records every request it
+ * receives, and the client sockets they came on. Used as a {@link org.junit.Rule}, or started and stopped by hand from
+ * the <tt>setUp</tt> and <tt>tearDown</tt> of a <tt>TestCase</tt>.
+ */
+public abstract class StubRemoteJenkins extends ExternalResource {
+
+    private final int          threads;
+    private HttpServer         server;
+    private final List<String> requests = Collections.synchronizedList(new ArrayList<String>());
+    private final Set<String>  sockets  = Collections.synchronizedSet(new HashSet<String>());
+
+    /**
+     * A stub that answers one request at a time.
+     */
+    public StubRemoteJenkins() {
+        this(0);
+    }
+
+    /**
+     * @param threads
+     *            how many requests the stub answers at once, 0 for one at a time
+     */
+    public StubRemoteJenkins(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * Answers one request.
+     *
+     * @param path
+     *            the path of the request
+     * @param query
+     *            the decoded query string of the request, null if there is none
+     */
+    protected abstract void handle(HttpExchange exchange, String path, String query) throws IOException;
+
+    @Override
+    protected void before() throws IOException {
+        start();
+    }
+
+    @Override
+    protected void after() {
+        stop();
+    }
+
+    public void start() throws IOException {
+        if (threads > 0) {
+            // otherwise the stub answers every request 40ms late (Nagle against delayed ACK), whatever the client does
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), threads > 0 ? 1000 : 0);
+        if (threads > 0) {
+            server.setExecutor(Executors.newFixedThreadPool(threads));
+        }
+        server.createContext("/", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                String path = exchange.getRequestURI().getPath();
+                String query = exchange.getRequestURI().getQuery();
+                requests.add(exchange.getRequestMethod() + " " + path + (query == null ? "" : "?" + query));
+                sockets.add(exchange.getRemoteAddress().toString());
+                StubRemoteJenkins.this.handle(exchange, path, query);
+            }
+        });
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+        if (threads > 0) {
+            ((ExecutorService) server.getExecutor()).shutdownNow();
+        }
+    }
+
+    /**
+     * @return the address of the stub, without a trailing slash
+     */
+    public String getUrl() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    /**
+     * @return every request received so far, as "METHOD path?query"
+     */
+    public List<String> getRequests() {
+        return requests;
+    }
+
+    /**
+     * @return the client sockets the requests came on so far
+     */
+    public Set<String> getSockets() {
+        return sockets;
+    }
+
+    /**
+     * Makes the stub the only remote server of the given Jenkins, without credentials.
+     *
+     * @return the remote server, named "STUB"
+     */
+    public RemoteJenkinsServer register(Jenkins jenkins) throws MalformedURLException {
+        JSONObject authenticationMode = new JSONObject();
+        authenticationMode.put("value", "none");
+        JSONObject auth = new JSONObject();
+        auth.put("authenticationMode", authenticationMode);
+
+        RemoteJenkinsServer remoteServer = new RemoteJenkinsServer(getUrl(), "STUB", false, auth);
+        jenkins.getDescriptorByType(RemoteBuildConfiguration.DescriptorImpl.class).setRemoteSites(remoteServer);
+        return remoteServer;
+    }
+
+    public void waitForRequest(String request) throws InterruptedException {
+        for (int i = 0; i < 300 && !requests.contains(request); i++) {
+            Thread.sleep(100);
+        }
+        assertTrue(request + " was never sent, got " + requests, requests.contains(request));
+    }
+
+    public static void waitForLog(Run<?, ?> build, String line) throws Exception {
+        for (int i = 0; i < 300 && !build.getLog().contains(line); i++) {
+            Thread.sleep(100);
+        }
+        assertTrue(build.getLog(), build.getLog().contains(line));
+    }
+
+    public static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes("UTF-8");
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(bytes);
+        out.close();
+    }
+}
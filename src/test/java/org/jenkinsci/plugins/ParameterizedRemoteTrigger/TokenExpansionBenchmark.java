@@ -0,0 +1,103 @@
+package org.jenkinsci.plugins.ParameterizedRemoteTrigger;
+
+import hudson.util.StreamTaskListener;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Token expansion of all the parameters of one trigger: one {@link TokenExpansion} for all of them against a fresh one
+ * per line, which costs what <tt>TokenMacro.expandAll</tt> per line used to (the environment is copied and the macros
+ * are asked again on every line). The environment and the macros are simulated, with the sizes of a typical
+ * controller. Not run by the build, run it with <tt>mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=org.openjdk.jmh.Main -Dexec.args=TokenExpansionBenchmark</tt>.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+public class TokenExpansionBenchmark {
+
+    @Param({ "10", "100", "500" })
+    public int                    parameterCount;
+
+    private RemoteParameters      parameters;
+    private TokenExpansion.Source source;
+    private StreamTaskListener    listener;
+
+    @Setup
+    public void setUp() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < parameterCount; i++) {
+            text.append("PARAM_").append(i).append("=${BRANCH}-$BUILD_NUMBER-").append(i).append('\n');
+        }
+        parameters = RemoteParameters.parse(text.toString());
+        source = new SimulatedSource();
+        listener = new StreamTaskListener(new ByteArrayOutputStream());
+    }
+
+    @Benchmark
+    public RemoteParameters batched() {
+        return parameters.expand(new TokenExpansion(source, listener));
+    }
+
+    @Benchmark
+    public RemoteParameters perLine() {
+        return parameters.expand(new RemoteParameters.Expander() {
+            public String expand(String line) {
+                return new TokenExpansion(source, listener).expand(line);
+            }
+        });
+    }
+
+    /**
+     * An environment of a few hundred variables, copied on every lookup like <tt>Run.getEnvironment</tt> does, and a
+     * few dozen registered macros.
+     */
+    private static final class SimulatedSource implements TokenExpansion.Source {
+        private final Map<String, String> environment = new HashMap<String, String>();
+        private final List<String>        macroNames  = new ArrayList<String>();
+
+        SimulatedSource() {
+            for (int i = 0; i < 300; i++) {
+                environment.put("VARIABLE_" + i, "value " + i);
+            }
+            environment.put("BRANCH", "master");
+            environment.put("BUILD_NUMBER", "42");
+            for (int i = 0; i < 40; i++) {
+                macroNames.add("MACRO_" + i);
+            }
+        }
+
+        public Map<String, String> getVariables() {
+            return new HashMap<String, String>(environment);
+        }
+
+        public boolean isMacro(String name) {
+            for (String macroName : macroNames) {
+                if (macroName.equals(name)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public String expandAll(String text) {
+            return text;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package org.jenkinsci.plugins.ParameterizedRemoteTrigger;
+
+import hudson.util.StreamTaskListener;
+
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+public class TokenExpansionTest extends TestCase {
+
+    private CountingSource source;
+    private TokenExpansion tokens;
+
+    @Override
+    protected void setUp() {
+        source = new CountingSource();
+        source.variables.put("BRANCH", "master");
+        source.variables.put("a.b", "dotted");
+        tokens = new TokenExpansion(source, new StreamTaskListener(new ByteArrayOutputStream()));
+    }
+
+    public void testVariables() {
+        assertEquals("branch=master", tokens.expand("branch=$BRANCH"));
+        assertEquals("branch=master/master", tokens.expand("branch=${BRANCH}/$BRANCH"));
+        assertEquals("dotted", tokens.expand("${a.b}"));
+        assertEquals("no tokens", tokens.expand("no tokens"));
+        assertEquals("costs $ 5", tokens.expand("costs $ 5"));
+    }
+
+    public void testUnknownTokensAreLeftAsTheyAre() {
+        assertEquals("$UNKNOWN and ${UNKNOWN}", tokens.expand("$UNKNOWN and ${UNKNOWN}"));
+    }
+
+    public void testEnvironmentIsResolvedOnce() {
+        for (int i = 0; i < 100; i++) {
+            tokens.expand("P" + i + "=$BRANCH");
+        }
+        assertEquals(1, source.environmentLookups);
+    }
+
+    public void testMacrosAreExpandedOncePerToken() {
+        source.macros.put("$BUILD_ID", "42");
+
+        assertEquals("id=42", tokens.expand("id=$BUILD_ID"));
+        assertEquals("again=42", tokens.expand("again=$BUILD_ID"));
+        assertEquals(1, source.expansions);
+    }
+
+    public void testUnclearTextIsHandedOverWhole() {
+        assertEquals("[price=$$5]", tokens.expand("price=$$5"));
+        assertEquals("[${LOG, regex=\"a}b\"}]", tokens.expand("${LOG, regex=\"a}b\"}"));
+    }
+
+    private static final class CountingSource implements TokenExpansion.Source {
+        final Map<String, String> variables = new HashMap<String, String>();
+        // expansion of each macro token
+        final Map<String, String> macros    = new HashMap<String, String>();
+        int                       environmentLookups;
+        int                       expansions;
+
+        public Map<String, String> getVariables() {
+            environmentLookups++;
+            return variables;
+        }
+
+        public boolean isMacro(String name) {
+            return macros.containsKey("$" + name);
+        }
+
+        public String expandAll(String text) {
+            expansions++;
+            String macro = macros.get(text);
+            return macro != null ? macro : "[" + text + "]";
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package org.jenkinsci.plugins.ParameterizedRemoteTrigger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+public class TriggerDispatcherTest extends TestCase {
+
+    private final TriggerDispatcher dispatcher = new TriggerDispatcher();
+
+    public void testPerJobLimit() throws Exception {
+        TriggerDispatcher.Permit first = dispatcher.enqueue("JENKINS", "job", 0, 0, 1, null);
+        assertTrue(first.isGranted());
+        TriggerDispatcher.Permit second = dispatcher.enqueue("JENKINS", "job", 0, 0, 1, null);
+        // the job is at its limit
+        assertFalse(second.isGranted());
+        assertEquals(1, dispatcher.getWaiting());
+
+        // other jobs of the same server are not held up
+        TriggerDispatcher.Permit otherJob = dispatcher.enqueue("JENKINS", "other job", 0, 0, 1, null);
+        assertTrue(otherJob.isGranted());
+        otherJob.release();
+
+        first.release();
+        assertTrue(second.isGranted());
+        second.release();
+    }
+
+    public void testPerServerLimit() throws Exception {
+        TriggerDispatcher.Permit first = dispatcher.enqueue("JENKINS", "job", 0, 1, 0, null);
+        TriggerDispatcher.Permit second = dispatcher.enqueue("JENKINS", "other job", 0, 1, 0, null);
+        // the server is at its limit
+        assertFalse(second.isGranted());
+        second.release();
+
+        TriggerDispatcher.Permit otherServer = dispatcher.enqueue("OTHER", "job", 0, 1, 0, null);
+        assertTrue(otherServer.isGranted());
+        otherServer.release();
+        first.release();
+        first.release();
+        assertTrue(dispatcher.getStatus("JENKINS").startsWith("0 running, 0 waiting"));
+    }
+
+    public void testHighestPriorityGoesFirst() throws Exception {
+        TriggerDispatcher.Permit running = dispatcher.enqueue("JENKINS", "job", 0, 0, 1, null);
+        final List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+
+        TriggerDispatcher.Permit low = dispatcher.enqueue("JENKINS", "job", 1, 0, 1, recordGrant(1, order));
+        TriggerDispatcher.Permit high = dispatcher.enqueue("JENKINS", "job", 10, 0, 1, recordGrant(10, order));
+        assertTrue(dispatcher.getStatus("JENKINS").startsWith("1 running, 2 waiting"));
+
+        running.release();
+        assertTrue(high.isGranted());
+        assertFalse(low.isGranted());
+        high.release();
+        assertTrue(low.isGranted());
+        low.release();
+        assertEquals(10, (int) order.get(0));
+        assertEquals(1, (int) order.get(1));
+    }
+
+    public void testEnqueueGrantsOnRelease() throws Exception {
+        final AtomicInteger granted = new AtomicInteger();
+        Runnable whenGranted = new Runnable() {
+            public void run() {
+                granted.incrementAndGet();
+            }
+        };
+        TriggerDispatcher.Permit first = dispatcher.enqueue("JENKINS", "job", 0, 0, 1, whenGranted);
+        assertTrue(first.isGranted());
+
+        TriggerDispatcher.Permit second = dispatcher.enqueue("JENKINS", "job", 0, 0, 1, whenGranted);
+        assertFalse(second.isGranted());
+        assertEquals(1, dispatcher.getWaiting());
+
+        first.release();
+        assertTrue(second.isGranted());
+        assertEquals(2, granted.get());
+        second.release();
+    }
+
+    public void testReleaseBeforeGrantWithdraws() throws Exception {
+        TriggerDispatcher.Permit running = dispatcher.enqueue("JENKINS", "job", 0, 0, 1, null);
+        TriggerDispatcher.Permit pending = dispatcher.enqueue("JENKINS", "job", 0, 0, 1, null);
+        pending.release();
+        assertEquals(0, dispatcher.getWaiting());
+
+        running.release();
+        assertFalse(pending.isGranted());
+        assertTrue(dispatcher.getStatus("JENKINS").startsWith("0 running, 0 waiting"));
+    }
+
+    private static Runnable recordGrant(final int priority, final List<Integer> order) {
+        return new Runnable() {
+            public void run() {
+                order.add(priority);
+            }
+        };
+    }
+}
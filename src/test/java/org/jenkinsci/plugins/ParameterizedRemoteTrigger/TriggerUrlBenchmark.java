@@ -0,0 +1,70 @@
+package org.jenkinsci.plugins.ParameterizedRemoteTrigger;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Assembly of the trigger URL: the precompiled {@link TriggerUrlTemplate} against the string concatenation it
+ * replaced. Not run by the build, run it with
+ * <tt>mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.openjdk.jmh.Main
+ * -Dexec.args=TriggerUrlBenchmark</tt>.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+public class TriggerUrlBenchmark {
+
+    @Param({ "1", "50", "500" })
+    public int                 parameterCount;
+
+    private TriggerUrlTemplate template;
+    private RemoteParameters   parameters;
+    private String             encodedParameters;
+    // what the build step was configured with, as getBuildTypeUrl() used to look at it on every trigger
+    private String             rawParameters;
+
+    @Setup
+    public void setUp() {
+        template = new TriggerUrlTemplate("folder/some job", "s3cr3t token", true);
+        StringBuilder parameters = new StringBuilder();
+        for (int i = 0; i < parameterCount; i++) {
+            if (i > 0) {
+                parameters.append('&');
+            }
+            parameters.append("PARAM_").append(i).append("=value_").append(i);
+        }
+        encodedParameters = parameters.toString();
+        rawParameters = encodedParameters.replace('&', '\n');
+        this.parameters = RemoteParameters.parse(rawParameters);
+    }
+
+    @Benchmark
+    public String template() {
+        return template.getTriggerUrl("http://jenkins.example.com:8080", false, "folder/some job", "s3cr3t token",
+                parameters, false);
+    }
+
+    @Benchmark
+    public String concatenation() {
+        String url = "http://jenkins.example.com:8080";
+        String queryString = "";
+        url += "/job/";
+        url += TriggerUrlTemplate.encode("folder/some job");
+        url += rawParameters.length() > 0 ? TriggerUrlTemplate.PARAMETERIZED_BUILD_URL
+                : TriggerUrlTemplate.NORMAL_BUILD_URL;
+        queryString = "token=" + TriggerUrlTemplate.encode("s3cr3t token");
+        queryString = queryString + "&" + encodedParameters;
+        queryString = queryString + "&" + "delay=0";
+        return url + "?" + queryString;
+    }
+}
@@ -0,0 +1,35 @@
+package org.jenkinsci.plugins.ParameterizedRemoteTrigger;
+
+import junit.framework.TestCase;
+
+public class TriggerUrlTemplateTest extends TestCase {
+
+    public void testTriggerUrl() {
+        TriggerUrlTemplate template = new TriggerUrlTemplate("my job", "s3cr3t", true);
+
+        assertFalse(template.jobHasTokens());
+        assertEquals("http://jenkins/job/my%20job/buildWithParameters?token=s3cr3t&a=1&b=2&delay=0",
+                template.getTriggerUrl("http://jenkins", false, "my job", "s3cr3t", RemoteParameters.parse("a=1\nb=2"), false));
+        assertEquals("http://jenkins/buildByToken/buildWithParameters?job=my%20job&token=s3cr3t&a=1&delay=0",
+                template.getTriggerUrl("http://jenkins", true, "my job", "s3cr3t", RemoteParameters.parse("a=1"), false));
+    }
+
+    public void testNonParameterizedTriggerUrl() {
+        TriggerUrlTemplate template = new TriggerUrlTemplate("job", "", false);
+
+        assertEquals("http://jenkins/job/job/build?delay=0",
+                template.getTriggerUrl("http://jenkins", false, "job", "", RemoteParameters.EMPTY, false));
+        assertEquals("http://jenkins/job/job/buildWithParameters?delay=0",
+                template.getTriggerUrl("http://jenkins", false, "job", "", RemoteParameters.EMPTY, true));
+    }
+
+    public void testTokensAreEncodedAtTriggerTime() {
+        TriggerUrlTemplate template = new TriggerUrlTemplate("${JOB}", "$TOKEN", false);
+
+        assertTrue(template.jobHasTokens());
+        assertTrue(template.tokenHasTokens());
+        assertEquals("http://jenkins/job/a%2Fb/build?token=x%26y&delay=0",
+                template.getTriggerUrl("http://jenkins", false, "a/b", "x&y", RemoteParameters.EMPTY, false));
+        assertEquals("http://jenkins/job/other", template.getJobUrl("http://jenkins", "other"));
+    }
+}
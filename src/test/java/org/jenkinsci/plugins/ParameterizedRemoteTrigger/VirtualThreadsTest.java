@@ -0,0 +1,37 @@
+package org.jenkinsci.plugins.ParameterizedRemoteTrigger;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+public class VirtualThreadsTest extends TestCase {
+
+    public void testPerTaskExecutor() throws Exception {
+        assertFalse(VirtualThreads.isVirtual(Thread.currentThread()));
+
+        ExecutorService executor = VirtualThreads.newPerTaskExecutor("test #");
+        if (!VirtualThreads.isAvailable()) {
+            // the platform threads are used instead
+            assertNull(executor);
+            return;
+        }
+        try {
+            Thread thread = executor.submit(new Callable<Thread>() {
+                public Thread call() {
+                    return Thread.currentThread();
+                }
+            }).get(5, TimeUnit.SECONDS);
+            assertTrue(VirtualThreads.isVirtual(thread));
+            assertTrue(thread.getName(), thread.getName().startsWith("test #"));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    public void testDisabledByDefault() {
+        assertFalse(VirtualThreads.ENABLED);
+        assertNull(VirtualThreads.newPerTaskExecutorIfEnabled("test #"));
+    }
+}